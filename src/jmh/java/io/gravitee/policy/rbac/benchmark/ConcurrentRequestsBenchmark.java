@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.benchmark;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.policy.rbac.RoleBasedAccessControlPolicy;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a single policy instance shared by concurrent requests, each thread being an event loop with its own
+ * requests. Run with <code>-t 1</code>, then with as many threads as cores (e.g. <code>-t 8</code>): the policy does
+ * not write any shared state when evaluating requests, so the throughput should grow with the number of threads.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentRequestsBenchmark {
+
+    @Param({ "5", "50" })
+    public int userRoles;
+
+    private RoleBasedAccessControlPolicy policy;
+
+    @Setup
+    public void setup() {
+        RoleBasedAccessControlPolicyConfiguration configuration = new RoleBasedAccessControlPolicyConfiguration();
+        configuration.setRoles(Set.of("admin", "orders:read"));
+        policy = new RoleBasedAccessControlPolicy(configuration);
+    }
+
+    @State(Scope.Thread)
+    public static class EventLoop {
+
+        private ExecutionContext executionContext;
+
+        private StubPolicyChain policyChain;
+
+        @Setup
+        public void setup(ConcurrentRequestsBenchmark benchmark) {
+            List<String> roles = new ArrayList<>();
+            for (int i = 0; i < benchmark.userRoles - 2; i++) {
+                roles.add("user-role-" + i);
+            }
+            roles.add("orders:read");
+            roles.add("admin");
+            executionContext = StubExecutionContexts.executionContext(StubExecutionContexts.attributes(String.join(" ", roles)));
+            policyChain = new StubPolicyChain();
+
+            benchmark.policy.onRequest(null, null, executionContext, policyChain);
+            if (!policyChain.allowed()) {
+                throw new IllegalStateException("Benchmark request must be granted: " + policyChain.failure().key());
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean onRequest(EventLoop eventLoop) {
+        policy.onRequest(null, null, eventLoop.executionContext, eventLoop.policyChain);
+        return eventLoop.policyChain.allowed();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.benchmark;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.policy.rbac.RoleBasedAccessControlPolicy;
+import io.gravitee.policy.rbac.configuration.DenyCacheConfiguration;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of denying the same client over and over, e.g. probing a route it is not entitled to, with and without the
+ * deny cache. Run with <code>-prof gc</code> to check that requests denied from the cache do not allocate.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeniedRequestBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean denyCache;
+
+    @Param({ "5", "50" })
+    public int userRoles;
+
+    private RoleBasedAccessControlPolicy policy;
+
+    private ExecutionContext executionContext;
+
+    private StubPolicyChain policyChain;
+
+    @Setup
+    public void setup() {
+        RoleBasedAccessControlPolicyConfiguration configuration = new RoleBasedAccessControlPolicyConfiguration();
+        configuration.setRoles(Set.of("admin"));
+        DenyCacheConfiguration denyCacheConfiguration = new DenyCacheConfiguration();
+        denyCacheConfiguration.setEnabled(denyCache);
+        configuration.setDenyCache(denyCacheConfiguration);
+        policy = new RoleBasedAccessControlPolicy(configuration);
+
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < userRoles; i++) {
+            roles.add("user-role-" + i);
+        }
+        Map<String, Object> attributes = StubExecutionContexts.attributes(String.join(" ", roles));
+        attributes.put(ExecutionContext.ATTR_SUBSCRIPTION_ID, "9a9d9e1c-6c1f-4b2b-8b7e-0d8f3b1f2a41");
+        executionContext = StubExecutionContexts.executionContext(attributes);
+        policyChain = new StubPolicyChain();
+
+        policy.onRequest(null, null, executionContext, policyChain);
+        if (policyChain.allowed()) {
+            throw new IllegalStateException("Benchmark request must be denied");
+        }
+    }
+
+    @Benchmark
+    public boolean onRequest() {
+        policy.onRequest(null, null, executionContext, policyChain);
+        return policyChain.allowed();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.benchmark;
+
+import io.gravitee.policy.rbac.RoleBasedAccessControlPolicy;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap retained by the policies of many APIs requiring the same roles, each API deploying its own policy instance.
+ * Configurations are built with new role instances, as when they are deserialized.
+ *
+ * The heap retained by each policy is reported by the <code>retainedBytesPerPolicy</code> secondary result.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PolicyFootprintBenchmark {
+
+    @Param({ "1000" })
+    public int apis;
+
+    @Param({ "5", "50" })
+    public int roles;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+
+        public long retainedBytesPerPolicy;
+    }
+
+    @Benchmark
+    public List<RoleBasedAccessControlPolicy> deployPolicies(Footprint footprint) {
+        long before = usedHeap();
+
+        List<RoleBasedAccessControlPolicy> policies = new ArrayList<>(apis);
+        for (int api = 0; api < apis; api++) {
+            Set<String> requiredRoles = new LinkedHashSet<>();
+            for (int i = 0; i < roles; i++) {
+                requiredRoles.add("required-role-" + i);
+            }
+            RoleBasedAccessControlPolicyConfiguration configuration = new RoleBasedAccessControlPolicyConfiguration();
+            configuration.setRoles(requiredRoles);
+            policies.add(new RoleBasedAccessControlPolicy(configuration));
+        }
+
+        footprint.retainedBytesPerPolicy = (usedHeap() - before) / apis;
+        return policies;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.benchmark;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.reactive.api.context.http.HttpPlainExecutionContext;
+import io.gravitee.policy.rbac.RoleBasedAccessControlPolicy;
+import io.gravitee.policy.rbac.RoleSet;
+import io.gravitee.policy.rbac.configuration.MetricsConfiguration;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import io.gravitee.policy.rbac.configuration.RoleSourceConfiguration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of the RBAC decision for a granted request, run with <code>-prof gc</code> to get the bytes allocated per
+ * operation (<code>gc.alloc.rate.norm</code>).
+ *
+ * Required roles are placed after the other user roles so that the non-strict mode has to read all of them.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoleBasedAccessControlPolicyBenchmark {
+
+    public enum Format {
+        LIST,
+        JSON,
+        DELIMITED,
+
+        /**
+         * Roles published as a {@link RoleSet} by a previous policy.
+         */
+        ROLE_SET,
+
+        /**
+         * Roles read from the <code>realm_access.roles</code> claim of a JWT.
+         */
+        CLAIM
+    }
+
+    public enum Size {
+        /**
+         * 3 required roles, 5 user roles.
+         */
+        SMALL(3, 5),
+
+        /**
+         * 50 required roles, 1000 user roles.
+         */
+        LARGE(50, 1000);
+
+        private final int requiredRoles;
+
+        private final int userRoles;
+
+        Size(int requiredRoles, int userRoles) {
+            this.requiredRoles = requiredRoles;
+            this.userRoles = userRoles;
+        }
+    }
+
+    @Param({ "true", "false" })
+    public boolean strict;
+
+    @Param({ "LIST", "JSON", "DELIMITED", "ROLE_SET", "CLAIM" })
+    public Format format;
+
+    @Param({ "SMALL", "LARGE" })
+    public Size size;
+
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    /**
+     * Attribute holding the roles read from the claim, removed before each request as it is kept for the following
+     * policies of the same request only.
+     */
+    private static final String CLAIM_ROLES_ATTRIBUTE = "rbac.roles.realm_access.roles";
+
+    private RoleBasedAccessControlPolicy policy;
+
+    private Map<String, Object> attributes;
+
+    private Request request;
+
+    private ExecutionContext executionContext;
+
+    private HttpPlainExecutionContext httpPlainExecutionContext;
+
+    private StubPolicyChain policyChain;
+
+    @Setup
+    public void setup() {
+        Set<String> requiredRoles = new LinkedHashSet<>();
+        for (int i = 0; i < size.requiredRoles; i++) {
+            requiredRoles.add("required-role-" + i);
+        }
+
+        List<String> userRoles = new ArrayList<>();
+        for (int i = 0; i < size.userRoles - size.requiredRoles; i++) {
+            userRoles.add("user-role-" + i);
+        }
+        userRoles.addAll(requiredRoles);
+
+        RoleBasedAccessControlPolicyConfiguration configuration = new RoleBasedAccessControlPolicyConfiguration();
+        configuration.setRoles(requiredRoles);
+        configuration.setStrict(strict);
+        MetricsConfiguration metricsConfiguration = new MetricsConfiguration();
+        metricsConfiguration.setEnabled(metrics);
+        configuration.setMetrics(metricsConfiguration);
+        if (format == Format.CLAIM) {
+            RoleSourceConfiguration roleSource = new RoleSourceConfiguration();
+            roleSource.setClaim("realm_access.roles");
+            configuration.setRoleSource(roleSource);
+        }
+        policy = new RoleBasedAccessControlPolicy(configuration);
+
+        Object attribute;
+        switch (format) {
+            case JSON:
+                attribute = userRoles.stream().map(role -> '"' + role + '"').collect(Collectors.joining(", ", "[", "]"));
+                break;
+            case DELIMITED:
+                attribute = String.join(" ", userRoles);
+                break;
+            case ROLE_SET:
+                attribute = RoleSet.of(userRoles);
+                break;
+            case CLAIM:
+                attribute = null;
+                break;
+            default:
+                attribute = userRoles;
+        }
+
+        attributes = StubExecutionContexts.attributes(attribute);
+        if (format == Format.CLAIM) {
+            String payload = userRoles
+                .stream()
+                .map(role -> '"' + role + '"')
+                .collect(Collectors.joining(",", "{\"sub\":\"john\",\"realm_access\":{\"roles\":[", "]},\"scope\":\"openid\"}"));
+            String jwt =
+                "eyJhbGciOiJSUzI1NiJ9." +
+                Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8)) +
+                ".c2lnbmF0dXJl";
+            attributes.put(RoleSourceConfiguration.DEFAULT_TOKEN_ATTRIBUTE, jwt);
+        }
+
+        request = StubExecutionContexts.request();
+        executionContext = StubExecutionContexts.executionContext(attributes);
+        httpPlainExecutionContext = StubExecutionContexts.httpPlainExecutionContext(attributes);
+        policyChain = new StubPolicyChain();
+
+        policy.onRequest(request, null, executionContext, policyChain);
+        if (!policyChain.allowed()) {
+            throw new IllegalStateException("Benchmark request must be granted: " + policyChain.failure().key());
+        }
+    }
+
+    @Benchmark
+    public boolean onRequest() {
+        if (format == Format.CLAIM) {
+            attributes.remove(CLAIM_ROLES_ATTRIBUTE);
+        }
+        policy.onRequest(request, null, executionContext, policyChain);
+        return policyChain.allowed();
+    }
+
+    @Benchmark
+    public void onRequestV4(Blackhole blackhole) {
+        if (format == Format.CLAIM) {
+            attributes.remove(CLAIM_ROLES_ATTRIBUTE);
+        }
+        blackhole.consume(policy.onRequest(httpPlainExecutionContext));
+    }
+}
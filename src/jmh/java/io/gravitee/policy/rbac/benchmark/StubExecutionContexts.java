@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.benchmark;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.reactive.api.context.http.HttpPlainExecutionContext;
+import io.gravitee.reporter.api.http.Metrics;
+import io.reactivex.rxjava3.core.Completable;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * Minimal execution contexts only supporting what the policy needs: attributes, the {@link Environment} component and
+ * the metrics of the request. Contexts are dynamic proxies so they do not depend on the whole context interfaces, the
+ * dispatch cost is the same for all the scenarios.
+ *
+ * @author GraviteeSource Team
+ */
+final class StubExecutionContexts {
+
+    private static final Environment ENVIRONMENT = new StandardEnvironment();
+
+    private StubExecutionContexts() {}
+
+    static ExecutionContext executionContext(Map<String, Object> attributes) {
+        return proxy(ExecutionContext.class, attributes);
+    }
+
+    static HttpPlainExecutionContext httpPlainExecutionContext(Map<String, Object> attributes) {
+        return proxy(HttpPlainExecutionContext.class, attributes);
+    }
+
+    /**
+     * @return a V2 request only holding metrics.
+     */
+    static Request request() {
+        Metrics metrics = Metrics.on(System.currentTimeMillis()).build();
+        Object proxy = Proxy.newProxyInstance(
+            StubExecutionContexts.class.getClassLoader(),
+            new Class<?>[] { Request.class },
+            (instance, method, args) -> "metrics".equals(method.getName()) ? metrics : null
+        );
+        return (Request) proxy;
+    }
+
+    static Map<String, Object> attributes(Object userRoles) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ExecutionContext.ATTR_USER_ROLES, userRoles);
+        return attributes;
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Object> attributes) {
+        io.gravitee.reporter.api.v4.metric.Metrics metrics = io.gravitee.reporter.api.v4.metric.Metrics.builder()
+            .timestamp(System.currentTimeMillis())
+            .build();
+        Object proxy = Proxy.newProxyInstance(
+            StubExecutionContexts.class.getClassLoader(),
+            new Class<?>[] { type },
+            (instance, method, args) -> {
+                switch (method.getName()) {
+                    case "getAttribute":
+                        return attributes.get((String) args[0]);
+                    case "setAttribute":
+                        return attributes.put((String) args[0], args[1]);
+                    case "removeAttribute":
+                        return attributes.remove((String) args[0]);
+                    case "getAttributes":
+                        return attributes;
+                    case "getComponent":
+                        return args[0] == Environment.class ? ENVIRONMENT : null;
+                    case "metrics":
+                        return metrics;
+                    case "interruptWith":
+                        return Completable.complete();
+                    case "hashCode":
+                        return System.identityHashCode(instance);
+                    case "equals":
+                        return instance == args[0];
+                    default:
+                        return null;
+                }
+            }
+        );
+        return type.cast(proxy);
+    }
+}
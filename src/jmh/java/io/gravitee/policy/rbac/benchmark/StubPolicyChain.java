@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.benchmark;
+
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.api.Response;
+import io.gravitee.policy.api.PolicyChain;
+import io.gravitee.policy.api.PolicyResult;
+
+/**
+ * Policy chain recording the outcome of the last policy execution.
+ *
+ * @author GraviteeSource Team
+ */
+final class StubPolicyChain implements PolicyChain {
+
+    private boolean allowed;
+
+    private PolicyResult failure;
+
+    @Override
+    public void doNext(Request request, Response response) {
+        allowed = true;
+        failure = null;
+    }
+
+    @Override
+    public void failWith(PolicyResult policyResult) {
+        allowed = false;
+        failure = policyResult;
+    }
+
+    @Override
+    public void streamFailWith(PolicyResult policyResult) {
+        failWith(policyResult);
+    }
+
+    boolean allowed() {
+        return allowed;
+    }
+
+    PolicyResult failure() {
+        return failure;
+    }
+}
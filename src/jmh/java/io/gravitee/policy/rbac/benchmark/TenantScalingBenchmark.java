@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.benchmark;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.policy.rbac.RoleBasedAccessControlPolicy;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import io.gravitee.policy.rbac.configuration.TenantConfiguration;
+import io.gravitee.policy.rbac.configuration.TenantRule;
+import io.gravitee.policy.rbac.configuration.TenantSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the RBAC decision as the number of tenants sharing the API grows, for users holding 3 roles in each of 5
+ * tenants.
+ *
+ * Every other tenant has its own tenant rule, the others use the default required roles. The rule of the tenant of the
+ * request is looked up by hash and the user roles are read once whatever the number of tenants, so the cost should
+ * not depend on the number of tenants.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TenantScalingBenchmark {
+
+    private static final String TENANT_ATTRIBUTE = "tenant";
+
+    private static final int USER_TENANTS = 5;
+
+    @Param({ "true", "false" })
+    public boolean tenantRule;
+
+    @Param({ "LIST", "DELIMITED" })
+    public UserRolesScalingBenchmark.Format format;
+
+    @Param({ "10", "1000", "10000" })
+    public int tenants;
+
+    private RoleBasedAccessControlPolicy policy;
+
+    private ExecutionContext executionContext;
+
+    private StubPolicyChain policyChain;
+
+    @Setup
+    public void setup() {
+        List<TenantRule> rules = new ArrayList<>();
+        for (int i = 0; i < tenants; i += 2) {
+            TenantRule rule = new TenantRule();
+            rule.setTenants(Set.of(tenant(i)));
+            rule.setRoles(Set.of("editor", "reviewer-" + (i % 7)));
+            rules.add(rule);
+        }
+        TenantConfiguration tenant = new TenantConfiguration();
+        tenant.setEnabled(true);
+        tenant.setSource(TenantSource.ATTRIBUTE);
+        tenant.setName(TENANT_ATTRIBUTE);
+        tenant.setRules(rules);
+
+        RoleBasedAccessControlPolicyConfiguration configuration = new RoleBasedAccessControlPolicyConfiguration();
+        configuration.setRoles(Set.of("viewer"));
+        configuration.setTenant(tenant);
+        policy = new RoleBasedAccessControlPolicy(configuration);
+
+        // The tenant of the request is the last tenant of the user, with or without a tenant rule
+        int requestTenant = tenantRule ? 2 * (USER_TENANTS - 1) : 2 * (USER_TENANTS - 1) + 1;
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < USER_TENANTS; i++) {
+            int userTenant = i == USER_TENANTS - 1 ? requestTenant : 2 * i;
+            roles.add(tenant(userTenant) + ":viewer");
+            roles.add(tenant(userTenant) + ":editor");
+            roles.add(tenant(userTenant) + ":reviewer-" + (userTenant % 7));
+        }
+
+        Map<String, Object> attributes = StubExecutionContexts.attributes(
+            format == UserRolesScalingBenchmark.Format.DELIMITED ? String.join(" ", roles) : roles
+        );
+        attributes.put(TENANT_ATTRIBUTE, tenant(requestTenant));
+        executionContext = StubExecutionContexts.executionContext(attributes);
+        policyChain = new StubPolicyChain();
+
+        policy.onRequest(null, null, executionContext, policyChain);
+        if (!policyChain.allowed()) {
+            throw new IllegalStateException("Benchmark request must be granted: " + policyChain.failure().key());
+        }
+    }
+
+    private static String tenant(int i) {
+        return "tenant-" + i;
+    }
+
+    @Benchmark
+    public boolean onRequest() {
+        policy.onRequest(null, null, executionContext, policyChain);
+        return policyChain.allowed();
+    }
+}
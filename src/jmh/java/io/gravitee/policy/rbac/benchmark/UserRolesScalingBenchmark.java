@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.benchmark;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.policy.rbac.RoleBasedAccessControlPolicy;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the RBAC decision as the number of user roles grows, e.g. enterprise users presenting thousands of directory
+ * groups, for 5 required roles.
+ *
+ * The required roles are the last user roles, so that lists and strings have to be read entirely: their cost grows
+ * with the number of roles, each role not granting anything being rejected by the Bloom filter of the role index. Sets
+ * are looked up for the required roles instead, their cost does not depend on the number of user roles.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserRolesScalingBenchmark {
+
+    public enum Format {
+        LIST,
+        SET,
+        DELIMITED
+    }
+
+    @Param({ "true", "false" })
+    public boolean strict;
+
+    @Param({ "LIST", "SET", "DELIMITED" })
+    public Format format;
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int userRoles;
+
+    private RoleBasedAccessControlPolicy policy;
+
+    private ExecutionContext executionContext;
+
+    private StubPolicyChain policyChain;
+
+    @Setup
+    public void setup() {
+        Set<String> requiredRoles = new LinkedHashSet<>();
+        for (int i = 0; i < 5; i++) {
+            requiredRoles.add("api-role-" + i);
+        }
+
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < userRoles - requiredRoles.size(); i++) {
+            roles.add("CN=Group " + i + ",OU=Groups,DC=corp,DC=com");
+        }
+        roles.addAll(requiredRoles);
+
+        RoleBasedAccessControlPolicyConfiguration configuration = new RoleBasedAccessControlPolicyConfiguration();
+        configuration.setRoles(requiredRoles);
+        configuration.setStrict(strict);
+        policy = new RoleBasedAccessControlPolicy(configuration);
+
+        Object attribute;
+        switch (format) {
+            case SET:
+                attribute = new HashSet<>(roles);
+                break;
+            case DELIMITED:
+                attribute = String.join(" ", roles);
+                break;
+            default:
+                attribute = roles;
+        }
+        executionContext = StubExecutionContexts.executionContext(StubExecutionContexts.attributes(attribute));
+        policyChain = new StubPolicyChain();
+
+        policy.onRequest(null, null, executionContext, policyChain);
+        if (!policyChain.allowed()) {
+            throw new IllegalStateException("Benchmark request must be granted: " + policyChain.failure().key());
+        }
+    }
+
+    @Benchmark
+    public boolean onRequest() {
+        policy.onRequest(null, null, executionContext, policyChain);
+        return policyChain.allowed();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac;
+
+import io.gravitee.policy.rbac.cache.CacheStatistics;
+import io.gravitee.policy.rbac.cache.DecisionCache;
+import io.gravitee.policy.rbac.cache.RoleSetCache;
+import io.gravitee.policy.rbac.configuration.CacheConfiguration;
+import io.gravitee.policy.rbac.configuration.CacheMode;
+import io.gravitee.policy.rbac.mapping.GroupMapping;
+import io.gravitee.policy.rbac.matcher.RoleExpression;
+import io.gravitee.policy.rbac.matcher.RoleHierarchy;
+import io.gravitee.policy.rbac.matcher.RoleMatcher;
+import io.gravitee.policy.rbac.matcher.RoleNormalizer;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The roles required by the policy, or by one of its rules, compiled once with the cache of the decisions taken.
+ *
+ * @author GraviteeSource Team
+ */
+final class AccessRule {
+
+    /**
+     * The required roles or role expression. <code>null</code> if no role is required.
+     */
+    private final RoleMatcher matcher;
+
+    /**
+     * Decisions taken for string roles, keyed by the raw string. <code>null</code> if the cache is disabled.
+     */
+    private final DecisionCache decisionCache;
+
+    /**
+     * Decisions taken by set of roles. <code>null</code> if the cache is disabled or keyed by raw string.
+     */
+    private final RoleSetCache roleSetCache;
+
+    private AccessRule(RoleMatcher matcher, DecisionCache decisionCache, RoleSetCache roleSetCache) {
+        this.matcher = matcher;
+        this.decisionCache = decisionCache;
+        this.roleSetCache = roleSetCache;
+    }
+
+    /**
+     * Compile the role expression if any, the required roles otherwise.
+     *
+     * @param roles the required roles, <code>null</code> if no role is required. Never empty: the rules are defined with
+     *              <code>null</code> instead of an empty set.
+     */
+    static AccessRule compile(
+        Set<String> roles,
+        boolean strict,
+        RoleExpression expression,
+        RoleHierarchy hierarchy,
+        boolean wildcardGrants,
+        GroupMapping groups,
+        RoleNormalizer normalizer,
+        CacheConfiguration cache
+    ) {
+        RoleMatcher.Options options = RoleMatcher.Options.DEFAULT
+            .hierarchy(hierarchy)
+            .wildcardGrants(wildcardGrants)
+            .groups(groups)
+            .normalizer(normalizer);
+        RoleMatcher matcher = null;
+        if (expression != null) {
+            matcher = RoleMatcher.compile(expression, options);
+        } else if (roles != null) {
+            matcher = RoleMatcher.compile(roles, strict, options);
+        }
+
+        if (matcher == null || cache == null || !cache.isEnabled()) {
+            return new AccessRule(matcher, null, null);
+        } else if (cache.getMode() == CacheMode.ROLE_SET) {
+            return new AccessRule(matcher, null, new RoleSetCache(cache.getMaxEntries(), cache.getTimeToLiveSeconds(), TimeUnit.SECONDS));
+        }
+        return new AccessRule(matcher, new DecisionCache(cache.getMaxEntries(), cache.getTimeToLiveSeconds(), TimeUnit.SECONDS), null);
+    }
+
+    /**
+     * @return a rule which no user roles satisfy.
+     */
+    static AccessRule denyAll() {
+        return new AccessRule(RoleMatcher.compile(Set.of(), false), null, null);
+    }
+
+    /**
+     * @return <code>true</code> if at least one role is required.
+     */
+    boolean requiresRoles() {
+        return matcher != null;
+    }
+
+    boolean matches(Collection<?> userRoles) {
+        if (roleSetCache == null || userRoles.size() > RoleSetCache.MAX_ROLES) {
+            return matcher.matches(userRoles);
+        }
+
+        long fingerprint = RoleSetCache.fingerprint(userRoles);
+        Boolean decision = roleSetCache.get(fingerprint, userRoles);
+        if (decision == null) {
+            decision = matcher.matches(userRoles);
+            roleSetCache.put(fingerprint, userRoles, decision);
+        }
+        return decision;
+    }
+
+    boolean matches(String userRoles) {
+        if (roleSetCache != null) {
+            long fingerprint = RoleSetCache.fingerprint(userRoles);
+            Boolean decision = roleSetCache.get(fingerprint, userRoles);
+            if (decision == null) {
+                decision = matcher.matches(userRoles);
+                roleSetCache.put(fingerprint, userRoles, decision);
+            }
+            return decision;
+        } else if (decisionCache == null) {
+            // Roles are either a JSON array or a space / comma separated list, read in place without building a set
+            return matcher.matches(userRoles);
+        }
+
+        Boolean decision = decisionCache.get(userRoles);
+        if (decision == null) {
+            decision = matcher.matches(userRoles);
+            decisionCache.put(userRoles, decision);
+        }
+        return decision;
+    }
+
+    DecisionCache decisionCache() {
+        return decisionCache;
+    }
+
+    /**
+     * @return the statistics of the cache of the rule, <code>null</code> if the cache is disabled.
+     */
+    CacheStatistics cacheStatistics() {
+        return roleSetCache != null ? roleSetCache : decisionCache;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac;
+
+import io.gravitee.common.http.HttpMethod;
+import io.gravitee.policy.rbac.cache.CacheStatistics;
+import io.gravitee.policy.rbac.configuration.CacheConfiguration;
+import io.gravitee.policy.rbac.configuration.MatchingMode;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import io.gravitee.policy.rbac.configuration.RoleInheritance;
+import io.gravitee.policy.rbac.configuration.RoleRule;
+import io.gravitee.policy.rbac.configuration.TenantConfiguration;
+import io.gravitee.policy.rbac.configuration.TenantRule;
+import io.gravitee.policy.rbac.mapping.GroupMapping;
+import io.gravitee.policy.rbac.matcher.RoleExpression;
+import io.gravitee.policy.rbac.matcher.RoleHierarchy;
+import io.gravitee.policy.rbac.matcher.RoleNormalizer;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics;
+import io.gravitee.policy.rbac.route.RouteTable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * All the rules of a policy instance, compiled together from their {@link Definition} and the current group mapping.
+ * The rules are immutable and replaced as a whole when the group mapping is reloaded.
+ *
+ * @author GraviteeSource Team
+ */
+final class AccessRules {
+
+    /**
+     * The rule of the requests whose path cannot be normalized, which cannot be matched reliably against the rules.
+     */
+    private static final AccessRule INVALID_PATH_RULE = AccessRule.denyAll();
+
+    /**
+     * The roles required by the requests matching none of the rules. When rules are configured and the default rule
+     * requires no role, the requests matching none of them are denied.
+     */
+    private final AccessRule defaultRule;
+
+    /**
+     * The configured default rule, which the tenant rules replace. <code>null</code> if the requests matching none of
+     * the rules are denied, whatever their tenant.
+     */
+    private final AccessRule tenantDefaultRule;
+
+    /**
+     * The roles required by path and method. <code>null</code> if no rule is configured.
+     */
+    private final RouteTable<AccessRule> rules;
+
+    /**
+     * The rules in declaration order, to expose their caches.
+     */
+    private final List<AccessRule> compiledRules;
+
+    /**
+     * The roles required from the users of a tenant in place of the default rule, by tenant. Empty if no tenant rule
+     * is configured.
+     */
+    private final Map<String, AccessRule> tenantRules;
+
+    /**
+     * The tenant rules in declaration order, to expose their caches.
+     */
+    private final List<AccessRule> compiledTenantRules;
+
+    /**
+     * The group mapping the rules were compiled with. <code>null</code> if user roles are not mapped.
+     */
+    private final GroupMapping groups;
+
+    private AccessRules(
+        AccessRule defaultRule,
+        AccessRule tenantDefaultRule,
+        RouteTable<AccessRule> rules,
+        List<AccessRule> compiledRules,
+        Map<String, AccessRule> tenantRules,
+        List<AccessRule> compiledTenantRules,
+        GroupMapping groups
+    ) {
+        this.defaultRule = defaultRule;
+        this.tenantDefaultRule = tenantDefaultRule;
+        this.rules = rules;
+        this.compiledRules = compiledRules;
+        this.tenantRules = tenantRules;
+        this.compiledTenantRules = compiledTenantRules;
+        this.groups = groups;
+    }
+
+    /**
+     * Compile the rules of a policy instance.
+     *
+     * @param definition the configuration of the rules, validated when the policy was deployed.
+     * @param groups the current group mapping, <code>null</code> if user roles are not mapped.
+     * @return the compiled rules.
+     */
+    static AccessRules compile(Definition definition, GroupMapping groups) {
+        AccessRule defaultRule = definition.defaultRule.compile(definition, groups);
+
+        // A rule shared by several tenants is compiled once, rule definitions are compared by identity
+        Map<RuleDefinition, AccessRule> compiledByDefinition = new LinkedHashMap<>();
+        Map<String, AccessRule> tenantRules = new HashMap<>();
+        for (Map.Entry<String, RuleDefinition> tenantRule : definition.tenantRules.entrySet()) {
+            AccessRule accessRule = compiledByDefinition.computeIfAbsent(tenantRule.getValue(), rule -> rule.compile(definition, groups));
+            tenantRules.put(tenantRule.getKey(), accessRule);
+        }
+        List<AccessRule> compiledTenantRules = List.copyOf(compiledByDefinition.values());
+
+        if (definition.rules.isEmpty()) {
+            return new AccessRules(defaultRule, defaultRule, null, List.of(), tenantRules, compiledTenantRules, groups);
+        }
+
+        // Rules list the routes they protect, a route left out must not be let through for want of default roles
+        AccessRule unmatchedRule = defaultRule.requiresRoles() ? defaultRule : AccessRule.denyAll();
+        AccessRule tenantDefaultRule = unmatchedRule == defaultRule ? defaultRule : null;
+
+        RouteTable.Builder<AccessRule> table = RouteTable.builder();
+        List<AccessRule> compiledRules = new ArrayList<>(definition.rules.size());
+        for (RuleDefinition rule : definition.rules) {
+            AccessRule accessRule = rule.compile(definition, groups);
+            table.add(rule.path, rule.methods, accessRule);
+            compiledRules.add(accessRule);
+        }
+        return new AccessRules(unmatchedRule, tenantDefaultRule, table.build(), compiledRules, tenantRules, compiledTenantRules, groups);
+    }
+
+    /**
+     * @return rules denying all the requests, in place of rules which cannot be compiled.
+     */
+    static AccessRules denyAll() {
+        return new AccessRules(AccessRule.denyAll(), null, null, List.of(), Map.of(), List.of(), null);
+    }
+
+    private static RoleNormalizer normalizer(MatchingMode matchingMode) {
+        if (matchingMode == null) {
+            return RoleNormalizer.EXACT;
+        }
+        switch (matchingMode) {
+            case CASE_INSENSITIVE:
+                return RoleNormalizer.CASE_INSENSITIVE;
+            case UNICODE:
+                return RoleNormalizer.UNICODE;
+            default:
+                return RoleNormalizer.EXACT;
+        }
+    }
+
+    /**
+     * @return the rule of the most specific path pattern matching the normalized path of the request, the default rule
+     *         if none matches, a rule denying the request if its path cannot be normalized.
+     */
+    AccessRule rule(String path, HttpMethod method) {
+        if (rules == null) {
+            return defaultRule;
+        }
+        String normalized = RouteTable.normalize(path);
+        if (normalized == null) {
+            return INVALID_PATH_RULE;
+        }
+        AccessRule rule = rules.find(normalized, method);
+        return rule == null ? defaultRule : rule;
+    }
+
+    /**
+     * @return <code>true</code> if roles are required by path and method.
+     */
+    boolean hasRules() {
+        return rules != null;
+    }
+
+    AccessRule defaultRule() {
+        return defaultRule;
+    }
+
+    /**
+     * @param rule the rule of the request, selected by path and method.
+     * @param tenant the tenant of the request.
+     * @return the rule of the tenant if the request falls back to the configured default rule and the tenant has one,
+     *         the given rule otherwise.
+     */
+    AccessRule tenantRule(AccessRule rule, String tenant) {
+        if (rule != tenantDefaultRule || tenantRules.isEmpty()) {
+            return rule;
+        }
+        return tenantRules.getOrDefault(tenant, defaultRule);
+    }
+
+    GroupMapping groups() {
+        return groups;
+    }
+
+    /**
+     * Expose the statistics of the caches of the rules along with the metrics of the policy, replacing those of the
+     * rules previously compiled.
+     */
+    void addCaches(DecisionMetrics metrics) {
+        addCache(metrics, "default", defaultRule);
+        for (int i = 0; i < compiledRules.size(); i++) {
+            addCache(metrics, "rules[" + i + "]", compiledRules.get(i));
+        }
+        for (int i = 0; i < compiledTenantRules.size(); i++) {
+            addCache(metrics, "tenants[" + i + "]", compiledTenantRules.get(i));
+        }
+    }
+
+    private static void addCache(DecisionMetrics metrics, String name, AccessRule rule) {
+        CacheStatistics statistics = rule.cacheStatistics();
+        if (statistics != null) {
+            metrics.addCache(name, statistics);
+        }
+    }
+
+    /**
+     * The configuration of the rules, validated and copied when the policy is deployed. The rules are compiled again
+     * from the definition, on the thread reloading the group mapping, without reading the configuration of the policy.
+     */
+    static final class Definition {
+
+        private final RuleDefinition defaultRule;
+
+        private final List<RuleDefinition> rules;
+
+        private final RoleHierarchy hierarchy;
+
+        private final boolean wildcardGrants;
+
+        private final RoleNormalizer normalizer;
+
+        private final CacheConfiguration cache;
+
+        /**
+         * The tenant rules by tenant, the tenants of a rule sharing its definition.
+         */
+        private final Map<String, RuleDefinition> tenantRules;
+
+        private Definition(
+            RuleDefinition defaultRule,
+            List<RuleDefinition> rules,
+            Map<String, RuleDefinition> tenantRules,
+            RoleHierarchy hierarchy,
+            boolean wildcardGrants,
+            RoleNormalizer normalizer,
+            CacheConfiguration cache
+        ) {
+            this.defaultRule = defaultRule;
+            this.rules = rules;
+            this.tenantRules = tenantRules;
+            this.hierarchy = hierarchy;
+            this.wildcardGrants = wildcardGrants;
+            this.normalizer = normalizer;
+            this.cache = cache;
+        }
+
+        /**
+         * @param configuration the configuration of the policy.
+         * @return the definition of the rules configured.
+         * @throws IllegalArgumentException if a role expression, the role hierarchy or the tenant rules are not valid,
+         *                                  which prevents the policy from being deployed.
+         */
+        static Definition of(RoleBasedAccessControlPolicyConfiguration configuration) {
+            RuleDefinition defaultRule = new RuleDefinition(
+                null,
+                null,
+                configuration.hasRoles() ? configuration.getRoles() : null,
+                configuration.isStrict(),
+                configuration.getExpression()
+            );
+
+            List<RuleDefinition> rules = new ArrayList<>();
+            if (configuration.getRules() != null) {
+                for (RoleRule rule : configuration.getRules()) {
+                    rules.add(
+                        new RuleDefinition(
+                            rule.getPath(),
+                            rule.getMethods(),
+                            rule.hasRoles() ? rule.getRoles() : null,
+                            rule.isStrict(),
+                            rule.getExpression()
+                        )
+                    );
+                }
+            }
+
+            return new Definition(
+                defaultRule,
+                Collections.unmodifiableList(rules),
+                tenantRules(configuration.getTenant()),
+                roleHierarchy(configuration.getRoleHierarchy()),
+                configuration.isWildcardGrants(),
+                normalizer(configuration.getMatchingMode()),
+                copy(configuration.getCache())
+            );
+        }
+
+        private static RoleHierarchy roleHierarchy(List<RoleInheritance> roleHierarchy) {
+            if (roleHierarchy == null || roleHierarchy.isEmpty()) {
+                return RoleHierarchy.EMPTY;
+            }
+
+            Map<String, Set<String>> inheritance = new LinkedHashMap<>();
+            for (RoleInheritance inheritedRoles : roleHierarchy) {
+                if (inheritedRoles.getRole() != null && inheritedRoles.getInherits() != null) {
+                    inheritance
+                        .computeIfAbsent(inheritedRoles.getRole(), role -> new LinkedHashSet<>())
+                        .addAll(inheritedRoles.getInherits());
+                }
+            }
+            // Throws if the hierarchy contains a cycle, which prevents the policy from being deployed
+            return RoleHierarchy.compile(inheritance);
+        }
+
+        private static Map<String, RuleDefinition> tenantRules(TenantConfiguration tenant) {
+            if (tenant == null || !tenant.isEnabled() || tenant.getRules() == null || tenant.getRules().isEmpty()) {
+                return Map.of();
+            }
+
+            Map<String, RuleDefinition> tenantRules = new LinkedHashMap<>();
+            for (TenantRule rule : tenant.getRules()) {
+                if (rule.getTenants() == null) {
+                    continue;
+                }
+                Set<String> roles = rule.getRoles() != null && !rule.getRoles().isEmpty() ? rule.getRoles() : null;
+                RuleDefinition definition = new RuleDefinition(null, null, roles, rule.isStrict(), rule.getExpression());
+                for (String tenantId : rule.getTenants()) {
+                    if (tenantId == null || tenantId.isBlank()) {
+                        throw new IllegalArgumentException("The tenants of a tenant rule must not be blank");
+                    }
+                    if (tenantRules.put(tenantId, definition) != null) {
+                        throw new IllegalArgumentException("The tenant " + tenantId + " has several tenant rules");
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(tenantRules);
+        }
+
+        private static CacheConfiguration copy(CacheConfiguration cache) {
+            if (cache == null) {
+                return null;
+            }
+            CacheConfiguration copy = new CacheConfiguration();
+            copy.setEnabled(cache.isEnabled());
+            copy.setMaxEntries(cache.getMaxEntries());
+            copy.setTimeToLiveSeconds(cache.getTimeToLiveSeconds());
+            copy.setMode(cache.getMode());
+            return copy;
+        }
+    }
+
+    /**
+     * The roles required by the default rule or by a rule, with their role expression already parsed.
+     */
+    private static final class RuleDefinition {
+
+        private final String path;
+
+        private final Set<HttpMethod> methods;
+
+        private final Set<String> roles;
+
+        private final boolean strict;
+
+        private final RoleExpression expression;
+
+        /**
+         * @throws IllegalArgumentException if the role expression is not valid.
+         */
+        private RuleDefinition(String path, Set<HttpMethod> methods, Set<String> roles, boolean strict, String expression) {
+            this.path = path;
+            this.methods = methods == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(methods));
+            this.roles = roles == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(roles));
+            this.strict = strict;
+            this.expression = expression == null || expression.isBlank() ? null : RoleExpression.parse(expression);
+        }
+
+        private AccessRule compile(Definition definition, GroupMapping groups) {
+            return AccessRule.compile(
+                roles,
+                strict,
+                expression,
+                definition.hierarchy,
+                definition.wildcardGrants,
+                groups,
+                definition.normalizer,
+                definition.cache
+            );
+        }
+    }
+}
@@ -15,18 +15,51 @@
  */
 package io.gravitee.policy.rbac;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.gravitee.common.http.HttpMethod;
 import io.gravitee.common.http.HttpStatusCode;
 import io.gravitee.gateway.api.ExecutionContext;
 import io.gravitee.gateway.api.Request;
 import io.gravitee.gateway.api.Response;
+import io.gravitee.gateway.reactive.api.ExecutionFailure;
+import io.gravitee.gateway.reactive.api.context.http.HttpMessageExecutionContext;
+import io.gravitee.gateway.reactive.api.context.http.HttpMessageRequest;
+import io.gravitee.gateway.reactive.api.context.http.HttpPlainExecutionContext;
+import io.gravitee.gateway.reactive.api.context.http.HttpPlainRequest;
+import io.gravitee.gateway.reactive.api.message.Message;
+import io.gravitee.gateway.reactive.api.policy.http.HttpPolicy;
 import io.gravitee.policy.api.PolicyChain;
 import io.gravitee.policy.api.PolicyResult;
 import io.gravitee.policy.api.annotations.OnRequest;
+import io.gravitee.policy.rbac.audit.DecisionAuditLog;
+import io.gravitee.policy.rbac.audit.ShadowAudit;
+import io.gravitee.policy.rbac.cache.CacheStatistics;
+import io.gravitee.policy.rbac.cache.DecisionCache;
+import io.gravitee.policy.rbac.cache.DenyCache;
+import io.gravitee.policy.rbac.configuration.DenyCacheConfiguration;
+import io.gravitee.policy.rbac.configuration.MessageConfiguration;
+import io.gravitee.policy.rbac.configuration.MessageRolesSource;
+import io.gravitee.policy.rbac.configuration.MetricsConfiguration;
 import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
-import java.io.IOException;
+import io.gravitee.policy.rbac.configuration.RoleSourceConfiguration;
+import io.gravitee.policy.rbac.configuration.ShadowConfiguration;
+import io.gravitee.policy.rbac.configuration.TenantConfiguration;
+import io.gravitee.policy.rbac.configuration.TenantSource;
+import io.gravitee.policy.rbac.mapping.GroupMapping;
+import io.gravitee.policy.rbac.mapping.GroupMappingSource;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.Outcome;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.RolesFormat;
+import io.gravitee.policy.rbac.metrics.DecisionMetricsRegistries;
+import io.gravitee.policy.rbac.parser.ClaimExtractor;
+import io.gravitee.policy.rbac.parser.TenantRoles;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import java.lang.ref.Cleaner;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
@@ -35,14 +68,100 @@ import org.springframework.core.env.Environment;
  * @author David BRASSELY (david.brassely at graviteesource.com)
  * @author GraviteeSource Team
  */
-public class RoleBasedAccessControlPolicy {
+public class RoleBasedAccessControlPolicy implements HttpPolicy {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RoleBasedAccessControlPolicy.class);
 
     /**
-     * The associated configuration to this Role-Based-Access-Control Policy
+     * The roles required by the requests, compiled from the configuration. Replaced as a whole when the group mapping
+     * is reloaded.
      */
-    private RoleBasedAccessControlPolicyConfiguration configuration;
+    private volatile AccessRules accessRules;
+
+    /**
+     * The configuration of the rules, validated when the policy is deployed, to compile them again.
+     */
+    private final AccessRules.Definition definition;
+
+    /**
+     * Name of the group mapping file in the group mapping directory of the gateway. <code>null</code> if user roles are
+     * not mapped.
+     */
+    private final String groupMappingFile;
+
+    /**
+     * <code>true</code> once the resources configured on the gateway, the group mapping and the shadow audit log, have
+     * been bound on the first request, even if they failed to load.
+     */
+    private volatile boolean bound;
+
+    /**
+     * The source of the group mapping. <code>null</code> if user roles are not mapped or until the first request.
+     */
+    private GroupMappingSource groupMappingSource;
+
+    /**
+     * Recompiles the rules when the group mapping is reloaded, held here as the source only weakly references it.
+     */
+    private Consumer<GroupMapping> groupMappingListener;
+
+    /**
+     * Where the roles of the messages are read from. <code>null</code> if messages are not checked.
+     */
+    private final MessageRolesSource messageRolesSource;
+
+    /**
+     * Name of the header or of the attribute holding the roles of the messages.
+     */
+    private final String messageRolesName;
+
+    /**
+     * Counters and latency of the decisions. <code>null</code> if metrics are disabled.
+     */
+    private final DecisionMetrics metrics;
+
+    /**
+     * The configuration of shadow mode, requests being never denied. <code>null</code> if shadow mode is disabled.
+     */
+    private final ShadowConfiguration shadow;
+
+    /**
+     * Records the decisions in shadow mode. <code>null</code> if shadow mode is disabled, until the first request or if
+     * the audit log cannot be opened.
+     */
+    private volatile ShadowAudit shadowAudit;
+
+    /**
+     * Requests recently denied, by rule, subscription and raw user roles. <code>null</code> if the deny cache is
+     * disabled.
+     */
+    private final DenyCache<Denial> denyCache;
+
+    /**
+     * Extracts the roles from a claim of the token. <code>null</code> if the roles are read from the roles attribute.
+     */
+    private final ClaimExtractor claimExtractor;
+
+    /**
+     * Attribute holding the roles extracted from the claim, reused by the following RBAC policies of the request reading
+     * the same claim. <code>null</code> if the roles are read from the roles attribute.
+     */
+    private final String claimRolesAttribute;
+
+    /**
+     * Where the tenant of the requests is read from. <code>null</code> if the user roles are not scoped to tenants.
+     */
+    private final TenantSource tenantSource;
+
+    /**
+     * Name of the header or of the attribute holding the tenant of the requests.
+     */
+    private final String tenantName;
+
+    /**
+     * Keeps the user roles of the tenant of the request. <code>null</code> if the user roles are not scoped to tenants.
+     */
+    private final TenantRoles tenantRoles;
 
     static final String RBAC_NO_USER_ROLE = "RBAC_NO_USER_ROLE";
 
@@ -50,93 +169,669 @@ public class RoleBasedAccessControlPolicy {
 
     static final String RBAC_FORBIDDEN = "RBAC_FORBIDDEN";
 
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Custom metric of the request holding the outcome of the decision, when metrics are enabled.
+     */
+    static final String RBAC_DECISION_METRIC = "rbac_decision";
+
+    /**
+     * Prefix of the attributes holding the roles extracted from a claim, followed by the path of the claim.
+     */
+    static final String RBAC_CLAIM_ROLES_ATTRIBUTE_PREFIX = "rbac.roles.";
 
-    private String userRolesAttribute;
+    /**
+     * Attribute holding the raw user roles, or the token holding them if they are read from a claim. The attribute of
+     * the user roles is resolved from the {@link Environment} of the gateway on the first request as it is not
+     * available when the policy is created, concurrent first requests all resolve the same attribute.
+     */
+    private volatile String rolesAttribute;
 
     static final String RBAC_USER_ROLES_ATTRIBUTE_KEY = "policy.rbac.attributes.roles";
     static final String DEFAULT_RBAC_USER_ROLES_ATTRIBUTE = ExecutionContext.ATTR_USER_ROLES;
 
+    /**
+     * Property of the gateway holding the directory of the group mapping files, which policies can only name.
+     */
+    static final String RBAC_GROUP_MAPPING_DIRECTORY_KEY = "policy.rbac.groupMapping.directory";
+
+    /**
+     * Property of the gateway holding the audit log file of shadow mode, shared by all the policies.
+     */
+    static final String RBAC_SHADOW_LOG_FILE_KEY = "policy.rbac.shadow.logFile";
+    static final String DEFAULT_RBAC_SHADOW_LOG_FILE = "logs/rbac-shadow.log";
+
     /**
      * Create a new Role-Based-Access-Control Policy instance based on its associated configuration
      *
      * @param configuration the associated configuration to the new Role-Based-Access-Control Policy instance
      */
     public RoleBasedAccessControlPolicy(RoleBasedAccessControlPolicyConfiguration configuration) {
-        this.configuration = configuration;
+        this.definition = AccessRules.Definition.of(configuration);
+        String groupMappingFile = configuration.getGroupMappingFile();
+        this.groupMappingFile = groupMappingFile == null || groupMappingFile.isBlank() ? null : groupMappingFile;
+        this.accessRules = AccessRules.compile(definition, null);
+
+        MessageConfiguration message = configuration.getMessage();
+        if (message != null && message.isEnabled()) {
+            if (message.getName() == null || message.getName().isBlank()) {
+                throw new IllegalArgumentException("The header or attribute holding the roles of the messages must be set");
+            }
+            this.messageRolesSource = message.getSource() != null ? message.getSource() : MessageRolesSource.HEADER;
+            this.messageRolesName = message.getName();
+        } else {
+            this.messageRolesSource = null;
+            this.messageRolesName = null;
+        }
+
+        RoleSourceConfiguration roleSource = configuration.getRoleSource();
+        if (roleSource != null && roleSource.hasClaim()) {
+            this.claimExtractor = ClaimExtractor.of(roleSource.getClaim());
+            this.rolesAttribute = roleSource.getTokenAttribute() != null
+                ? roleSource.getTokenAttribute()
+                : RoleSourceConfiguration.DEFAULT_TOKEN_ATTRIBUTE;
+            this.claimRolesAttribute = RBAC_CLAIM_ROLES_ATTRIBUTE_PREFIX + claimExtractor.path();
+        } else {
+            this.claimExtractor = null;
+            this.claimRolesAttribute = null;
+        }
+
+        TenantConfiguration tenant = configuration.getTenant();
+        if (tenant != null && tenant.isEnabled()) {
+            if (tenant.getName() == null || tenant.getName().isBlank()) {
+                throw new IllegalArgumentException("The header or attribute holding the tenant of the requests must be set");
+            }
+            this.tenantSource = tenant.getSource() != null ? tenant.getSource() : TenantSource.HEADER;
+            this.tenantName = tenant.getName();
+            String separator = tenant.getSeparator() != null ? tenant.getSeparator() : TenantConfiguration.DEFAULT_SEPARATOR;
+            this.tenantRoles = TenantRoles.of(separator);
+        } else {
+            this.tenantSource = null;
+            this.tenantName = null;
+            this.tenantRoles = null;
+        }
+
+        ShadowConfiguration shadow = configuration.getShadow();
+        this.shadow = shadow != null && shadow.isEnabled() ? shadow : null;
+        this.bound = this.groupMappingFile == null && this.shadow == null;
+
+        DenyCacheConfiguration denyCacheConfiguration = configuration.getDenyCache();
+        // Shadow mode never denies requests, all of them are evaluated to be recorded. The tenants of a subscription
+        // share its raw user roles, a denial for one tenant must not deny the others.
+        this.denyCache = denyCacheConfiguration != null && denyCacheConfiguration.isEnabled() && this.shadow == null && tenantRoles == null
+            ? new DenyCache<>(denyCacheConfiguration.getMaxEntries(), denyCacheConfiguration.getTimeToLiveSeconds(), TimeUnit.SECONDS)
+            : null;
+
+        MetricsConfiguration metricsConfiguration = configuration.getMetrics();
+        if (metricsConfiguration != null && metricsConfiguration.isEnabled()) {
+            this.metrics = new DecisionMetrics(metricsConfiguration.getLatencySamplingRate());
+            accessRules.addCaches(metrics);
+            if (denyCache != null) {
+                metrics.addCache("deny", denyCache);
+            }
+            DecisionMetricsRegistries.register(metricsConfiguration.getName(), metrics);
+        } else {
+            this.metrics = null;
+        }
+    }
+
+    @Override
+    public String id() {
+        return "rbac";
     }
 
     @OnRequest
     public void onRequest(Request request, Response response, ExecutionContext context, PolicyChain policyChain) {
-        Object userRolesAttribute = context.getAttribute(getRolesAttribute(context));
+        if (!bound) {
+            bind(context.getComponent(Environment.class));
+        }
+        String tenant = tenantRoles != null
+            ? tenant(tenantSource == TenantSource.ATTRIBUTE ? context.getAttribute(tenantName) : request.headers().get(tenantName))
+            : null;
+        AccessRule rule = rule(request.pathInfo(), request.method(), tenant);
+        String attribute = rolesAttribute != null ? rolesAttribute : bindRolesAttribute(context.getComponent(Environment.class));
+        Object source = context.getAttribute(attribute);
+        Object client = denyCache != null ? context.getAttribute(ExecutionContext.ATTR_SUBSCRIPTION_ID) : null;
+        Decision decision = recentDenial(rule, client, source);
+        if (decision == null) {
+            Object userRoles = source;
+            if (claimExtractor != null && source != null) {
+                Object extracted = context.getAttribute(claimRolesAttribute);
+                ClaimRoles claimRoles = claimRoles(source, extracted);
+                if (claimRoles != extracted) {
+                    context.setAttribute(claimRolesAttribute, claimRoles);
+                }
+                userRoles = claimRoles.roles;
+            }
+            String api = shadow != null ? (String) context.getAttribute(ExecutionContext.ATTR_API) : null;
+            decision = check(rule, tenant, client, source, userRoles, api, request.method(), request.pathInfo());
+        }
+        if (metrics != null) {
+            request.metrics().addCustomMetric(RBAC_DECISION_METRIC, decision.outcome.name());
+        }
+        if (decision == Decision.ALLOWED || shadow != null) {
+            policyChain.doNext(context.request(), context.response());
+        } else {
+            policyChain.failWith(decision.failure);
+        }
+    }
 
-        if (userRolesAttribute == null) {
-            // No role for the current HTTP request
-            policyChain.failWith(
-                PolicyResult.failure(
-                    RBAC_NO_USER_ROLE,
-                    HttpStatusCode.FORBIDDEN_403,
-                    "There is no user role associated to the current request."
-                )
-            );
-        } else if (configuration.hasRoles()) {
-            if (userRolesAttribute instanceof List) {
-                processRoles((List) userRolesAttribute, policyChain, context);
-            } else if (userRolesAttribute instanceof String) {
-                Set<String> roles = parseString((String) userRolesAttribute);
-                processRoles(roles, policyChain, context);
-            } else {
-                // The user roles structure is not the one expected
-                policyChain.failWith(
-                    PolicyResult.failure(RBAC_INVALID_USER_ROLES, HttpStatusCode.BAD_REQUEST_400, "User roles are not valid.")
-                );
+    @Override
+    public Completable onRequest(HttpPlainExecutionContext ctx) {
+        if (!bound) {
+            bind(ctx.getComponent(Environment.class));
+        }
+        HttpPlainRequest request = ctx.request();
+        String tenant = tenantRoles != null
+            ? tenant(tenantSource == TenantSource.ATTRIBUTE ? ctx.getAttribute(tenantName) : request.headers().get(tenantName))
+            : null;
+        AccessRule rule = rule(request.pathInfo(), request.method(), tenant);
+        String attribute = rolesAttribute != null ? rolesAttribute : bindRolesAttribute(ctx.getComponent(Environment.class));
+        Object source = ctx.getAttribute(attribute);
+        Object client = denyCache != null ? ctx.getAttribute(ExecutionContext.ATTR_SUBSCRIPTION_ID) : null;
+        Decision decision = recentDenial(rule, client, source);
+        if (decision == null) {
+            Object userRoles = source;
+            if (claimExtractor != null && source != null) {
+                Object extracted = ctx.getAttribute(claimRolesAttribute);
+                ClaimRoles claimRoles = claimRoles(source, extracted);
+                if (claimRoles != extracted) {
+                    ctx.setAttribute(claimRolesAttribute, claimRoles);
+                }
+                userRoles = claimRoles.roles;
             }
+            String api = shadow != null ? (String) ctx.getAttribute(ExecutionContext.ATTR_API) : null;
+            decision = check(rule, tenant, client, source, userRoles, api, request.method(), request.pathInfo());
+        }
+        if (metrics != null) {
+            ctx.metrics().addCustomMetric(RBAC_DECISION_METRIC, decision.outcome.name());
+        }
+        if (decision == Decision.ALLOWED || shadow != null) {
+            return Completable.complete();
+        }
+        return ctx.interruptWith(decision.executionFailure);
+    }
+
+    @Override
+    public Completable onMessageRequest(HttpMessageExecutionContext ctx) {
+        if (messageRolesSource == null) {
+            return Completable.complete();
+        }
+        MessageDecisions decisions = new MessageDecisions(ctx);
+        return ctx.request().onMessage(decisions::check);
+    }
+
+    @Override
+    public Completable onMessageResponse(HttpMessageExecutionContext ctx) {
+        if (messageRolesSource == null) {
+            return Completable.complete();
+        }
+        MessageDecisions decisions = new MessageDecisions(ctx);
+        return ctx.response().onMessage(decisions::check);
+    }
+
+    /**
+     * Take the decision for a request which has not been denied recently, whatever the execution engine it runs on.
+     * The entry points of each engine read the attributes and the request line the decision needs, so that the
+     * request is checked without wrapping it.
+     *
+     * @param rule the rule of the request.
+     * @param tenant the tenant of the request, <code>null</code> if it is unknown.
+     * @param client the subscription of the request, <code>null</code> if unknown or if the deny cache is disabled.
+     * @param source the raw user roles, or the token holding them.
+     * @param userRoles the user roles, read from the token if they are read from a claim.
+     * @param api the id of the API, only read in shadow mode.
+     * @param method the HTTP method of the request.
+     * @param path the path of the request.
+     * @return the decision taken for the request, which is let through anyway in shadow mode.
+     */
+    private Decision check(
+        AccessRule rule,
+        String tenant,
+        Object client,
+        Object source,
+        Object userRoles,
+        String api,
+        HttpMethod method,
+        String path
+    ) {
+        Object scoped = scope(userRoles, tenant);
+        Decision decision = decide(rule, client, source, scoped);
+        if (shadow != null) {
+            audit(api, method, path, decision, scoped);
+        }
+        return decision;
+    }
+
+    /**
+     * @param path the path of the request.
+     * @param method the HTTP method of the request.
+     * @param tenant the tenant of the request, <code>null</code> if it is unknown.
+     * @return the rule matching the path and method of the request, restricted to the roles of its tenant if known.
+     */
+    private AccessRule rule(String path, HttpMethod method, String tenant) {
+        AccessRules access = accessRules;
+        AccessRule rule = access.hasRules() ? access.rule(path, method) : access.defaultRule();
+        return tenant != null ? access.tenantRule(rule, tenant) : rule;
+    }
+
+    private void audit(String api, HttpMethod method, String path, Decision decision, Object userRoles) {
+        ShadowAudit audit = shadowAudit;
+        if (audit != null) {
+            audit.record(api, method, path, decision.outcome, userRoles);
+        }
+    }
+
+    /**
+     * @param rule the rule of the request.
+     * @param client the subscription of the request, <code>null</code> if unknown or if the deny cache is disabled.
+     * @param source the raw user roles, or the token holding them.
+     * @return the decision taken for the same rule, client and raw user roles if they were denied recently,
+     *         <code>null</code> otherwise.
+     */
+    private Decision recentDenial(AccessRule rule, Object client, Object source) {
+        if (client == null || source == null) {
+            return null;
+        }
+        Denial denial = denyCache.get(rule, client, source);
+        if (denial == null) {
+            return null;
+        }
+        if (metrics != null) {
+            metrics.record(denial.decision.outcome, denial.format);
+        }
+        return denial.decision;
+    }
+
+    /**
+     * Take the decision, caching it when it denies the request of a known client.
+     */
+    private Decision decide(AccessRule rule, Object client, Object source, Object userRoles) {
+        Decision decision = decide(rule, userRoles);
+        if (client != null && source != null && decision != Decision.ALLOWED) {
+            denyCache.put(rule, client, source, Denial.of(decision, RolesFormat.of(userRoles)));
+        }
+        return decision;
+    }
+
+    /**
+     * Decision core shared by the V2 and V4 execution engines, recording the decision when metrics are enabled.
+     *
+     * @param rule the roles required by the request.
+     * @param userRoles the user roles read from the request attributes.
+     * @return the decision taken for the request.
+     */
+    private Decision decide(AccessRule rule, Object userRoles) {
+        if (metrics == null) {
+            return evaluate(rule, userRoles);
+        }
+
+        Decision decision;
+        if (metrics.sampleLatency()) {
+            long start = System.nanoTime();
+            decision = evaluate(rule, userRoles);
+            metrics.recordLatency(System.nanoTime() - start);
         } else {
+            decision = evaluate(rule, userRoles);
+        }
+        metrics.record(decision.outcome, RolesFormat.of(userRoles));
+        return decision;
+    }
+
+    private Decision evaluate(AccessRule rule, Object userRoles) {
+        if (userRoles == null) {
+            // No role for the current HTTP request
+            return Decision.NO_USER_ROLE;
+        } else if (!rule.requiresRoles()) {
             // No required role defined, continue request processing
-            policyChain.doNext(request, response);
+            return Decision.ALLOWED;
+        } else if (userRoles instanceof Collection) {
+            // Usually a list, sets of roles (e.g. a published RoleSet) are looked up for the required roles
+            return rule.matches((Collection<?>) userRoles) ? Decision.ALLOWED : Decision.FORBIDDEN;
+        } else if (userRoles instanceof String) {
+            return rule.matches((String) userRoles) ? Decision.ALLOWED : Decision.FORBIDDEN;
         }
+        // The user roles structure is not the one expected
+        return Decision.INVALID_USER_ROLES;
     }
 
-    private void processRoles(final Collection<String> userRoles, PolicyChain policyChain, ExecutionContext context) {
-        if (hasRequiredRoles(userRoles)) {
-            policyChain.doNext(context.request(), context.response());
-        } else {
-            // The user roles do not contain one of the expected role
-            policyChain.failWith(
-                PolicyResult.failure(RBAC_FORBIDDEN, HttpStatusCode.FORBIDDEN_403, "User is not allowed to access this route.")
-            );
+    /**
+     * Bind the settings and resources configured on the gateway on the first request, as its {@link Environment} is not
+     * available when the policy is created.
+     */
+    private synchronized void bind(Environment environment) {
+        if (bound) {
+            return;
         }
+        if (groupMappingFile != null) {
+            bindGroupMapping(environment);
+        }
+        if (shadow != null) {
+            bindShadowAudit(environment);
+        }
+        bound = true;
     }
 
-    private Set<String> parseString(String rolesStr) {
-        // Two cases
-        // 2_ json format
-        // 1_ array of string (separated by a space)
+    /**
+     * Load the group mapping from the directory of the mapping files configured on the gateway. If the mapping cannot
+     * be loaded, all the requests are denied: the roles it grants may also exclude users.
+     */
+    private void bindGroupMapping(Environment environment) {
         try {
-            return MAPPER.readValue(rolesStr, Set.class);
-        } catch (IOException e) {
-            return Arrays.stream(rolesStr.split("\\s+|,\\s*")).collect(Collectors.toSet());
+            String directory = environment.getProperty(RBAC_GROUP_MAPPING_DIRECTORY_KEY);
+            if (directory == null || directory.isBlank()) {
+                throw new IllegalArgumentException("The gateway does not configure " + RBAC_GROUP_MAPPING_DIRECTORY_KEY);
+            }
+            groupMappingSource = GroupMappingSource.acquire(Paths.get(directory), groupMappingFile);
+            groupMappingListener = mapping -> applyGroupMapping();
+            groupMappingSource.addListener(groupMappingListener);
+            // Policy instances are not notified when their API is undeployed, the source is released once this one is reclaimed
+            Resources.CLEANER.register(this, groupMappingSource::release);
+            applyGroupMapping();
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Unable to load group mapping {}, all the requests are denied", groupMappingFile, e);
+            accessRules = AccessRules.denyAll();
         }
     }
 
-    private boolean hasRequiredRoles(final Collection<String> userRoles) {
-        if (userRoles == null || userRoles.isEmpty()) {
-            return false;
+    /**
+     * Open the audit log configured on the gateway, API publishers cannot choose the files written by the gateway. If
+     * the log cannot be opened, the decisions are not recorded.
+     */
+    private void bindShadowAudit(Environment environment) {
+        String logFile = environment.getProperty(RBAC_SHADOW_LOG_FILE_KEY, DEFAULT_RBAC_SHADOW_LOG_FILE);
+        try {
+            DecisionAuditLog log = DecisionAuditLog.acquire(Paths.get(logFile), shadow.getBufferSize());
+            Resources.CLEANER.register(this, log::release);
+            shadowAudit = new ShadowAudit(log, shadow.getSamplingRate(), shadow.isDeniedOnly());
+        } catch (InvalidPathException e) {
+            LOGGER.error("Invalid RBAC shadow audit log {}, the decisions are not recorded", RBAC_SHADOW_LOG_FILE_KEY, e);
         }
+    }
 
-        if (configuration.isStrict()) {
-            return userRoles.containsAll(configuration.getRoles());
-        } else {
-            return userRoles.stream().anyMatch(configuration.getRoles()::contains);
+    /**
+     * Compile the rules again if the group mapping has changed since they were compiled. Rules are compiled on the
+     * thread reloading the mapping, requests keep on using the previous rules until the new ones are swapped in.
+     */
+    private synchronized void applyGroupMapping() {
+        GroupMapping mapping = groupMappingSource.mapping();
+        if (mapping == accessRules.groups()) {
+            return;
         }
+        AccessRules reloaded = AccessRules.compile(definition, mapping);
+        if (metrics != null) {
+            reloaded.addCaches(metrics);
+        }
+        accessRules = reloaded;
+    }
+
+    DecisionCache decisionCache() {
+        return accessRules.defaultRule().decisionCache();
     }
 
-    private String getRolesAttribute(ExecutionContext context) {
-        if (userRolesAttribute == null) {
-            Environment environment = context.getComponent(Environment.class);
-            userRolesAttribute = environment.getProperty(RBAC_USER_ROLES_ATTRIBUTE_KEY, DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+    CacheStatistics cacheStatistics() {
+        return accessRules.defaultRule().cacheStatistics();
+    }
+
+    DecisionMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Resolve the attribute holding the user roles on the first request.
+     */
+    private String bindRolesAttribute(Environment environment) {
+        String attribute = resolveRolesAttribute(environment);
+        rolesAttribute = attribute;
+        return attribute;
+    }
+
+    /**
+     * @param source the token holding the user roles.
+     * @param extracted the value of the attribute holding the roles extracted from the claim of the request, if any.
+     * @return the roles extracted from the claim of the token, extracted only once for all the RBAC policies of the
+     *         request: the attribute must be set to the returned roles if they are not the extracted ones.
+     */
+    private ClaimRoles claimRoles(Object source, Object extracted) {
+        if (extracted instanceof ClaimRoles && ((ClaimRoles) extracted).token == source) {
+            return (ClaimRoles) extracted;
         }
+        return new ClaimRoles(source, claimExtractor.extract(source));
+    }
+
+    /**
+     * @param tenant the value of the header or attribute holding the tenant of the request.
+     * @return the tenant of the request, <code>null</code> if it is unknown.
+     */
+    private static String tenant(Object tenant) {
+        return tenant instanceof String && !((String) tenant).isEmpty() ? (String) tenant : null;
+    }
+
+    /**
+     * @param userRoles the user roles.
+     * @param tenant the tenant of the request, <code>null</code> if it is unknown.
+     * @return the user roles of the tenant without their prefix if the user roles are scoped to tenants, with no role
+     *         if the tenant is unknown. The user roles as is otherwise.
+     */
+    private Object scope(Object userRoles, String tenant) {
+        return tenantRoles == null ? userRoles : tenantRoles.scope(userRoles, tenant);
+    }
+
+    static String resolveRolesAttribute(Environment environment) {
+        return environment.getProperty(RBAC_USER_ROLES_ATTRIBUTE_KEY, DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+    }
+
+    /**
+     * Decisions taken for the messages of a single flow.
+     *
+     * Messages of a flow usually carry the same few role values, so the last decisions are memoised in a small
+     * direct-mapped table and only new values go through the matcher. Messages without roles fall back to the roles of
+     * the execution context, which are only evaluated once for the whole flow, like the rule matching its path and
+     * method. A flow is processed sequentially, the table does not need any synchronization.
+     */
+    private final class MessageDecisions {
+
+        private static final int SIZE = 8;
+
+        private final HttpMessageExecutionContext ctx;
+
+        private final AccessRule rule;
+
+        /**
+         * The tenant of the flow, <code>null</code> if it is unknown or if the user roles are not scoped to tenants.
+         */
+        private final String tenant;
+
+        private final Object[] roles = new Object[SIZE];
+
+        private final Decision[] decisions = new Decision[SIZE];
+
+        private Decision contextDecision;
+
+        private Object contextRoles;
+
+        /**
+         * The roles of the message being checked, for the shadow audit.
+         */
+        private Object messageRoles;
+
+        /**
+         * The id of the API and the request line of the flow, for the shadow audit.
+         */
+        private final String api;
+
+        private final HttpMethod method;
+
+        private final String path;
+
+        private MessageDecisions(HttpMessageExecutionContext ctx) {
+            if (!bound) {
+                bind(ctx.getComponent(Environment.class));
+            }
+            HttpMessageRequest request = ctx.request();
+            this.ctx = ctx;
+            this.tenant = tenantRoles != null
+                ? tenant(tenantSource == TenantSource.ATTRIBUTE ? ctx.getAttribute(tenantName) : request.headers().get(tenantName))
+                : null;
+            this.method = request.method();
+            this.path = request.pathInfo();
+            this.rule = rule(path, method, tenant);
+            this.api = shadow != null ? (String) ctx.getAttribute(ExecutionContext.ATTR_API) : null;
+        }
+
+        private Maybe<Message> check(Message message) {
+            Decision decision = evaluate(message);
+            if (shadow != null) {
+                audit(api, method, path, decision, messageRoles);
+            }
+            if (decision == Decision.ALLOWED || shadow != null) {
+                return Maybe.just(message);
+            }
+            return ctx.interruptMessageWith(decision.executionFailure);
+        }
+
+        private Decision evaluate(Message message) {
+            Object userRoles = messageRolesSource == MessageRolesSource.ATTRIBUTE
+                ? message.attribute(messageRolesName)
+                : message.headers().get(messageRolesName);
+
+            if (userRoles == null) {
+                if (contextDecision == null) {
+                    contextRoles = scope(contextUserRoles(), tenant);
+                    contextDecision = decide(rule, contextRoles);
+                }
+                messageRoles = contextRoles;
+                return contextDecision;
+            }
+
+            messageRoles = userRoles;
+            int hash = userRoles instanceof String ? userRoles.hashCode() : System.identityHashCode(userRoles);
+            int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+            Object memoised = roles[slot];
+            if (memoised == userRoles || (memoised instanceof String && memoised.equals(userRoles))) {
+                return decisions[slot];
+            }
+
+            Decision decision = decide(rule, scope(userRoles, tenant));
+            roles[slot] = userRoles;
+            decisions[slot] = decision;
+            return decision;
+        }
+
+        /**
+         * @return the user roles of the execution context, read from the claim only once for all the RBAC policies.
+         */
+        private Object contextUserRoles() {
+            String attribute = rolesAttribute != null ? rolesAttribute : bindRolesAttribute(ctx.getComponent(Environment.class));
+        Object source = ctx.getAttribute(attribute);
+            if (claimExtractor == null || source == null) {
+                return source;
+            }
+            Object extracted = ctx.getAttribute(claimRolesAttribute);
+            ClaimRoles claimRoles = claimRoles(source, extracted);
+            if (claimRoles != extracted) {
+                ctx.setAttribute(claimRolesAttribute, claimRoles);
+            }
+            return claimRoles.roles;
+        }
+    }
+
+    enum Decision {
+        ALLOWED(Outcome.ALLOWED, null, 0, null),
+        NO_USER_ROLE(
+            Outcome.NO_USER_ROLE,
+            RBAC_NO_USER_ROLE,
+            HttpStatusCode.FORBIDDEN_403,
+            "There is no user role associated to the current request."
+        ),
+        INVALID_USER_ROLES(
+            Outcome.INVALID_USER_ROLES,
+            RBAC_INVALID_USER_ROLES,
+            HttpStatusCode.BAD_REQUEST_400,
+            "User roles are not valid."
+        ),
+        FORBIDDEN(Outcome.FORBIDDEN, RBAC_FORBIDDEN, HttpStatusCode.FORBIDDEN_403, "User is not allowed to access this route.");
+
+        private final Outcome outcome;
+
+        private final String key;
+
+        private final int statusCode;
+
+        private final String message;
+
+        /**
+         * The result the V2 policy chain fails with, shared by all the requests denied for the same reason.
+         */
+        private final PolicyResult failure;
+
+        /**
+         * The failure the V4 request or message is interrupted with, shared in the same way.
+         */
+        private final ExecutionFailure executionFailure;
+
+        Decision(Outcome outcome, String key, int statusCode, String message) {
+            this.outcome = outcome;
+            this.key = key;
+            this.statusCode = statusCode;
+            this.message = message;
+            this.failure = key == null ? null : PolicyResult.failure(key, statusCode, message);
+            this.executionFailure = key == null ? null : new ExecutionFailure(statusCode).key(key).message(message);
+        }
+    }
+
+    /**
+     * The roles extracted from a claim of a token, kept for the following RBAC policies of the request.
+     */
+    private static final class ClaimRoles {
+
+        private final Object token;
+
+        private final Object roles;
+
+        private ClaimRoles(Object token, Object roles) {
+            this.token = token;
+            this.roles = roles;
+        }
+    }
+
+    /**
+     * A denial cached with the format of the user roles it was taken on, so that requests denied from the cache are
+     * counted like the others. All the denials are created once.
+     */
+    private static final class Denial {
+
+        private static final RolesFormat[] FORMATS = RolesFormat.values();
+
+        private static final Denial[] DENIALS = new Denial[Decision.values().length * FORMATS.length];
+
+        static {
+            for (Decision decision : Decision.values()) {
+                for (RolesFormat format : FORMATS) {
+                    DENIALS[decision.ordinal() * FORMATS.length + format.ordinal()] = new Denial(decision, format);
+                }
+            }
+        }
+
+        private final Decision decision;
+
+        private final RolesFormat format;
+
+        private Denial(Decision decision, RolesFormat format) {
+            this.decision = decision;
+            this.format = format;
+        }
+
+        private static Denial of(Decision decision, RolesFormat format) {
+            return DENIALS[decision.ordinal() * FORMATS.length + format.ordinal()];
+        }
+    }
+
+    /**
+     * Releases the shared resources of the reclaimed policy instances, created on first use. Its thread only references
+     * classes of the JDK and stops once the policy classes are unloaded.
+     */
+    private static final class Resources {
 
-        return userRolesAttribute;
+        private static final Cleaner CLEANER = Cleaner.create();
     }
 }
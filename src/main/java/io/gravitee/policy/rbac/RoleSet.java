@@ -0,0 +1,293 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.reactive.api.context.http.HttpBaseExecutionContext;
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import io.gravitee.policy.rbac.parser.RolesParser;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.springframework.core.env.Environment;
+
+/**
+ * Immutable set of user roles, read once and shared by the policies of a request.
+ *
+ * Policies which have already read the roles of the user, e.g. from a token, can publish them as a role set with
+ * {@link #publish(HttpBaseExecutionContext, Collection)} rather than joining them into a string: the RBAC policy
+ * matches a role set as is, without converting nor parsing it, and the following RBAC policies of the request reuse the
+ * same set.
+ *
+ * Roles required by a deployed policy are resolved to their instance in the {@link RoleDictionary}, and are then
+ * compared by identity. Roles are held in an open-addressing table, and a 64-bit signature of the roles lets
+ * {@link #containsAll(RoleSet)} and {@link #containsAny(RoleSet)} tell most disjoint sets apart without any lookup.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RoleSet extends AbstractSet<String> {
+
+    /**
+     * The empty role set.
+     */
+    public static final RoleSet EMPTY = new RoleSet(new String[0], 0);
+
+    /**
+     * The distinct roles, in the order they were given.
+     */
+    private final String[] roles;
+
+    /**
+     * Open-addressing table of the roles, at most half full.
+     */
+    private final String[] table;
+
+    /**
+     * One bit set per role, see {@link #signatureBit(int)}.
+     */
+    private final long signature;
+
+    private RoleSet(String[] candidates, int count) {
+        String[] table = new String[Integer.highestOneBit(Math.max(1, count)) << 2];
+        int mask = table.length - 1;
+        long signature = 0L;
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            String role = candidates[i];
+            int hash = role.hashCode();
+            int slot = spread(hash) & mask;
+            String present;
+            while ((present = table[slot]) != null && !present.equals(role)) {
+                slot = (slot + 1) & mask;
+            }
+            if (present == null) {
+                table[slot] = role;
+                signature |= signatureBit(hash);
+                candidates[size++] = role;
+            }
+        }
+        this.roles = size == candidates.length ? candidates : Arrays.copyOf(candidates, size);
+        this.table = table;
+        this.signature = signature;
+    }
+
+    /**
+     * @param roles the roles.
+     * @return the set of the given roles, <code>null</code> roles being ignored.
+     */
+    public static RoleSet of(String... roles) {
+        return of(Arrays.asList(roles));
+    }
+
+    /**
+     * @param roles the roles.
+     * @return the set of the given roles, <code>null</code> roles and elements which are not strings being ignored.
+     */
+    public static RoleSet of(Collection<?> roles) {
+        if (roles instanceof RoleSet) {
+            return (RoleSet) roles;
+        }
+        String[] candidates = new String[roles.size()];
+        int count = 0;
+        for (Object role : roles) {
+            if (role instanceof String) {
+                candidates[count++] = intern((String) role);
+            }
+        }
+        return new RoleSet(candidates, count);
+    }
+
+    /**
+     * @param roles the roles, either as a JSON array or as a space / comma separated list, see {@link RolesParser}.
+     * @return the set of the given roles.
+     */
+    public static RoleSet parse(String roles) {
+        String[] candidates = new String[8];
+        int count = 0;
+        for (long token = RolesParser.first(roles); token != RolesParser.END; token = RolesParser.next(roles, token)) {
+            if (RolesParser.isRestart(token)) {
+                count = 0;
+            }
+            String role = RolesParser.isEscaped(token)
+                ? null
+                : RoleDictionary.shared().lookup(roles, RolesParser.start(token), RolesParser.end(token));
+            if (count == candidates.length) {
+                candidates = Arrays.copyOf(candidates, count * 2);
+            }
+            candidates[count++] = role != null ? role : RolesParser.value(roles, token);
+        }
+        return new RoleSet(candidates, count);
+    }
+
+    /**
+     * Publish the roles of the user to the RBAC policies of the request, as the user roles attribute.
+     *
+     * @param ctx the execution context of the request.
+     * @param roles the roles of the user.
+     * @return the published role set.
+     */
+    public static RoleSet publish(HttpBaseExecutionContext ctx, Collection<String> roles) {
+        RoleSet set = of(roles);
+        ctx.setAttribute(rolesAttribute(ctx.getComponent(Environment.class)), set);
+        return set;
+    }
+
+    /**
+     * Publish the roles of the user to the RBAC policies of the request, as the user roles attribute.
+     *
+     * @param context the execution context of the request.
+     * @param roles the roles of the user.
+     * @return the published role set.
+     */
+    public static RoleSet publish(ExecutionContext context, Collection<String> roles) {
+        RoleSet set = of(roles);
+        context.setAttribute(rolesAttribute(context.getComponent(Environment.class)), set);
+        return set;
+    }
+
+    /**
+     * @param ctx the execution context of the request.
+     * @return the role set published for the request, <code>null</code> if the user roles attribute does not hold a
+     *         role set.
+     */
+    public static RoleSet published(HttpBaseExecutionContext ctx) {
+        Object roles = ctx.getAttribute(rolesAttribute(ctx.getComponent(Environment.class)));
+        return roles instanceof RoleSet ? (RoleSet) roles : null;
+    }
+
+    /**
+     * @param context the execution context of the request.
+     * @return the role set published for the request, <code>null</code> if the user roles attribute does not hold a
+     *         role set.
+     */
+    public static RoleSet published(ExecutionContext context) {
+        Object roles = context.getAttribute(rolesAttribute(context.getComponent(Environment.class)));
+        return roles instanceof RoleSet ? (RoleSet) roles : null;
+    }
+
+    @Override
+    public boolean contains(Object role) {
+        if (!(role instanceof String)) {
+            return false;
+        }
+        int hash = role.hashCode();
+        if ((signature & signatureBit(hash)) == 0) {
+            return false;
+        }
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        String present;
+        while ((present = table[slot]) != null) {
+            if (present == role || present.equals(role)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @param other a role set.
+     * @return <code>true</code> if this set contains all the roles of the other one.
+     */
+    public boolean containsAll(RoleSet other) {
+        if (other.roles.length > roles.length || (other.signature & ~signature) != 0) {
+            return false;
+        }
+        for (String role : other.roles) {
+            if (!contains(role)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param other a role set.
+     * @return <code>true</code> if this set contains at least one role of the other one.
+     */
+    public boolean containsAny(RoleSet other) {
+        if ((other.signature & signature) == 0) {
+            return false;
+        }
+        RoleSet smaller = other.roles.length < roles.length ? other : this;
+        RoleSet larger = smaller == this ? other : this;
+        for (String role : smaller.roles) {
+            if (larger.contains(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> roles) {
+        if (roles instanceof RoleSet) {
+            return containsAll((RoleSet) roles);
+        }
+        return super.containsAll(roles);
+    }
+
+    @Override
+    public int size() {
+        return roles.length;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < roles.length;
+            }
+
+            @Override
+            public String next() {
+                if (next >= roles.length) {
+                    throw new NoSuchElementException();
+                }
+                return roles[next++];
+            }
+        };
+    }
+
+    private static String intern(String role) {
+        String interned = RoleDictionary.shared().lookup(role);
+        return interned != null ? interned : role;
+    }
+
+    private static String rolesAttribute(Environment environment) {
+        return environment == null
+            ? RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE
+            : RoleBasedAccessControlPolicy.resolveRolesAttribute(environment);
+    }
+
+    /**
+     * @return the bit of the signature set by the roles with the given hash, taken from the high bits of a
+     *         multiplicative hash as the low bits select the slot.
+     */
+    private static long signatureBit(int hash) {
+        return 1L << ((hash * 0x9E3779B9) >>> 26);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.audit;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.Outcome;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Audit log of the decisions taken in shadow mode, written asynchronously to a local file, one JSON object per line.
+ *
+ * Request threads only publish the references of a decision into a bounded lock-free ring buffer: claiming a slot is
+ * a single compare-and-set, and a full buffer drops the record instead of waiting. A background daemon thread drains
+ * the buffer, formats the records and writes them, so that request threads never do any I/O, formatting or locking.
+ * The number of records dropped since the previous batch is reported by the first record of each batch written. The
+ * writer blocks while the buffer is empty, and is only woken up by the first record published after it.
+ *
+ * A log is shared by all the policy instances configured with the same file, until the last of them releases it: its
+ * writer then writes the remaining records, closes the file and stops.
+ *
+ * @author GraviteeSource Team
+ */
+public final class DecisionAuditLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionAuditLog.class);
+
+    private static final Map<Path, DecisionAuditLog> LOGS = new HashMap<>();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Path file;
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    /**
+     * Sequence of the next slot to claim by the request threads.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Sequence of the next slot to read by the writer, only accessed by the writer thread.
+     */
+    private long head;
+
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Number of dropped records already reported in the log, only accessed by the writer thread.
+     */
+    private long reportedDropped;
+
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * The number of acquisitions not released yet, guarded by {@link #LOGS}.
+     */
+    private int references;
+
+    /**
+     * The thread writing the records, <code>null</code> until the log is acquired.
+     */
+    private Thread writer;
+
+    /**
+     * <code>true</code> while the writer is blocked, or about to block, waiting for new records.
+     */
+    private volatile boolean waiting;
+
+    /**
+     * <code>true</code> once the log has been released by all the policy instances.
+     */
+    private volatile boolean closed;
+
+    DecisionAuditLog(Path file, int bufferSize) {
+        this.file = file;
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize));
+        this.slots = new Slot[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(i);
+        }
+    }
+
+    /**
+     * @param file the audit log file, created if needed and appended to.
+     * @param bufferSize the number of records the buffer can hold, rounded down to a power of two. Ignored if the log
+     *                   of the file has already been opened.
+     * @return the audit log shared by all the policy instances configured with the file, writing in background. It must
+     *         be {@link #release() released} once it is not used anymore.
+     */
+    public static DecisionAuditLog acquire(Path file, int bufferSize) {
+        Path path = file.toAbsolutePath().normalize();
+        synchronized (LOGS) {
+            DecisionAuditLog log = LOGS.get(path);
+            if (log == null) {
+                log = new DecisionAuditLog(path, bufferSize);
+                log.writer = new Thread(log::write, "rbac-shadow-audit-writer");
+                log.writer.setDaemon(true);
+                log.writer.start();
+                LOGS.put(path, log);
+            }
+            log.references++;
+            return log;
+        }
+    }
+
+    /**
+     * Release an acquisition of the log. Once all its acquisitions are released, the records published so far are
+     * written, then the file is closed and the writer stopped.
+     */
+    public void release() {
+        synchronized (LOGS) {
+            if (references == 0 || --references > 0) {
+                return;
+            }
+            LOGS.remove(file);
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Publish a decision to the log. Never blocks.
+     *
+     * @param api the id of the API, may be <code>null</code>.
+     * @param method the HTTP method of the request, may be <code>null</code>.
+     * @param path the path of the request, may be <code>null</code>.
+     * @param outcome the outcome the policy would have applied.
+     * @param userRoles the user roles the decision was taken on, formatted by the writer.
+     * @return <code>true</code> if the record was published, <code>false</code> if it was dropped as the buffer is full.
+     */
+    public boolean offer(String api, Object method, String path, Outcome outcome, Object userRoles) {
+        long timestamp = System.currentTimeMillis();
+        long sequence = tail.get();
+        while (true) {
+            Slot slot = slots[(int) sequence & mask];
+            long available = slot.sequence - sequence;
+            if (available == 0) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    slot.timestamp = timestamp;
+                    slot.api = api;
+                    slot.method = method;
+                    slot.path = path;
+                    slot.outcome = outcome;
+                    slot.userRoles = userRoles;
+                    // Publish the record to the writer
+                    slot.sequence = sequence + 1;
+                    if (waiting) {
+                        LockSupport.unpark(writer);
+                    }
+                    return true;
+                }
+                sequence = tail.get();
+            } else if (available < 0) {
+                // The writer has not read this slot yet: the buffer is full
+                dropped.increment();
+                return false;
+            } else {
+                // Another thread claimed the slot
+                sequence = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return the number of records dropped as the buffer was full.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of records written to the file.
+     */
+    public long written() {
+        return written.sum();
+    }
+
+    /**
+     * Drain the buffer and write the records, waiting for new ones when it is empty, until the log is closed.
+     */
+    private void write() {
+        // The log may be released before the writer starts: the file is opened at least once to write the records
+        while (true) {
+            try (
+                OutputStream output = Files.newOutputStream(
+                    createParentDirectories(file),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND
+                );
+                JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)
+            ) {
+                generator.setRootValueSeparator(null);
+                while (true) {
+                    if (drain(generator) > 0) {
+                        generator.flush();
+                    } else if (closed) {
+                        return;
+                    } else {
+                        awaitRecords();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (closed) {
+                    LOGGER.warn("Unable to write RBAC shadow audit log {}, the remaining records are dropped", file, e);
+                    return;
+                }
+                LOGGER.warn("Unable to write RBAC shadow audit log {}, retrying in 10 seconds", file, e);
+                LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(10));
+            }
+        }
+    }
+
+    /**
+     * Block until a record is published or the log is closed. The flag is set before checking the buffer again, and
+     * publishers check it after publishing their record: either the writer sees the record, or the publisher sees the
+     * flag and wakes the writer up.
+     */
+    private void awaitRecords() {
+        waiting = true;
+        if (slots[(int) head & mask].sequence != head + 1 && !closed) {
+            LockSupport.park(this);
+        }
+        waiting = false;
+    }
+
+    /**
+     * Write the records published so far, the first one reporting the records dropped since the previous batch.
+     *
+     * @return the number of records written.
+     */
+    int drain(JsonGenerator generator) throws IOException {
+        int count = 0;
+        Slot slot;
+        while ((slot = slots[(int) head & mask]).sequence == head + 1) {
+            long droppedRecords = 0;
+            if (count == 0) {
+                droppedRecords = dropped.sum() - reportedDropped;
+                reportedDropped += droppedRecords;
+            }
+            writeRecord(generator, slot, droppedRecords);
+            slot.api = null;
+            slot.method = null;
+            slot.path = null;
+            slot.userRoles = null;
+            // Release the slot to the request threads
+            slot.sequence = head + slots.length;
+            head++;
+            count++;
+        }
+        written.add(count);
+        return count;
+    }
+
+    private static void writeRecord(JsonGenerator generator, Slot slot, long droppedRecords) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("timestamp", Instant.ofEpochMilli(slot.timestamp).toString());
+        generator.writeStringField("outcome", slot.outcome.name());
+        if (slot.api != null) {
+            generator.writeStringField("api", slot.api);
+        }
+        if (slot.method != null) {
+            generator.writeStringField("method", slot.method.toString());
+        }
+        if (slot.path != null) {
+            generator.writeStringField("path", slot.path);
+        }
+        Object userRoles = slot.userRoles;
+        if (userRoles instanceof Collection) {
+            generator.writeArrayFieldStart("roles");
+            for (Object role : (Collection<?>) userRoles) {
+                generator.writeString(String.valueOf(role));
+            }
+            generator.writeEndArray();
+        } else if (userRoles != null) {
+            generator.writeStringField("roles", userRoles.toString());
+        }
+        if (droppedRecords > 0) {
+            generator.writeNumberField("dropped", droppedRecords);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static Path createParentDirectories(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        return file;
+    }
+
+    private static final class Slot {
+
+        /**
+         * Sequence the slot is available for: equal to the sequence to claim when free, to that sequence plus one once
+         * the record has been published.
+         */
+        private volatile long sequence;
+
+        private long timestamp;
+
+        private String api;
+
+        private Object method;
+
+        private String path;
+
+        private Outcome outcome;
+
+        private Object userRoles;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
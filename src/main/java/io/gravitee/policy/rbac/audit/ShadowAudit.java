@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.audit;
+
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.Outcome;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sampling of the decisions taken in shadow mode, recorded to a {@link DecisionAuditLog}.
+ *
+ * Like the latency of {@link io.gravitee.policy.rbac.metrics.DecisionMetrics}, one decision out of the sampling rate is
+ * recorded, drawn from a thread-local random generator so that request threads do not share any state.
+ *
+ * @author GraviteeSource Team
+ */
+public final class ShadowAudit {
+
+    private final DecisionAuditLog log;
+
+    private final int samplingMask;
+
+    private final boolean deniedOnly;
+
+    /**
+     * @param log the log the decisions are recorded to.
+     * @param samplingRate record one decision out of <code>samplingRate</code>, rounded down to a power of two.
+     * @param deniedOnly <code>true</code> to only record the decisions which would have denied the request.
+     */
+    public ShadowAudit(DecisionAuditLog log, int samplingRate, boolean deniedOnly) {
+        this.log = log;
+        this.samplingMask = Integer.highestOneBit(Math.max(1, samplingRate)) - 1;
+        this.deniedOnly = deniedOnly;
+    }
+
+    /**
+     * Record the decision if it is sampled. Never blocks.
+     *
+     * @param api the id of the API, may be <code>null</code>.
+     * @param method the HTTP method of the request, may be <code>null</code>.
+     * @param path the path of the request, may be <code>null</code>.
+     * @param outcome the outcome the policy would have applied.
+     * @param userRoles the user roles the decision was taken on.
+     */
+    public void record(String api, Object method, String path, Outcome outcome, Object userRoles) {
+        if (deniedOnly && outcome == Outcome.ALLOWED) {
+            return;
+        }
+        if (samplingMask == 0 || (ThreadLocalRandom.current().nextInt() & samplingMask) == 0) {
+            log.offer(api, method, path, outcome, userRoles);
+        }
+    }
+
+    /**
+     * @return the log the decisions are recorded to.
+     */
+    public DecisionAuditLog log() {
+        return log;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+/**
+ * Statistics of a decision cache.
+ *
+ * @author GraviteeSource Team
+ */
+public interface CacheStatistics {
+    /**
+     * @return the number of lookups which found a live entry.
+     */
+    long hits();
+
+    /**
+     * @return the number of lookups which did not find a live entry.
+     */
+    long misses();
+
+    /**
+     * @return the number of live entries replaced to make room for a new one.
+     */
+    long evictions();
+
+    /**
+     * @return the ratio of lookups which found a live entry, <code>0</code> if there was no lookup.
+     */
+    default double hitRatio() {
+        long hits = hits();
+        long lookups = hits + misses();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, lock-free cache of allow / deny decisions.
+ *
+ * Entries are stored in a {@link SetAssociativeTable}: lookups probe at most two slots and the cache never grows.
+ *
+ * @author GraviteeSource Team
+ */
+public final class DecisionCache implements CacheStatistics {
+
+    private final SetAssociativeTable<Object, Boolean> table;
+
+    /**
+     * @param maxEntries the maximum number of entries, rounded down to a power of two.
+     * @param timeToLive how long an entry is kept, <code>0</code> to keep entries until they are evicted.
+     * @param unit the unit of the time to live.
+     */
+    public DecisionCache(int maxEntries, long timeToLive, TimeUnit unit) {
+        this.table = new SetAssociativeTable<>(maxEntries, timeToLive, unit);
+    }
+
+    /**
+     * @param key the cache key.
+     * @return the cached decision, or <code>null</code> if there is no live entry for the given key.
+     */
+    public Boolean get(Object key) {
+        return table.get(key.hashCode(), key, Object::equals);
+    }
+
+    /**
+     * Cache the decision taken for the given key.
+     *
+     * @param key the cache key.
+     * @param decision the decision.
+     */
+    public void put(Object key, boolean decision) {
+        table.put(key.hashCode(), key, decision);
+    }
+
+    /**
+     * @return the number of lookups which found a live entry.
+     */
+    @Override
+    public long hits() {
+        return table.hits();
+    }
+
+    /**
+     * @return the number of lookups which did not find a live entry.
+     */
+    @Override
+    public long misses() {
+        return table.misses();
+    }
+
+    /**
+     * @return the number of live entries replaced to make room for a new one.
+     */
+    @Override
+    public long evictions() {
+        return table.evictions();
+    }
+
+    /**
+     * @return the maximum number of entries.
+     */
+    public int capacity() {
+        return table.capacity();
+    }
+
+    @Override
+    public String toString() {
+        return "DecisionCache{capacity=" + capacity() + ", hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions() + '}';
+    }
+}
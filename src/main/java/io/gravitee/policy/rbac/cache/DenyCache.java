@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, lock-free, short-lived cache of the requests recently denied, keyed by rule, client and raw user roles.
+ *
+ * A client probing a route it is not entitled to sends the same roles again and again: once denied, its requests are
+ * rejected by a lookup comparing the raw roles with those of the first request, without reading them into roles.
+ * Raw roles held in a string are compared as is, while a collection of roles is hashed with
+ * {@link RoleSetCache#fingerprint(Collection)} and compared as a {@link RoleSetKey}, whatever the order of its roles.
+ * Entries are stored in a {@link SetAssociativeTable}, and only denials are cached so that a collision or a stale entry
+ * can never let a request through.
+ *
+ * @param <V> the type of the cached denials.
+ * @author GraviteeSource Team
+ */
+public final class DenyCache<V> implements CacheStatistics {
+
+    private final SetAssociativeTable<Key, V> table;
+
+    /**
+     * @param maxEntries the maximum number of entries, rounded down to a power of two.
+     * @param timeToLive how long a denial is kept, <code>0</code> to keep denials until they are evicted.
+     * @param unit the unit of the time to live.
+     */
+    public DenyCache(int maxEntries, long timeToLive, TimeUnit unit) {
+        this.table = new SetAssociativeTable<>(maxEntries, timeToLive, unit);
+    }
+
+    /**
+     * @param rule the rule the request was checked against, compared by identity.
+     * @param client the client of the request, e.g. its subscription id.
+     * @param userRoles the raw user roles of the request, as read from the request attributes.
+     * @return the denial cached for the given key, or <code>null</code> if the request has not been denied recently.
+     */
+    public V get(Object rule, Object client, Object userRoles) {
+        return table.get(hash(rule, client, userRoles), userRoles, (key, roles) -> key.matches(rule, client, roles));
+    }
+
+    /**
+     * Cache the denial of a request, unless its roles are a collection of more than {@link RoleSetCache#MAX_ROLES}
+     * distinct roles.
+     *
+     * @param rule the rule the request was checked against.
+     * @param client the client of the request.
+     * @param userRoles the raw user roles of the request.
+     * @param denial the denial.
+     */
+    public void put(Object rule, Object client, Object userRoles, V denial) {
+        RoleSetKey roleSet = null;
+        if (userRoles instanceof Collection) {
+            roleSet = RoleSetKey.of((Collection<?>) userRoles);
+            if (roleSet == null) {
+                return;
+            }
+        }
+        table.put(hash(rule, client, userRoles), new Key(rule, client, roleSet == null ? userRoles : null, roleSet), denial);
+    }
+
+    /**
+     * @return the number of requests denied from the cache.
+     */
+    @Override
+    public long hits() {
+        return table.hits();
+    }
+
+    /**
+     * @return the number of lookups which did not find a recent denial.
+     */
+    @Override
+    public long misses() {
+        return table.misses();
+    }
+
+    /**
+     * @return the number of live denials replaced to make room for a new one.
+     */
+    @Override
+    public long evictions() {
+        return table.evictions();
+    }
+
+    /**
+     * @return the maximum number of entries.
+     */
+    public int capacity() {
+        return table.capacity();
+    }
+
+    @Override
+    public String toString() {
+        return "DenyCache{capacity=" + capacity() + ", hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions() + '}';
+    }
+
+    private static long hash(Object rule, Object client, Object userRoles) {
+        long roles = userRoles instanceof Collection ? RoleSetCache.fingerprint((Collection<?>) userRoles) : userRoles.hashCode();
+        return (System.identityHashCode(rule) * 31L + client.hashCode()) * 31L + roles;
+    }
+
+    private static final class Key {
+
+        private final Object rule;
+
+        private final Object client;
+
+        /**
+         * The raw user roles if they are not a collection, <code>null</code> otherwise.
+         */
+        private final Object userRoles;
+
+        /**
+         * The distinct roles if the raw user roles are a collection, <code>null</code> otherwise.
+         */
+        private final RoleSetKey roleSet;
+
+        private Key(Object rule, Object client, Object userRoles, RoleSetKey roleSet) {
+            this.rule = rule;
+            this.client = client;
+            this.userRoles = userRoles;
+            this.roleSet = roleSet;
+        }
+
+        private boolean matches(Object rule, Object client, Object userRoles) {
+            if (this.rule != rule || !this.client.equals(client)) {
+                return false;
+            }
+            if (roleSet != null) {
+                return userRoles instanceof Collection && roleSet.matches((Collection<?>) userRoles);
+            }
+            return this.userRoles == userRoles || this.userRoles.equals(userRoles);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import io.gravitee.policy.rbac.parser.RolesParser;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, lock-free cache of allow / deny decisions keyed by the set of user roles, whatever their order or format.
+ *
+ * The key of a role set is an order-independent fingerprint: the sum of a 64-bit mix of the hash code of each role,
+ * computed without extracting roles from strings. The fingerprint is the hash of the entry in a
+ * {@link SetAssociativeTable}. As different role sets can share a fingerprint, each entry keeps its distinct roles as a
+ * {@link RoleSetKey}, and a hit requires the user roles to be exactly that set. A fingerprint collision is then just a
+ * miss.
+ *
+ * Only role sets of up to {@value #MAX_ROLES} distinct roles are cached. Entries refer to the instances interned by the
+ * {@link RoleDictionary} whenever the roles are known to it.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RoleSetCache implements CacheStatistics {
+
+    public static final int MAX_ROLES = Long.SIZE;
+
+    private final SetAssociativeTable<RoleSetKey, Boolean> table;
+
+    /**
+     * @param maxEntries the maximum number of entries, rounded down to a power of two.
+     * @param timeToLive how long an entry is kept, <code>0</code> to keep entries until they are evicted.
+     * @param unit the unit of the time to live.
+     */
+    public RoleSetCache(int maxEntries, long timeToLive, TimeUnit unit) {
+        this.table = new SetAssociativeTable<>(maxEntries, timeToLive, unit);
+    }
+
+    /**
+     * @param roles the user roles, non-string elements are ignored.
+     * @return the fingerprint of the user roles.
+     */
+    public static long fingerprint(Collection<?> roles) {
+        long fingerprint = 0L;
+        for (Object role : roles) {
+            if (role instanceof String) {
+                fingerprint += mix(role.hashCode());
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @param roles the user roles, read with {@link RolesParser}.
+     * @return the fingerprint of the user roles.
+     */
+    public static long fingerprint(String roles) {
+        long fingerprint = 0L;
+        for (long token = RolesParser.first(roles); token != RolesParser.END; token = RolesParser.next(roles, token)) {
+            if (RolesParser.isRestart(token)) {
+                fingerprint = 0L;
+            }
+            fingerprint += mix(RoleSetKey.roleHash(roles, token));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the user roles.
+     * @param roles the user roles.
+     * @return the cached decision, or <code>null</code> if there is no live entry for the given roles.
+     */
+    public Boolean get(long fingerprint, Collection<?> roles) {
+        return table.get(fingerprint, roles, RoleSetKey::matches);
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the user roles.
+     * @param roles the user roles, read with {@link RolesParser}.
+     * @return the cached decision, or <code>null</code> if there is no live entry for the given roles.
+     */
+    public Boolean get(long fingerprint, String roles) {
+        return table.get(fingerprint, roles, RoleSetKey::matches);
+    }
+
+    /**
+     * Cache the decision taken for the given roles, unless they hold more than {@link #MAX_ROLES} distinct roles.
+     *
+     * @param fingerprint the fingerprint of the user roles.
+     * @param roles the user roles.
+     * @param decision the decision.
+     */
+    public void put(long fingerprint, Collection<?> roles, boolean decision) {
+        put(fingerprint, RoleSetKey.of(roles), decision);
+    }
+
+    /**
+     * Cache the decision taken for the given roles, unless they hold more than {@link #MAX_ROLES} distinct roles.
+     *
+     * @param fingerprint the fingerprint of the user roles.
+     * @param roles the user roles, read with {@link RolesParser}.
+     * @param decision the decision.
+     */
+    public void put(long fingerprint, String roles, boolean decision) {
+        put(fingerprint, RoleSetKey.parse(roles), decision);
+    }
+
+    private void put(long fingerprint, RoleSetKey key, boolean decision) {
+        if (key != null) {
+            table.put(fingerprint, key, decision);
+        }
+    }
+
+    @Override
+    public long hits() {
+        return table.hits();
+    }
+
+    @Override
+    public long misses() {
+        return table.misses();
+    }
+
+    /**
+     * @return the number of lookups which found an entry with the same fingerprint but other roles, counted as misses.
+     */
+    public long collisions() {
+        return table.collisions();
+    }
+
+    @Override
+    public long evictions() {
+        return table.evictions();
+    }
+
+    /**
+     * @return the maximum number of entries.
+     */
+    public int capacity() {
+        return table.capacity();
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "RoleSetCache{capacity=" +
+            capacity() +
+            ", hits=" +
+            hits() +
+            ", misses=" +
+            misses() +
+            ", collisions=" +
+            collisions() +
+            ", evictions=" +
+            evictions() +
+            '}'
+        );
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreading the bits of the role hash codes over the whole fingerprint.
+     */
+    private static long mix(int hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import io.gravitee.policy.rbac.parser.RolesParser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Key of a set of user roles, telling whether user roles are exactly that set whatever their order or format.
+ *
+ * The distinct roles are kept sorted by hash code: each user role is looked up by binary search, without extracting
+ * roles from strings, and all the roles of the key must have been seen. Only sets of up to
+ * {@value RoleSetCache#MAX_ROLES} distinct roles have a key, the roles seen being tracked in a <code>long</code>. Keys
+ * refer to the instances interned by the {@link RoleDictionary} whenever the roles are known to it.
+ *
+ * @author GraviteeSource Team
+ */
+final class RoleSetKey {
+
+    private static final Comparator<String> ORDER = Comparator.comparingInt(String::hashCode).thenComparing(Comparator.naturalOrder());
+
+    /**
+     * The distinct roles, sorted by hash code then natural order.
+     */
+    private final String[] roles;
+
+    private final int[] hashes;
+
+    private final long all;
+
+    private RoleSetKey(String[] roles) {
+        this.roles = roles;
+        this.hashes = new int[roles.length];
+        for (int i = 0; i < roles.length; i++) {
+            hashes[i] = roles[i].hashCode();
+        }
+        this.all = roles.length == RoleSetCache.MAX_ROLES ? -1L : (1L << roles.length) - 1;
+    }
+
+    /**
+     * @param roles the user roles, non-string elements are ignored.
+     * @return the key of the user roles, <code>null</code> if they hold more than {@link RoleSetCache#MAX_ROLES}
+     *         distinct roles.
+     */
+    static RoleSetKey of(Collection<?> roles) {
+        List<String> values = new ArrayList<>(roles.size());
+        for (Object role : roles) {
+            if (role instanceof String) {
+                String interned = RoleDictionary.shared().lookup((String) role);
+                values.add(interned != null ? interned : (String) role);
+            }
+        }
+        return of(values);
+    }
+
+    /**
+     * @param roles the user roles, read with {@link RolesParser}.
+     * @return the key of the user roles, <code>null</code> if they hold more than {@link RoleSetCache#MAX_ROLES}
+     *         distinct roles.
+     */
+    static RoleSetKey parse(String roles) {
+        List<String> values = new ArrayList<>();
+        for (long token = RolesParser.first(roles); token != RolesParser.END; token = RolesParser.next(roles, token)) {
+            if (RolesParser.isRestart(token)) {
+                values.clear();
+            }
+            String role = RolesParser.isEscaped(token)
+                ? null
+                : RoleDictionary.shared().lookup(roles, RolesParser.start(token), RolesParser.end(token));
+            values.add(role != null ? role : RolesParser.value(roles, token));
+        }
+        return of(values);
+    }
+
+    private static RoleSetKey of(List<String> values) {
+        String[] sorted = values.toArray(new String[0]);
+        Arrays.sort(sorted, ORDER);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])) {
+                if (distinct == RoleSetCache.MAX_ROLES) {
+                    return null;
+                }
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return new RoleSetKey(Arrays.copyOf(sorted, distinct));
+    }
+
+    /**
+     * @param userRoles the user roles, non-string elements are ignored.
+     * @return <code>true</code> if the user roles are exactly the roles of this key.
+     */
+    boolean matches(Collection<?> userRoles) {
+        long seen = 0L;
+        for (Object role : userRoles) {
+            if (role instanceof String) {
+                String str = (String) role;
+                int index = indexOf(str.hashCode(), str, 0, str.length());
+                if (index < 0) {
+                    return false;
+                }
+                seen |= 1L << index;
+            }
+        }
+        return seen == all;
+    }
+
+    /**
+     * @param userRoles the user roles, read with {@link RolesParser}.
+     * @return <code>true</code> if the user roles are exactly the roles of this key.
+     */
+    boolean matches(String userRoles) {
+        long seen = 0L;
+        boolean outside = false;
+        for (long token = RolesParser.first(userRoles); token != RolesParser.END; token = RolesParser.next(userRoles, token)) {
+            if (RolesParser.isRestart(token)) {
+                seen = 0L;
+                outside = false;
+            }
+
+            int index;
+            if (RolesParser.isEscaped(token)) {
+                String role = RolesParser.value(userRoles, token);
+                index = indexOf(role.hashCode(), role, 0, role.length());
+            } else {
+                index = indexOf(roleHash(userRoles, token), userRoles, RolesParser.start(token), RolesParser.end(token));
+            }
+            // A role outside of the key is only fatal if no restart follows
+            if (index < 0) {
+                outside = true;
+            } else {
+                seen |= 1L << index;
+            }
+        }
+        return !outside && seen == all;
+    }
+
+    /**
+     * @return the hash code of the role held by the token, equal to the hash code of {@link RolesParser#value(String, long)}.
+     */
+    static int roleHash(String roles, long token) {
+        if (RolesParser.isEscaped(token)) {
+            return RolesParser.value(roles, token).hashCode();
+        }
+        int hash = 0;
+        for (int i = RolesParser.start(token), end = RolesParser.end(token); i < end; i++) {
+            hash = 31 * hash + roles.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Binary search of the role held by a region of the given string.
+     */
+    private int indexOf(int hash, String source, int start, int end) {
+        int low = 0;
+        int high = roles.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = hashes[mid] != hash ? Integer.compare(hashes[mid], hash) : compare(roles[mid], source, start, end);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same order as {@link String#compareTo(String)}, without extracting the region.
+     */
+    private static int compare(String role, String source, int start, int end) {
+        int length = end - start;
+        int limit = Math.min(role.length(), length);
+        for (int i = 0; i < limit; i++) {
+            char c1 = role.charAt(i);
+            char c2 = source.charAt(start + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return role.length() - length;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * Bounded, lock-free, 2-way set-associative table backing the caches of this package.
+ *
+ * A key can only live in one of the two slots of the set selected by its hash, so lookups probe at most two slots and
+ * the table never grows. When both slots of a set are taken, the entry expiring first is evicted. Slots are updated with
+ * plain atomic writes, concurrent writers for the same set may overwrite each other which only costs a later miss.
+ *
+ * The table compares hashes only: lookups are given a query and a predicate telling whether a key stands for that
+ * query, so that callers can look up keys without building them.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ * @author GraviteeSource Team
+ */
+final class SetAssociativeTable<K, V> implements CacheStatistics {
+
+    private final AtomicReferenceArray<Entry<K, V>> entries;
+
+    private final int setMask;
+
+    private final long timeToLiveNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder collisions = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries the maximum number of entries, rounded down to a power of two.
+     * @param timeToLive how long an entry is kept, <code>0</code> to keep entries until they are evicted.
+     * @param unit the unit of the time to live.
+     */
+    SetAssociativeTable(int maxEntries, long timeToLive, TimeUnit unit) {
+        int capacity = Integer.highestOneBit(Math.max(2, maxEntries));
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.setMask = (capacity >> 1) - 1;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+    }
+
+    /**
+     * @param hash the hash of the query.
+     * @param query the query.
+     * @param matcher tells whether a key with the same hash stands for the query.
+     * @return the value of the live entry matching the query, or <code>null</code> if there is none.
+     */
+    <Q> V get(long hash, Q query, BiPredicate<? super K, ? super Q> matcher) {
+        int slot = slot(hash);
+        boolean collision = false;
+        for (int way = 0; way < 2; way++) {
+            Entry<K, V> entry = entries.get(slot + way);
+            if (entry != null && entry.hash == hash) {
+                if (!matcher.test(entry.key, query)) {
+                    collision = true;
+                } else if (!entry.isExpired(now())) {
+                    hits.increment();
+                    return entry.value;
+                }
+            }
+        }
+
+        if (collision) {
+            collisions.increment();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store a value, replacing the entry of the set with the same hash if any.
+     *
+     * @param hash the hash of the key.
+     * @param key the key.
+     * @param value the value.
+     */
+    void put(long hash, K key, V value) {
+        long now = now();
+        Entry<K, V> entry = new Entry<>(hash, key, value, timeToLiveNanos > 0 ? now + timeToLiveNanos : Long.MAX_VALUE);
+
+        int slot = slot(hash);
+        Entry<K, V> first = entries.get(slot);
+        Entry<K, V> second = entries.get(slot + 1);
+
+        int target;
+        if (first == null || first.hash == hash || first.isExpired(now)) {
+            target = slot;
+        } else if (second == null || second.hash == hash || second.isExpired(now)) {
+            target = slot + 1;
+        } else {
+            target = first.expireAt <= second.expireAt ? slot : slot + 1;
+            evictions.increment();
+        }
+        entries.set(target, entry);
+    }
+
+    @Override
+    public long hits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of lookups which found an entry with the same hash but another key, counted as misses.
+     */
+    long collisions() {
+        return collisions.sum();
+    }
+
+    @Override
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the maximum number of entries.
+     */
+    int capacity() {
+        return entries.length();
+    }
+
+    private int slot(long hash) {
+        int h = (int) (hash ^ (hash >>> 32));
+        return ((h ^ (h >>> 16)) & setMask) << 1;
+    }
+
+    private long now() {
+        return timeToLiveNanos > 0 ? System.nanoTime() : 0L;
+    }
+
+    private static final class Entry<K, V> {
+
+        private final long hash;
+
+        private final K key;
+
+        private final V value;
+
+        private final long expireAt;
+
+        private Entry(long hash, K key, V value, long expireAt) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt != Long.MAX_VALUE && now - expireAt > 0;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.configuration;
+
+/**
+ * How user roles are compared with the configured roles.
+ *
+ * @author GraviteeSource Team
+ */
+public enum MatchingMode {
+    /**
+     * Roles must be equal.
+     */
+    EXACT,
+
+    /**
+     * Roles are compared ignoring case, e.g. <code>Admin</code> matches <code>admin</code>.
+     */
+    CASE_INSENSITIVE,
+
+    /**
+     * Roles are compared ignoring case with Unicode case folding, in normalization form C.
+     */
+    UNICODE
+}
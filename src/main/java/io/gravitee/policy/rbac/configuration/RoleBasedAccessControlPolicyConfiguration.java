@@ -16,6 +16,7 @@
 package io.gravitee.policy.rbac.configuration;
 
 import io.gravitee.policy.api.PolicyConfiguration;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -28,6 +29,32 @@ public class RoleBasedAccessControlPolicyConfiguration implements PolicyConfigur
 
     private boolean strict = true;
 
+    private String expression;
+
+    private List<RoleRule> rules;
+
+    private List<RoleInheritance> roleHierarchy;
+
+    private boolean wildcardGrants;
+
+    private MatchingMode matchingMode = MatchingMode.EXACT;
+
+    private CacheConfiguration cache;
+
+    private DenyCacheConfiguration denyCache;
+
+    private MessageConfiguration message;
+
+    private MetricsConfiguration metrics;
+
+    private RoleSourceConfiguration roleSource;
+
+    private String groupMappingFile;
+
+    private ShadowConfiguration shadow;
+
+    private TenantConfiguration tenant;
+
     public Set<String> getRoles() {
         return roles;
     }
@@ -44,6 +71,110 @@ public class RoleBasedAccessControlPolicyConfiguration implements PolicyConfigur
         this.strict = strict;
     }
 
+    public String getExpression() {
+        return expression;
+    }
+
+    public void setExpression(String expression) {
+        this.expression = expression;
+    }
+
+    public List<RoleRule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<RoleRule> rules) {
+        this.rules = rules;
+    }
+
+    public List<RoleInheritance> getRoleHierarchy() {
+        return roleHierarchy;
+    }
+
+    public void setRoleHierarchy(List<RoleInheritance> roleHierarchy) {
+        this.roleHierarchy = roleHierarchy;
+    }
+
+    public boolean isWildcardGrants() {
+        return wildcardGrants;
+    }
+
+    public void setWildcardGrants(boolean wildcardGrants) {
+        this.wildcardGrants = wildcardGrants;
+    }
+
+    public MatchingMode getMatchingMode() {
+        return matchingMode;
+    }
+
+    public void setMatchingMode(MatchingMode matchingMode) {
+        this.matchingMode = matchingMode;
+    }
+
+    public CacheConfiguration getCache() {
+        return cache;
+    }
+
+    public void setCache(CacheConfiguration cache) {
+        this.cache = cache;
+    }
+
+    public DenyCacheConfiguration getDenyCache() {
+        return denyCache;
+    }
+
+    public void setDenyCache(DenyCacheConfiguration denyCache) {
+        this.denyCache = denyCache;
+    }
+
+    public MessageConfiguration getMessage() {
+        return message;
+    }
+
+    public void setMessage(MessageConfiguration message) {
+        this.message = message;
+    }
+
+    public MetricsConfiguration getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MetricsConfiguration metrics) {
+        this.metrics = metrics;
+    }
+
+    public RoleSourceConfiguration getRoleSource() {
+        return roleSource;
+    }
+
+    public void setRoleSource(RoleSourceConfiguration roleSource) {
+        this.roleSource = roleSource;
+    }
+
+    public String getGroupMappingFile() {
+        return groupMappingFile;
+    }
+
+    public void setGroupMappingFile(String groupMappingFile) {
+        this.groupMappingFile = groupMappingFile;
+    }
+
+    public ShadowConfiguration getShadow() {
+        return shadow;
+    }
+
+    public void setShadow(ShadowConfiguration shadow) {
+        this.shadow = shadow;
+    }
+
+    public TenantConfiguration getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(TenantConfiguration tenant) {
+        this.tenant = tenant;
+    }
+
     public boolean hasRoles() {
         return roles != null && !roles.isEmpty();
     }
@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.configuration;
+
+import java.util.Set;
+
+/**
+ * The roles directly inherited by a role: a user holding {@link #getRole()} also holds {@link #getInherits()}.
+ *
+ * @author GraviteeSource Team
+ */
+public class RoleInheritance {
+
+    private String role;
+
+    private Set<String> inherits;
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public Set<String> getInherits() {
+        return inherits;
+    }
+
+    public void setInherits(Set<String> inherits) {
+        this.inherits = inherits;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.configuration;
+
+import io.gravitee.common.http.HttpMethod;
+import java.util.Set;
+
+/**
+ * The roles required by the requests matching a path pattern and a set of HTTP methods.
+ *
+ * @author GraviteeSource Team
+ */
+public class RoleRule {
+
+    private String path;
+
+    private Set<HttpMethod> methods;
+
+    private Set<String> roles;
+
+    private boolean strict = true;
+
+    private String expression;
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Set<HttpMethod> getMethods() {
+        return methods;
+    }
+
+    public void setMethods(Set<HttpMethod> methods) {
+        this.methods = methods;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public void setRoles(Set<String> roles) {
+        this.roles = roles;
+    }
+
+    public boolean isStrict() {
+        return strict;
+    }
+
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public void setExpression(String expression) {
+        this.expression = expression;
+    }
+
+    public boolean hasRoles() {
+        return roles != null && !roles.isEmpty();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.configuration;
+
+/**
+ * Where the roles of the request are read from when they are not read from the roles attribute.
+ *
+ * @author GraviteeSource Team
+ */
+public class RoleSourceConfiguration {
+
+    /**
+     * Attribute set by the JWT policy with the validated token.
+     */
+    public static final String DEFAULT_TOKEN_ATTRIBUTE = "jwt.token";
+
+    private String claim;
+
+    private String tokenAttribute = DEFAULT_TOKEN_ATTRIBUTE;
+
+    public String getClaim() {
+        return claim;
+    }
+
+    public void setClaim(String claim) {
+        this.claim = claim;
+    }
+
+    public String getTokenAttribute() {
+        return tokenAttribute;
+    }
+
+    public void setTokenAttribute(String tokenAttribute) {
+        this.tokenAttribute = tokenAttribute;
+    }
+
+    public boolean hasClaim() {
+        return claim != null && !claim.isBlank();
+    }
+}
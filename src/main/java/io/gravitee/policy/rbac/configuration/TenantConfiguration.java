@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.configuration;
+
+import java.util.List;
+
+/**
+ * Scope the user roles to the tenant of the request: only the user roles prefixed by the tenant and the separator
+ * (e.g. <code>tenant-a:editor</code>) are checked, without their prefix.
+ *
+ * @author GraviteeSource Team
+ */
+public class TenantConfiguration {
+
+    public static final String DEFAULT_SEPARATOR = ":";
+
+    private boolean enabled;
+
+    private TenantSource source = TenantSource.HEADER;
+
+    private String name;
+
+    private String separator = DEFAULT_SEPARATOR;
+
+    private List<TenantRule> rules;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public TenantSource getSource() {
+        return source;
+    }
+
+    public void setSource(TenantSource source) {
+        this.source = source;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getSeparator() {
+        return separator;
+    }
+
+    public void setSeparator(String separator) {
+        this.separator = separator;
+    }
+
+    public List<TenantRule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<TenantRule> rules) {
+        this.rules = rules;
+    }
+}
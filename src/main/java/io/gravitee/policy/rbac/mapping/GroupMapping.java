@@ -0,0 +1,414 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.mapping;
+
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of the roles mapped to directory groups, read from a mapping file.
+ *
+ * The mapping file holds one entry per line, a group followed by <code>=&gt;</code> and the roles it maps to, separated
+ * by commas and/or spaces. Blank lines and lines starting with <code>#</code> are ignored, the roles of a group declared
+ * on several lines are merged:
+ * <pre>
+ * # Directory groups
+ * CN=Admins,OU=Groups,DC=corp,DC=com =&gt; admin, billing:read
+ * CN=Support,OU=Groups,DC=corp,DC=com =&gt; support
+ * </pre>
+ *
+ * The file is read once into a byte array and its groups, which are usually long distinguished names and by far the
+ * largest part of the mapping, are left in those bytes rather than decoded into strings: the index only adds an
+ * open-addressing table of the offsets of the groups and the ids of the roles they map to. Lines are parsed in place,
+ * only the groups and roles they hold being decoded. Looking up a user role compares its characters with the UTF-8
+ * bytes of the groups in place, without allocating. The mapped roles are few and are interned in the
+ * {@link RoleDictionary}. Changes to the file are loaded into a new index.
+ *
+ * @author GraviteeSource Team
+ */
+public final class GroupMapping {
+
+    /**
+     * A mapping without any group.
+     */
+    public static final GroupMapping EMPTY = new GroupMapping(
+        ByteBuffer.allocate(0),
+        new int[0],
+        new int[0],
+        new int[0],
+        new int[1],
+        new int[0],
+        new String[0]
+    );
+
+    private static final String SEPARATOR = "=>";
+
+    private final ByteBuffer data;
+
+    /**
+     * Offset, length in bytes and hash code of each group.
+     */
+    private final int[] groupOffsets;
+
+    private final int[] groupLengths;
+
+    private final int[] groupHashes;
+
+    /**
+     * The ids of the roles of the group <code>i</code> are <code>roleIds[roleOffsets[i]]</code> to
+     * <code>roleIds[roleOffsets[i + 1] - 1]</code>.
+     */
+    private final int[] roleOffsets;
+
+    private final int[] roleIds;
+
+    private final String[] roles;
+
+    /**
+     * Open-addressing table holding the id of each group plus one, <code>0</code> for an empty slot.
+     */
+    private final int[] slots;
+
+    private final int mask;
+
+    private GroupMapping(
+        ByteBuffer data,
+        int[] groupOffsets,
+        int[] groupLengths,
+        int[] groupHashes,
+        int[] roleOffsets,
+        int[] roleIds,
+        String[] roles
+    ) {
+        this.data = data;
+        this.groupOffsets = groupOffsets;
+        this.groupLengths = groupLengths;
+        this.groupHashes = groupHashes;
+        this.roleOffsets = roleOffsets;
+        this.roleIds = roleIds;
+        this.roles = roles;
+
+        int capacity = Integer.highestOneBit(Math.max(2, groupOffsets.length * 2 - 1)) << 1;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (int group = 0; group < groupOffsets.length; group++) {
+            int slot = spread(groupHashes[group]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = group + 1;
+        }
+    }
+
+    /**
+     * Load a mapping file.
+     *
+     * @param file the mapping file.
+     * @param source the name of the mapping, for error messages.
+     * @return the index of the mapping.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line of the file is not a valid entry.
+     */
+    public static GroupMapping load(Path file, String source) throws IOException {
+        return parse(ByteBuffer.wrap(Files.readAllBytes(file)), source);
+    }
+
+    /**
+     * Parse a mapping held in memory.
+     *
+     * @param data the content of a mapping file, read from its position to its limit.
+     * @param source the name of the mapping, for error messages.
+     * @return the index of the mapping.
+     * @throws IllegalArgumentException if a line is not a valid entry.
+     */
+    public static GroupMapping parse(ByteBuffer data, String source) {
+        ByteBuffer bytes = data.slice();
+        Map<String, Entry> groups = new LinkedHashMap<>();
+        Map<String, Integer> roleIds = new LinkedHashMap<>();
+
+        int line = 0;
+        // Skip the byte order mark of files saved as UTF-8 with BOM
+        int start = bytes.limit() >= 3 && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB && (bytes.get(2) & 0xFF) == 0xBF
+            ? 3
+            : 0;
+        while (start < bytes.limit()) {
+            line++;
+            int end = start;
+            while (end < bytes.limit() && bytes.get(end) != '\n') {
+                end++;
+            }
+            parseLine(bytes, start, end, source, line, groups, roleIds);
+            start = end + 1;
+        }
+
+        int[] groupOffsets = new int[groups.size()];
+        int[] groupLengths = new int[groups.size()];
+        int[] groupHashes = new int[groups.size()];
+        int[] roleOffsets = new int[groups.size() + 1];
+        List<Integer> mappedRoles = new ArrayList<>();
+        int group = 0;
+        for (Map.Entry<String, Entry> entry : groups.entrySet()) {
+            groupOffsets[group] = entry.getValue().offset;
+            groupLengths[group] = entry.getValue().length;
+            groupHashes[group] = entry.getKey().hashCode();
+            mappedRoles.addAll(entry.getValue().roles);
+            roleOffsets[++group] = mappedRoles.size();
+        }
+
+        String[] roles = new String[roleIds.size()];
+        for (Map.Entry<String, Integer> role : roleIds.entrySet()) {
+            roles[role.getValue()] = RoleDictionary.shared().intern(role.getKey());
+        }
+        return new GroupMapping(
+            bytes,
+            groupOffsets,
+            groupLengths,
+            groupHashes,
+            roleOffsets,
+            mappedRoles.stream().mapToInt(Integer::intValue).toArray(),
+            roles
+        );
+    }
+
+    private static void parseLine(
+        ByteBuffer bytes,
+        int start,
+        int end,
+        String source,
+        int line,
+        Map<String, Entry> groups,
+        Map<String, Integer> roleIds
+    ) {
+        int first = start;
+        while (first < end && isWhitespace(bytes.get(first))) {
+            first++;
+        }
+        if (first == end || bytes.get(first) == '#') {
+            return;
+        }
+
+        int separator = first;
+        while (separator < end - 1 && (bytes.get(separator) != '=' || bytes.get(separator + 1) != '>')) {
+            separator++;
+        }
+        int groupEnd = separator < end - 1 ? separator : first;
+        while (groupEnd > first && isWhitespace(bytes.get(groupEnd - 1))) {
+            groupEnd--;
+        }
+        if (groupEnd == first) {
+            throw new IllegalArgumentException("Invalid group mapping " + source + " at line " + line + ": expected <group> => <roles>");
+        }
+
+        String group = decode(bytes, first, groupEnd);
+        Entry entry = groups.get(group);
+        if (entry == null) {
+            entry = new Entry(first, groupEnd - first);
+            groups.put(group, entry);
+        }
+        // Roles are separated by commas and/or whitespaces
+        int position = separator + SEPARATOR.length();
+        while (position < end) {
+            while (position < end && isDelimiter(bytes.get(position))) {
+                position++;
+            }
+            int roleStart = position;
+            while (position < end && !isDelimiter(bytes.get(position))) {
+                position++;
+            }
+            if (position > roleStart) {
+                entry.roles.add(roleIds.computeIfAbsent(decode(bytes, roleStart, position), r -> roleIds.size()));
+            }
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || isWhitespace(b);
+    }
+
+    private static String decode(ByteBuffer bytes, int start, int end) {
+        byte[] content = new byte[end - start];
+        bytes.get(start, content);
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of groups.
+     */
+    public int size() {
+        return groupOffsets.length;
+    }
+
+    /**
+     * @param group a group.
+     * @return the number of roles the group maps to.
+     */
+    public int roleCount(int group) {
+        return roleOffsets[group + 1] - roleOffsets[group];
+    }
+
+    /**
+     * @param group a group.
+     * @param index the index of the role, lower than {@link #roleCount(int)}.
+     * @return the role of the group at the given index.
+     */
+    public String role(int group, int index) {
+        return roles[roleIds[roleOffsets[group] + index]];
+    }
+
+    /**
+     * @param group a group.
+     * @return the name of the group, decoded from the mapping.
+     */
+    public String group(int group) {
+        byte[] bytes = new byte[groupLengths[group]];
+        data.get(groupOffsets[group], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param role a user role, possibly a group.
+     * @return the id of the group or <code>-1</code> if the role is not a group of the mapping.
+     */
+    public int indexOf(Object role) {
+        if (!(role instanceof String)) {
+            return -1;
+        }
+        String str = (String) role;
+        return indexOf(str, 0, str.length());
+    }
+
+    /**
+     * Look for the group held by a region of the given string, without extracting it.
+     *
+     * @param source the string holding the group.
+     * @param start the index of the first character of the group.
+     * @param end the index following the last character of the group.
+     * @return the id of the group or <code>-1</code> if the region is not a group of the mapping.
+     */
+    public int indexOf(String source, int start, int end) {
+        if (groupOffsets.length == 0) {
+            return -1;
+        }
+
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int slot = spread(hash) & mask;
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            int group = entry - 1;
+            if (groupHashes[group] == hash && regionMatches(group, source, start, end)) {
+                return group;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Compare the UTF-8 bytes of a group with the UTF-16 characters of a region.
+     */
+    private boolean regionMatches(int group, String source, int start, int end) {
+        int position = groupOffsets[group];
+        int limit = position + groupLengths[group];
+        int i = start;
+        while (position < limit && i < end) {
+            int b = data.get(position) & 0xFF;
+            if (b < 0x80) {
+                if (source.charAt(i++) != b) {
+                    return false;
+                }
+                position++;
+                continue;
+            }
+
+            int codePoint;
+            int length;
+            if (b >= 0xF0) {
+                codePoint = b & 0x07;
+                length = 4;
+            } else if (b >= 0xE0) {
+                codePoint = b & 0x0F;
+                length = 3;
+            } else {
+                codePoint = b & 0x1F;
+                length = 2;
+            }
+            if (position + length > limit) {
+                return false;
+            }
+            for (int k = 1; k < length; k++) {
+                codePoint = (codePoint << 6) | (data.get(position + k) & 0x3F);
+            }
+            position += length;
+
+            if (Character.isBmpCodePoint(codePoint)) {
+                if (source.charAt(i++) != codePoint) {
+                    return false;
+                }
+            } else if (
+                i + 1 >= end ||
+                source.charAt(i) != Character.highSurrogate(codePoint) ||
+                source.charAt(i + 1) != Character.lowSurrogate(codePoint)
+            ) {
+                return false;
+            } else {
+                i += 2;
+            }
+        }
+        return position == limit && i == end;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "GroupMapping{groups=" + groupOffsets.length + ", roles=" + Arrays.toString(roles) + '}';
+    }
+
+    private static final class Entry {
+
+        private final int offset;
+
+        private final int length;
+
+        private final Set<Integer> roles = new LinkedHashSet<>();
+
+        private Entry(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
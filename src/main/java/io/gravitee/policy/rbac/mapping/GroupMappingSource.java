@@ -0,0 +1,290 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.mapping;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The current {@link GroupMapping} of a mapping file, reloaded when the file changes.
+ *
+ * Mapping files are named relative to a directory configured on the gateway, a name resolving outside of the directory,
+ * even through a symbolic link, is rejected. Errors only mention the name of the file, not its location on the host.
+ * A source is shared by all the policy instances configured with the same file, until the last of them releases it.
+ * The directories of the files are watched by a single daemon thread, stopped once no source remains, which loads
+ * the changed files and swaps their mapping atomically: requests always read a complete mapping and are never blocked
+ * by a reload. Changes are only loaded once no event has been received for {@value Watcher#SETTLE_MILLIS} ms, files
+ * should still be replaced atomically (written to another file then moved) so that a reload never reads a partially
+ * written file. A file which cannot be loaded anymore is reported and its previous mapping kept.
+ *
+ * Listeners are notified of the new mapping on the watching thread. They are weakly referenced, so that undeployed
+ * policy instances can be reclaimed: callers must keep a reference to the listeners they add.
+ *
+ * @author GraviteeSource Team
+ */
+public final class GroupMappingSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupMappingSource.class);
+
+    private static final Map<Path, GroupMappingSource> SOURCES = new ConcurrentHashMap<>();
+
+    private final Path file;
+
+    /**
+     * The name of the file, as configured by the first policy instance, for the messages.
+     */
+    private final String name;
+
+    private final CopyOnWriteArrayList<WeakReference<Consumer<GroupMapping>>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile GroupMapping mapping;
+
+    /**
+     * The number of acquisitions not released yet, guarded by {@link #SOURCES}.
+     */
+    private int references;
+
+    private GroupMappingSource(Path file, String name, GroupMapping mapping) {
+        this.file = file;
+        this.name = name;
+        this.mapping = mapping;
+    }
+
+    /**
+     * @param directory the directory of the mapping files, configured on the gateway.
+     * @param name the name of the mapping file, relative to the directory.
+     * @return the source shared by all the policy instances configured with the file, loading it the first time. It
+     *         must be {@link #release() released} once it is not used anymore.
+     * @throws IllegalArgumentException if the file is not in the directory or cannot be loaded.
+     */
+    public static GroupMappingSource acquire(Path directory, String name) {
+        Path file = resolve(directory, name);
+        synchronized (SOURCES) {
+            GroupMappingSource source = SOURCES.get(file);
+            if (source == null) {
+                try {
+                    source = new GroupMappingSource(file, name, GroupMapping.load(file, name));
+                    Watcher.INSTANCE.watch(file.getParent());
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Unable to load group mapping " + name, e);
+                }
+                SOURCES.put(file, source);
+            }
+            source.references++;
+            return source;
+        }
+    }
+
+    /**
+     * Release an acquisition of the source. The source is not watched anymore once all its acquisitions are released,
+     * and the watching thread is stopped once no source remains.
+     */
+    public void release() {
+        synchronized (SOURCES) {
+            if (references == 0 || --references > 0) {
+                return;
+            }
+            SOURCES.remove(file);
+            Path directory = file.getParent();
+            if (SOURCES.keySet().stream().noneMatch(other -> other.getParent().equals(directory))) {
+                Watcher.INSTANCE.unwatch(directory);
+            }
+        }
+    }
+
+    /**
+     * @return the real path of the mapping file, once checked to be in the directory.
+     */
+    private static Path resolve(Path directory, String name) {
+        try {
+            Path base = directory.toRealPath();
+            Path file = base.resolve(name).normalize();
+            if (file.startsWith(base) && !file.equals(base)) {
+                // Symbolic links are followed, the file they point to must be in the directory as well
+                file = file.toRealPath();
+                if (file.startsWith(base)) {
+                    return file;
+                }
+            }
+        } catch (IOException | InvalidPathException e) {
+            throw new IllegalArgumentException("Unable to load group mapping " + name, e);
+        }
+        throw new IllegalArgumentException("Group mapping " + name + " is not in the group mapping directory");
+    }
+
+    /**
+     * @return the current mapping.
+     */
+    public GroupMapping mapping() {
+        return mapping;
+    }
+
+    /**
+     * @param listener notified of each new mapping, weakly referenced.
+     */
+    public void addListener(Consumer<GroupMapping> listener) {
+        listeners.add(new WeakReference<>(listener));
+    }
+
+    /**
+     * Load the file again, keeping the current mapping if it cannot be loaded.
+     */
+    void reload() {
+        GroupMapping reloaded;
+        try {
+            reloaded = GroupMapping.load(file, name);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to reload group mapping {}, the previous mapping is kept", name, e);
+            return;
+        }
+
+        mapping = reloaded;
+        LOGGER.info("Group mapping {} reloaded: {} groups", name, reloaded.size());
+        for (WeakReference<Consumer<GroupMapping>> reference : listeners) {
+            Consumer<GroupMapping> listener = reference.get();
+            if (listener == null) {
+                listeners.remove(reference);
+                continue;
+            }
+            try {
+                listener.accept(reloaded);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to apply group mapping {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * Single thread watching the directories of all the mapping files.
+     */
+    private static final class Watcher {
+
+        private static final long SETTLE_MILLIS = 100;
+
+        private static final Watcher INSTANCE = new Watcher();
+
+        private final Map<Path, WatchKey> directories = new HashMap<>();
+
+        private WatchService watchService;
+
+        private synchronized void watch(Path directory) throws IOException {
+            if (directories.containsKey(directory)) {
+                return;
+            }
+            if (watchService == null) {
+                WatchService service = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(() -> run(service), "rbac-group-mapping-watcher");
+                thread.setDaemon(true);
+                thread.start();
+                watchService = service;
+            }
+            try {
+                WatchKey key = directory.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.OVERFLOW
+                );
+                directories.put(directory, key);
+            } finally {
+                if (directories.isEmpty()) {
+                    close();
+                }
+            }
+        }
+
+        private synchronized void unwatch(Path directory) {
+            WatchKey key = directories.remove(directory);
+            if (key != null) {
+                key.cancel();
+            }
+            if (directories.isEmpty()) {
+                close();
+            }
+        }
+
+        /**
+         * Close the watch service, which stops its thread.
+         */
+        private void close() {
+            if (watchService == null) {
+                return;
+            }
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to stop watching the group mappings", e);
+            }
+            watchService = null;
+        }
+
+        private static void run(WatchService watchService) {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    Set<GroupMappingSource> changed = new LinkedHashSet<>();
+                    // Files are often written in several steps, wait for the events to settle before reloading them
+                    do {
+                        collect(key, changed);
+                        key.reset();
+                    } while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+                    changed.forEach(GroupMappingSource::reload);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e) {
+                // Stop watching
+            }
+        }
+
+        private static void collect(WatchKey key, Set<GroupMappingSource> changed) {
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost, reload all the files of the directory
+                    for (GroupMappingSource source : SOURCES.values()) {
+                        if (source.file.getParent().equals(directory)) {
+                            changed.add(source);
+                        }
+                    }
+                } else {
+                    GroupMappingSource source = SOURCES.get(directory.resolve((Path) event.context()));
+                    if (source != null) {
+                        changed.add(source);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import io.gravitee.policy.rbac.parser.RolesParser;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Non-strict matcher: the first user role granting a required role is enough.
+ *
+ * @author GraviteeSource Team
+ */
+final class AnyRoleMatcher extends RoleMatcher {
+
+    AnyRoleMatcher(Grants grants, boolean wildcardGrants) {
+        super(grants, wildcardGrants);
+    }
+
+    @Override
+    public boolean matches(Collection<?> userRoles) {
+        if (userRoles == null || userRoles.isEmpty()) {
+            return false;
+        }
+
+        if (lookupIndexedRoles(userRoles)) {
+            for (int id = 0, size = indexedRoles(); id < size; id++) {
+                if (containsIndexedRole(userRoles, id)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (userRoles instanceof RandomAccess) {
+            List<?> list = (List<?>) userRoles;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                if (grantOf(list.get(i)) >= 0) {
+                    return true;
+                }
+            }
+        } else {
+            for (Object role : userRoles) {
+                if (grantOf(role) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean matches(String userRoles) {
+        for (long token = RolesParser.first(userRoles); token != RolesParser.END; token = RolesParser.next(userRoles, token)) {
+            if (grantOf(userRoles, token) >= 0 && RolesParser.isFinal(userRoles, token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import io.gravitee.policy.rbac.parser.RolesParser;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Matcher evaluating a {@link RoleExpression}: the roles of the expression granted by the user roles are collected in a
+ * bitset, which is then evaluated once against the expression. Like {@link LargeStrictRoleMatcher}, expressions of more
+ * than 64 roles reuse the bitset of the current thread.
+ *
+ * @author GraviteeSource Team
+ */
+final class ExpressionRoleMatcher extends RoleMatcher {
+
+    private final long[][] grants;
+
+    private final RoleExpression expression;
+
+    private final int roles;
+
+    private final int words;
+
+    ExpressionRoleMatcher(Grants grants, boolean wildcardGrants, RoleExpression expression) {
+        super(grants, wildcardGrants);
+        this.grants = grants.masks;
+        this.expression = expression;
+        this.roles = expression.roles().size();
+        this.words = grants.masks.length == 0 ? 1 : grants.masks[0].length;
+    }
+
+    @Override
+    public boolean matches(Collection<?> userRoles) {
+        if (userRoles == null) {
+            return false;
+        }
+
+        if (roles <= WORD_SIZE) {
+            long all = roles == WORD_SIZE ? -1L : (1L << roles) - 1;
+            long found = 0L;
+            if (lookupIndexedRoles(userRoles)) {
+                for (int id = 0, size = indexedRoles(); id < size && found != all; id++) {
+                    if (containsIndexedRole(userRoles, id)) {
+                        found |= grants[id][0];
+                    }
+                }
+                return expression.evaluate(found);
+            }
+            for (Object role : userRoles) {
+                int id = grantOf(role);
+                if (id >= 0 && (found |= grants[id][0]) == all) {
+                    break;
+                }
+            }
+            return expression.evaluate(found);
+        }
+
+        long[] found = granted(words);
+        if (lookupIndexedRoles(userRoles)) {
+            for (int id = 0, size = indexedRoles(); id < size; id++) {
+                if (containsIndexedRole(userRoles, id)) {
+                    grant(found, grants[id]);
+                }
+            }
+            return expression.evaluate(found);
+        }
+        for (Object role : userRoles) {
+            int id = grantOf(role);
+            if (id >= 0) {
+                grant(found, grants[id]);
+            }
+        }
+        return expression.evaluate(found);
+    }
+
+    @Override
+    public boolean matches(String userRoles) {
+        if (roles <= WORD_SIZE) {
+            long found = 0L;
+            for (long token = RolesParser.first(userRoles); token != RolesParser.END; token = RolesParser.next(userRoles, token)) {
+                if (RolesParser.isRestart(token)) {
+                    found = 0L;
+                }
+                int id = grantOf(userRoles, token);
+                if (id >= 0) {
+                    found |= grants[id][0];
+                }
+            }
+            return expression.evaluate(found);
+        }
+
+        long[] found = granted(words);
+        for (long token = RolesParser.first(userRoles); token != RolesParser.END; token = RolesParser.next(userRoles, token)) {
+            if (RolesParser.isRestart(token)) {
+                Arrays.fill(found, 0, words, 0L);
+            }
+            int id = grantOf(userRoles, token);
+            if (id >= 0) {
+                grant(found, grants[id]);
+            }
+        }
+        return expression.evaluate(found);
+    }
+
+    private static void grant(long[] found, long[] grant) {
+        for (int word = 0; word < grant.length; word++) {
+            found[word] |= grant[word];
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import io.gravitee.policy.rbac.parser.RolesParser;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Strict matcher for more than 64 required roles. The roles granted are tracked in a bitset sized to the number of
+ * required roles, reused by the evaluations of the same thread.
+ *
+ * @author GraviteeSource Team
+ */
+final class LargeStrictRoleMatcher extends RoleMatcher {
+
+    private final long[][] grants;
+
+    private final int requiredRoles;
+
+    private final int words;
+
+    LargeStrictRoleMatcher(Grants grants, boolean wildcardGrants, int requiredRoles) {
+        super(grants, wildcardGrants);
+        this.grants = grants.masks;
+        this.requiredRoles = requiredRoles;
+        this.words = grants.masks[0].length;
+    }
+
+    @Override
+    public boolean matches(Collection<?> userRoles) {
+        if (userRoles == null || userRoles.isEmpty()) {
+            return false;
+        }
+
+        long[] found = granted(words);
+        int remaining = requiredRoles;
+        if (lookupIndexedRoles(userRoles)) {
+            for (int id = 0, size = indexedRoles(); id < size; id++) {
+                if (containsIndexedRole(userRoles, id) && (remaining -= grant(found, grants[id])) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (Object role : userRoles) {
+            int id = grantOf(role);
+            if (id >= 0 && (remaining -= grant(found, grants[id])) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean matches(String userRoles) {
+        long[] found = granted(words);
+        int remaining = requiredRoles;
+        for (long token = RolesParser.first(userRoles); token != RolesParser.END; token = RolesParser.next(userRoles, token)) {
+            if (RolesParser.isRestart(token)) {
+                Arrays.fill(found, 0, words, 0L);
+                remaining = requiredRoles;
+            }
+            int id = grantOf(userRoles, token);
+            if (id >= 0 && (remaining -= grant(found, grants[id])) == 0 && RolesParser.isFinal(userRoles, token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of required roles newly granted.
+     */
+    private static int grant(long[] found, long[] grant) {
+        int granted = 0;
+        for (int word = 0; word < grant.length; word++) {
+            long added = grant[word] & ~found[word];
+            if (added != 0) {
+                found[word] |= added;
+                granted += Long.bitCount(added);
+            }
+        }
+        return granted;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dictionary of the role names shared by all the policy instances of the gateway.
+ *
+ * The roles of the configurations are interned when the policies are created, so that thousands of APIs requiring
+ * the same roles hold a single instance of each role name. User roles read from a string or from a token are looked up
+ * by region without being extracted first: a user role which is required by some policy is resolved to the interned
+ * instance without allocating, and then matched by identity. User roles are never added to the dictionary, which only
+ * grows with the configurations.
+ *
+ * Role names are weakly referenced: the roles which are no longer required by any deployed policy are reclaimed by the
+ * garbage collector and their slots reused. Lookups are lock-free and never allocate, interning is synchronized as it
+ * only happens when a policy is created.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RoleDictionary {
+
+    private static final RoleDictionary SHARED = new RoleDictionary(16);
+
+    private final ReferenceQueue<String> queue = new ReferenceQueue<>();
+
+    /**
+     * Open-addressing table, reclaimed roles remain in their slot until it is reused or the table is rebuilt.
+     */
+    private volatile AtomicReferenceArray<Entry> table;
+
+    /**
+     * Number of slots holding an entry, reclaimed or not. Guarded by <code>this</code>.
+     */
+    private int used;
+
+    /**
+     * Number of roles not reclaimed yet. Guarded by <code>this</code>.
+     */
+    private int size;
+
+    RoleDictionary(int capacity) {
+        this.table = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(2, capacity - 1)) << 1);
+    }
+
+    /**
+     * @return the dictionary shared by all the policy instances.
+     */
+    public static RoleDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param role the role to intern, may be <code>null</code>.
+     * @return the interned instance of the role, the given one if the role was not interned yet.
+     */
+    public synchronized String intern(String role) {
+        if (role == null) {
+            return null;
+        }
+
+        expungeReclaimedRoles();
+        AtomicReferenceArray<Entry> entries = table;
+        int mask = entries.length() - 1;
+        int hash = role.hashCode();
+        int slot = spread(hash) & mask;
+        int free = -1;
+        Entry entry;
+        while ((entry = entries.get(slot)) != null) {
+            String interned = entry.get();
+            if (interned == null) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (entry.hash == hash && interned.equals(role)) {
+                return interned;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (free < 0) {
+            free = slot;
+            used++;
+        }
+        entries.set(free, new Entry(role, hash, queue));
+        size++;
+        if (used * 2 > entries.length()) {
+            rebuild();
+        }
+        return role;
+    }
+
+    /**
+     * @param role the role to look for, may be <code>null</code>.
+     * @return the interned instance of the role or <code>null</code> if the role is not interned.
+     */
+    public String lookup(String role) {
+        return role == null ? null : lookup(role, 0, role.length());
+    }
+
+    /**
+     * Look for the role held by a region of the given string, without extracting it.
+     *
+     * @param source the string holding the role.
+     * @param start the index of the first character of the role.
+     * @param end the index following the last character of the role.
+     * @return the interned instance of the role or <code>null</code> if the role is not interned.
+     */
+    public String lookup(String source, int start, int end) {
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        AtomicReferenceArray<Entry> entries = table;
+        int mask = entries.length() - 1;
+        int slot = spread(hash) & mask;
+        Entry entry;
+        while ((entry = entries.get(slot)) != null) {
+            if (entry.hash == hash) {
+                String interned = entry.get();
+                if (interned != null && interned.length() == length && interned.regionMatches(0, source, start, length)) {
+                    return interned;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Look for the role held by a region of the given characters, e.g. the text buffer of a JSON parser.
+     *
+     * @param source the characters holding the role.
+     * @param start the index of the first character of the role.
+     * @param end the index following the last character of the role.
+     * @return the interned instance of the role or <code>null</code> if the role is not interned.
+     */
+    public String lookup(char[] source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source[i];
+        }
+
+        AtomicReferenceArray<Entry> entries = table;
+        int mask = entries.length() - 1;
+        int slot = spread(hash) & mask;
+        Entry entry;
+        while ((entry = entries.get(slot)) != null) {
+            if (entry.hash == hash) {
+                String interned = entry.get();
+                if (interned != null && regionMatches(interned, source, start, end)) {
+                    return interned;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of interned roles, including the ones which have been reclaimed since the last interning.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void expungeReclaimedRoles() {
+        while (queue.poll() != null) {
+            size--;
+        }
+    }
+
+    /**
+     * Rehash the roles which have not been reclaimed into a table sized for them.
+     */
+    private void rebuild() {
+        AtomicReferenceArray<Entry> entries = table;
+        AtomicReferenceArray<Entry> rebuilt = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 2);
+        int mask = rebuilt.length() - 1;
+        int count = 0;
+        for (int i = 0; i < entries.length(); i++) {
+            Entry entry = entries.get(i);
+            if (entry != null && entry.get() != null) {
+                int slot = spread(entry.hash) & mask;
+                while (rebuilt.get(slot) != null) {
+                    slot = (slot + 1) & mask;
+                }
+                rebuilt.set(slot, entry);
+                count++;
+            }
+        }
+        used = count;
+        table = rebuilt;
+    }
+
+    private static boolean regionMatches(String role, char[] source, int start, int end) {
+        if (role.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (role.charAt(i - start) != source[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry extends WeakReference<String> {
+
+        private final int hash;
+
+        private Entry(String role, int hash, ReferenceQueue<String> queue) {
+            super(role, queue);
+            this.hash = hash;
+        }
+    }
+}
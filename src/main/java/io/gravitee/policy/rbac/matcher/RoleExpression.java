@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Boolean expression over roles, e.g. <code>(admin OR (editor AND region-eu)) AND NOT suspended</code>.
+ *
+ * <pre>
+ * expression := and (('OR' | '||') and)*
+ * and        := unary (('AND' | '&amp;&amp;') unary)*
+ * unary      := ('NOT' | '!') unary | '(' expression ')' | role
+ * role       := '"' quoted role '"' | characters other than whitespaces, '(', ')', '!', '&amp;', '|' and '"'
+ * </pre>
+ *
+ * Keywords are case-insensitive, a role named after a keyword must be quoted. The expression is parsed once into a
+ * tree whose leaves are the ids of its distinct roles, see {@link #roles()}. It is then evaluated against the bitset of
+ * the roles granted to the user, stopping as soon as the result of an operator is known.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RoleExpression {
+
+    private static final byte ROLE = 0;
+    private static final byte NOT = 1;
+    private static final byte AND = 2;
+    private static final byte OR = 3;
+
+    private final List<String> roles;
+
+    private final byte[] operators;
+
+    /**
+     * Role id of a leaf, first operand of an operator.
+     */
+    private final int[] left;
+
+    /**
+     * Second operand of a binary operator.
+     */
+    private final int[] right;
+
+    private final int root;
+
+    private RoleExpression(List<String> roles, byte[] operators, int[] left, int[] right, int root) {
+        this.roles = roles;
+        this.operators = operators;
+        this.left = left;
+        this.right = right;
+        this.root = root;
+    }
+
+    /**
+     * Parse a role expression.
+     *
+     * @param expression the expression to parse.
+     * @return the parsed expression.
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    public static RoleExpression parse(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Role expression must not be null");
+        }
+        return new Parser(expression).parse();
+    }
+
+    /**
+     * @return the distinct roles of the expression, the position of a role being its id.
+     */
+    public List<String> roles() {
+        return roles;
+    }
+
+    /**
+     * @param normalizer how roles are compared.
+     * @return this expression over the normalized forms of its roles, roles having the same normalized form getting
+     *         the same id.
+     */
+    RoleExpression normalize(RoleNormalizer normalizer) {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        int[] normalizedIds = new int[roles.size()];
+        for (int id = 0; id < roles.size(); id++) {
+            normalizedIds[id] = ids.computeIfAbsent(normalizer.normalize(roles.get(id)), r -> ids.size());
+        }
+        if (new ArrayList<>(ids.keySet()).equals(roles)) {
+            return this;
+        }
+
+        int[] normalizedLeft = left.clone();
+        for (int node = 0; node < operators.length; node++) {
+            if (operators[node] == ROLE) {
+                normalizedLeft[node] = normalizedIds[left[node]];
+            }
+        }
+        List<String> distinct = Collections.unmodifiableList(new ArrayList<>(ids.keySet()));
+        return new RoleExpression(distinct, operators, normalizedLeft, right, root);
+    }
+
+    /**
+     * @param granted the bitset of the granted roles, for expressions of up to 64 roles.
+     * @return the result of the expression.
+     */
+    boolean evaluate(long granted) {
+        return evaluate(root, granted);
+    }
+
+    /**
+     * @param granted the bitset of the granted roles.
+     * @return the result of the expression.
+     */
+    boolean evaluate(long[] granted) {
+        return evaluate(root, granted);
+    }
+
+    private boolean evaluate(int node, long granted) {
+        switch (operators[node]) {
+            case ROLE:
+                return (granted & (1L << left[node])) != 0L;
+            case NOT:
+                return !evaluate(left[node], granted);
+            case AND:
+                return evaluate(left[node], granted) && evaluate(right[node], granted);
+            default:
+                return evaluate(left[node], granted) || evaluate(right[node], granted);
+        }
+    }
+
+    private boolean evaluate(int node, long[] granted) {
+        switch (operators[node]) {
+            case ROLE:
+                return (granted[left[node] / RoleMatcher.WORD_SIZE] & (1L << left[node])) != 0L;
+            case NOT:
+                return !evaluate(left[node], granted);
+            case AND:
+                return evaluate(left[node], granted) && evaluate(right[node], granted);
+            default:
+                return evaluate(left[node], granted) || evaluate(right[node], granted);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toString(root);
+    }
+
+    private String toString(int node) {
+        switch (operators[node]) {
+            case ROLE:
+                return '"' + roles.get(left[node]) + '"';
+            case NOT:
+                return "NOT " + toString(left[node]);
+            default:
+                return "(" + toString(left[node]) + (operators[node] == AND ? " AND " : " OR ") + toString(right[node]) + ")";
+        }
+    }
+
+    /**
+     * Recursive descent parser building the nodes of the expression in post-order.
+     */
+    private static final class Parser {
+
+        private final String expression;
+
+        private final Map<String, Integer> roles = new LinkedHashMap<>();
+
+        private final List<int[]> nodes = new ArrayList<>();
+
+        private int position;
+
+        private Parser(String expression) {
+            this.expression = expression;
+        }
+
+        private RoleExpression parse() {
+            int root = or();
+            skipWhitespaces();
+            if (position < expression.length()) {
+                throw invalid("unexpected '" + expression.charAt(position) + "'");
+            }
+
+            int size = nodes.size();
+            byte[] operators = new byte[size];
+            int[] left = new int[size];
+            int[] right = new int[size];
+            for (int i = 0; i < size; i++) {
+                int[] node = nodes.get(i);
+                operators[i] = (byte) node[0];
+                left[i] = node[1];
+                right[i] = node[2];
+            }
+            List<String> distinct = Collections.unmodifiableList(new ArrayList<>(roles.keySet()));
+            return new RoleExpression(distinct, operators, left, right, root);
+        }
+
+        private int or() {
+            int node = and();
+            while (keyword("OR", "||")) {
+                node = node(OR, node, and());
+            }
+            return node;
+        }
+
+        private int and() {
+            int node = unary();
+            while (keyword("AND", "&&")) {
+                node = node(AND, node, unary());
+            }
+            return node;
+        }
+
+        private int unary() {
+            if (keyword("NOT", "!")) {
+                return node(NOT, unary(), -1);
+            }
+
+            skipWhitespaces();
+            if (position == expression.length()) {
+                throw invalid("role expected");
+            }
+
+            char c = expression.charAt(position);
+            if (c == '(') {
+                position++;
+                int node = or();
+                skipWhitespaces();
+                if (position == expression.length() || expression.charAt(position) != ')') {
+                    throw invalid("')' expected");
+                }
+                position++;
+                return node;
+            } else if (c == ')') {
+                throw invalid("role expected");
+            }
+            return node(ROLE, role(), -1);
+        }
+
+        private int role() {
+            String role;
+            if (expression.charAt(position) == '"') {
+                int end = expression.indexOf('"', position + 1);
+                if (end < 0) {
+                    throw invalid("unterminated quoted role");
+                }
+                role = expression.substring(position + 1, end);
+                position = end + 1;
+            } else {
+                int start = position;
+                while (position < expression.length() && isRoleCharacter(expression.charAt(position))) {
+                    position++;
+                }
+                role = expression.substring(start, position);
+                if (role.isEmpty()) {
+                    throw invalid("role expected");
+                }
+            }
+            return roles.computeIfAbsent(role, r -> roles.size());
+        }
+
+        private boolean keyword(String word, String symbol) {
+            skipWhitespaces();
+            if (expression.startsWith(symbol, position)) {
+                position += symbol.length();
+                return true;
+            }
+            int end = position + word.length();
+            if (
+                expression.regionMatches(true, position, word, 0, word.length()) &&
+                (end == expression.length() || !isRoleCharacter(expression.charAt(end)))
+            ) {
+                position = end;
+                return true;
+            }
+            return false;
+        }
+
+        private int node(byte operator, int left, int right) {
+            nodes.add(new int[] { operator, left, right });
+            return nodes.size() - 1;
+        }
+
+        private void skipWhitespaces() {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+        }
+
+        private static boolean isRoleCharacter(char c) {
+            return !Character.isWhitespace(c) && c != '(' && c != ')' && c != '!' && c != '&' && c != '|' && c != '"';
+        }
+
+        private IllegalArgumentException invalid(String reason) {
+            return new IllegalArgumentException("Invalid role expression at position " + position + ": " + reason);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Role inheritance, e.g. <code>admin</code> inherits <code>editor</code> which inherits <code>viewer</code>.
+ *
+ * The hierarchy is compiled into its transitive closure: {@link #inherited(String)} directly returns all the roles
+ * inherited by a role, whatever the depth of the hierarchy. Cycles are rejected when compiling.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RoleHierarchy {
+
+    public static final RoleHierarchy EMPTY = new RoleHierarchy(Collections.emptyMap());
+
+    private final Map<String, Set<String>> closure;
+
+    private RoleHierarchy(Map<String, Set<String>> closure) {
+        this.closure = closure;
+    }
+
+    /**
+     * Compile the given inheritance definition.
+     *
+     * @param inheritance the roles directly inherited by each role, may be <code>null</code>.
+     * @return the compiled hierarchy.
+     * @throws IllegalArgumentException if the definition contains a cycle.
+     */
+    public static RoleHierarchy compile(Map<String, ? extends Collection<String>> inheritance) {
+        if (inheritance == null || inheritance.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, Set<String>> closure = new LinkedHashMap<>();
+        Set<String> visiting = new LinkedHashSet<>();
+        for (String role : inheritance.keySet()) {
+            resolve(role, inheritance, closure, visiting);
+        }
+        closure.values().removeIf(Set::isEmpty);
+        closure.replaceAll((role, inherited) -> Collections.unmodifiableSet(inherited));
+        return new RoleHierarchy(Collections.unmodifiableMap(closure));
+    }
+
+    private static Set<String> resolve(
+        String role,
+        Map<String, ? extends Collection<String>> inheritance,
+        Map<String, Set<String>> closure,
+        Set<String> visiting
+    ) {
+        Set<String> inherited = closure.get(role);
+        if (inherited != null) {
+            return inherited;
+        }
+        if (!visiting.add(role)) {
+            throw new IllegalArgumentException("Cycle detected in role hierarchy: " + cycle(visiting, role));
+        }
+
+        inherited = new LinkedHashSet<>();
+        Collection<String> direct = inheritance.get(role);
+        if (direct != null) {
+            for (String child : direct) {
+                if (child != null) {
+                    inherited.add(child);
+                    inherited.addAll(resolve(child, inheritance, closure, visiting));
+                }
+            }
+        }
+
+        visiting.remove(role);
+        closure.put(role, inherited);
+        return inherited;
+    }
+
+    private static String cycle(Set<String> visiting, String role) {
+        Deque<String> path = new ArrayDeque<>();
+        boolean inCycle = false;
+        for (String visited : visiting) {
+            inCycle |= visited.equals(role);
+            if (inCycle) {
+                path.add(visited);
+            }
+        }
+        path.add(role);
+        return String.join(" > ", path);
+    }
+
+    /**
+     * @return the roles inheriting at least one other role.
+     */
+    public Set<String> roles() {
+        return closure.keySet();
+    }
+
+    /**
+     * @param role a role.
+     * @return all the roles inherited by the given role, directly or not.
+     */
+    public Set<String> inherited(String role) {
+        return closure.getOrDefault(role, Collections.emptySet());
+    }
+}
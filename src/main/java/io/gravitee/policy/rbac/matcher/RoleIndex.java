@@ -0,0 +1,282 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Immutable open-addressing table assigning a dense id to each configured role.
+ *
+ * The table is built once when the policy is created and is only read afterwards, so lookups are lock-free
+ * and never allocate. String hash codes are cached by the JVM, which means looking up the same user role
+ * instance again only costs the probe and the equality check.
+ *
+ * Users can present thousands of roles, most of them granting nothing. Before hashing a role, its length and three of
+ * its characters are checked against a Bloom filter of the indexed roles, which rejects most of the roles which are not
+ * indexed in constant time, whatever their length.
+ *
+ * When roles are not compared exactly, the table holds the normalized roles, see {@link RoleNormalizer}. The hash of
+ * a looked up role is then computed over its folded characters, which are compared one by one with the table.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RoleIndex {
+
+    private final String[] keys;
+
+    private final int[] ids;
+
+    private final String[] roles;
+
+    private final int mask;
+
+    private final RoleNormalizer normalizer;
+
+    /**
+     * Bloom filter of the indexed roles, two bits per role out of 16, see {@link #mightContain(String, int, int)}.
+     */
+    private final long[] filter;
+
+    private final int filterMask;
+
+    private RoleIndex(String[] roles, RoleNormalizer normalizer) {
+        this.roles = roles;
+        this.normalizer = normalizer;
+
+        int bits = Integer.highestOneBit(Math.max(Long.SIZE, roles.length * 16 - 1)) << 1;
+        this.filter = new long[bits / Long.SIZE];
+        this.filterMask = bits - 1;
+        for (String role : roles) {
+            long hash = filterHash(role, 0, role.length(), RoleNormalizer.EXACT);
+            int first = (int) hash & filterMask;
+            int second = (int) (hash >>> 32) & filterMask;
+            filter[first >>> 6] |= 1L << first;
+            filter[second >>> 6] |= 1L << second;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2, roles.length * 2 - 1)) << 1;
+        this.keys = new String[capacity];
+        this.ids = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (int id = 0; id < roles.length; id++) {
+            int slot = spread(roles[id].hashCode()) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = roles[id];
+            ids[slot] = id;
+        }
+    }
+
+    /**
+     * Build an index over the given roles. Duplicated and <code>null</code> roles are ignored, ids are assigned in
+     * iteration order.
+     *
+     * @param roles the roles to index, may be <code>null</code>.
+     * @return the role index.
+     */
+    public static RoleIndex of(Collection<String> roles) {
+        return of(roles, null);
+    }
+
+    /**
+     * Build an index over the given roles, holding the instances interned by the given dictionary.
+     *
+     * @param roles the roles to index, may be <code>null</code>.
+     * @param dictionary the dictionary interning the roles, <code>null</code> to hold the given instances.
+     * @return the role index.
+     * @see #of(Collection)
+     */
+    public static RoleIndex of(Collection<String> roles, RoleDictionary dictionary) {
+        return of(roles, dictionary, RoleNormalizer.EXACT);
+    }
+
+    /**
+     * Build an index over the normalized forms of the given roles, holding the instances interned by the given
+     * dictionary. Roles having the same normalized form get the same id.
+     *
+     * @param roles the roles to index, may be <code>null</code>.
+     * @param dictionary the dictionary interning the roles, <code>null</code> to hold the normalized instances.
+     * @param normalizer how roles are compared.
+     * @return the role index.
+     * @see #of(Collection)
+     */
+    public static RoleIndex of(Collection<String> roles, RoleDictionary dictionary, RoleNormalizer normalizer) {
+        Set<String> distinct = new LinkedHashSet<>();
+        if (roles != null) {
+            for (String role : roles) {
+                if (role != null) {
+                    String normalized = normalizer.normalize(role);
+                    distinct.add(dictionary == null ? normalized : dictionary.intern(normalized));
+                }
+            }
+        }
+        return new RoleIndex(distinct.toArray(new String[0]), normalizer);
+    }
+
+    /**
+     * @return the number of distinct roles in this index.
+     */
+    public int size() {
+        return roles.length;
+    }
+
+    /**
+     * @param id a role id.
+     * @return the role associated to the given id, normalized if roles are not compared exactly.
+     */
+    public String role(int id) {
+        return roles[id];
+    }
+
+    /**
+     * @param role the role to look for.
+     * @return the id of the role or <code>-1</code> if the role is not indexed.
+     */
+    public int indexOf(Object role) {
+        if (!(role instanceof String)) {
+            return -1;
+        }
+
+        String str = (String) role;
+        if (normalizer != RoleNormalizer.EXACT) {
+            return indexOfFolded(str, 0, str.length());
+        }
+        return indexOfExact(str);
+    }
+
+    /**
+     * Look for the role held by a region of the given string, without extracting it.
+     *
+     * @param source the string holding the role.
+     * @param start the index of the first character of the role.
+     * @param end the index following the last character of the role.
+     * @return the id of the role or <code>-1</code> if the role is not indexed.
+     */
+    public int indexOf(String source, int start, int end) {
+        if (normalizer != RoleNormalizer.EXACT) {
+            return indexOfFolded(source, start, end);
+        } else if (!mightContain(source, start, end)) {
+            return -1;
+        }
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int slot = spread(hash) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key.length() == length && key.regionMatches(0, source, start, length)) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int indexOfExact(String str) {
+        if (!mightContain(str, 0, str.length())) {
+            return -1;
+        }
+        int slot = spread(str.hashCode()) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key == str || key.equals(str)) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int indexOfFolded(String source, int start, int end) {
+        if (!normalizer.isFoldable(source, start, end)) {
+            // Roles which cannot be folded character by character, e.g. non-ASCII roles compared as Unicode, are copied
+            return indexOfExact(normalizer.normalize(source.substring(start, end)));
+        } else if (!mightContain(source, start, end)) {
+            return -1;
+        }
+
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + normalizer.fold(source.charAt(i));
+        }
+
+        int slot = spread(hash) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key.length() == length && foldedMatches(key, source, start)) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean foldedMatches(String key, String source, int start) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != normalizer.fold(source.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>false</code> if the role held by the region of the given string, folded if roles are not compared
+     *         exactly, is not indexed, <code>true</code> if it may be.
+     */
+    private boolean mightContain(String source, int start, int end) {
+        long hash = filterHash(source, start, end, normalizer);
+        int first = (int) hash & filterMask;
+        int second = (int) (hash >>> 32) & filterMask;
+        return (filter[first >>> 6] & (1L << first)) != 0 && (filter[second >>> 6] & (1L << second)) != 0;
+    }
+
+    /**
+     * Hash of the length and of the first, middle and last characters of a role, computed in constant time.
+     */
+    private static long filterHash(String source, int start, int end, RoleNormalizer normalizer) {
+        int length = end - start;
+        if (length == 0) {
+            return mix(0L);
+        }
+        char first = source.charAt(start);
+        char middle = source.charAt(start + (length >>> 1));
+        char last = source.charAt(end - 1);
+        if (normalizer != RoleNormalizer.EXACT) {
+            first = normalizer.fold(first);
+            middle = normalizer.fold(middle);
+            last = normalizer.fold(last);
+        }
+        return mix(((length * 31L + first) * 31L + middle) * 31L + last);
+    }
+
+    private static long mix(long hash) {
+        hash *= 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
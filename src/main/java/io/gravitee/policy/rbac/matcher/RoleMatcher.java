@@ -0,0 +1,463 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import io.gravitee.policy.rbac.mapping.GroupMapping;
+import io.gravitee.policy.rbac.parser.RolesParser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+/**
+ * Check user roles against the roles required by a policy instance.
+ *
+ * A matcher is compiled once from the policy configuration and is then shared by all the requests going through
+ * the policy: implementations are immutable and must not allocate when evaluating user roles.
+ *
+ * Each required role gets a dense id. The matcher indexes every user role granting at least one required role, either
+ * the required role itself or a role inheriting it through the {@link RoleHierarchy}, and associates it with the
+ * bitset of the required roles it grants. Evaluating a user role is then a single lookup, whatever the depth of the
+ * hierarchy.
+ *
+ * Required roles ending with <code>*</code> are prefix patterns, and user roles ending with <code>*</code> can grant
+ * all the required roles starting with their prefix (wildcard grants). Roles which are not indexed are then looked
+ * for in a {@link RoleTrie}, whose slots follow the ids of the indexed roles in the grants of the matcher.
+ *
+ * User roles can also be directory groups, mapped to roles by a {@link GroupMapping}. The required roles granted by the
+ * roles of each group are resolved when the matcher is compiled, and follow the slots of the trie in the grants of the
+ * matcher: evaluating a group is a lookup in the mapping, whatever the number of roles it maps to.
+ *
+ * Roles are compared exactly unless a {@link RoleNormalizer} is given: the required roles and the roles of the hierarchy
+ * and of the groups are then normalized when the matcher is compiled, and user roles are folded while being looked up.
+ * Groups themselves are always compared exactly.
+ *
+ * When the user roles are a set larger than the index, and only indexed roles can grant required roles, the matcher
+ * looks for the indexed roles in the set instead of looking up every user role: iterating the smaller side keeps the
+ * evaluation cost independent of the number of roles of the user.
+ *
+ * Role names are interned in the {@link RoleDictionary} shared by all the matchers of the gateway.
+ *
+ * @author GraviteeSource Team
+ */
+public abstract class RoleMatcher {
+
+    /**
+     * Maximum number of required roles that can be tracked in a single <code>long</code>.
+     */
+    static final int WORD_SIZE = Long.SIZE;
+
+    /**
+     * The bitset of the required roles granted, reused by the evaluations of more than 64 roles on the same thread.
+     */
+    private static final ThreadLocal<long[]> GRANTED = ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * The user roles granting at least one required role.
+     */
+    private final RoleIndex index;
+
+    /**
+     * The required roles, to evaluate patterns and wildcard grants. <code>null</code> if there is none to evaluate.
+     */
+    private final RoleTrie trie;
+
+    private final boolean wildcardGrants;
+
+    /**
+     * The groups mapped to roles. <code>null</code> if there is no group to evaluate.
+     */
+    private final GroupMapping groups;
+
+    /**
+     * The position, in the grants of the matcher, of the required roles granted by each group, <code>-1</code> if the
+     * group does not grant any.
+     */
+    private final int[] groupGrants;
+
+    /**
+     * <code>true</code> if the indexed roles can be looked for in a set of user roles, see
+     * {@link #lookupIndexedRoles(Collection)}.
+     */
+    private final boolean indexedRolesOnly;
+
+    RoleMatcher(Grants grants, boolean wildcardGrants) {
+        this.index = grants.index;
+        this.trie = grants.trie;
+        this.wildcardGrants = wildcardGrants;
+        this.groups = grants.groups;
+        this.groupGrants = grants.groupGrants;
+        this.indexedRolesOnly = trie == null && groups == null && grants.normalizer == RoleNormalizer.EXACT;
+    }
+
+    /**
+     * Compile the required roles into a matcher, compared exactly, without hierarchy nor groups.
+     *
+     * @param roles the required roles, roles ending with <code>*</code> are prefix patterns.
+     * @param strict <code>true</code> if the user must have all the required roles, <code>false</code> if at least one
+     *               of them is enough.
+     * @return the compiled matcher.
+     */
+    public static RoleMatcher compile(Collection<String> roles, boolean strict) {
+        return compile(roles, strict, Options.DEFAULT);
+    }
+
+    /**
+     * Compile the required roles into a matcher.
+     *
+     * @param roles the required roles, roles ending with <code>*</code> are prefix patterns.
+     * @param strict <code>true</code> if the user must have all the required roles, <code>false</code> if at least one
+     *               of them is enough.
+     * @param options how the user roles grant the required roles.
+     * @return the compiled matcher.
+     */
+    public static RoleMatcher compile(Collection<String> roles, boolean strict, Options options) {
+        RoleIndex required = RoleIndex.of(roles, RoleDictionary.shared(), options.normalizer);
+        Grants grants = Grants.compile(required, options);
+
+        if (!strict) {
+            return new AnyRoleMatcher(grants, options.wildcardGrants);
+        } else if (required.size() <= WORD_SIZE) {
+            return new StrictRoleMatcher(grants, options.wildcardGrants, required.size());
+        } else {
+            return new LargeStrictRoleMatcher(grants, options.wildcardGrants, required.size());
+        }
+    }
+
+    /**
+     * Compile a role expression into a matcher.
+     *
+     * @param expression the role expression, its roles can be prefix patterns.
+     * @param options how the user roles grant the roles of the expression.
+     * @return the compiled matcher.
+     */
+    public static RoleMatcher compile(RoleExpression expression, Options options) {
+        RoleExpression normalized = expression.normalize(options.normalizer);
+        RoleIndex required = RoleIndex.of(normalized.roles(), RoleDictionary.shared(), options.normalizer);
+        Grants grants = Grants.compile(required, options);
+        return new ExpressionRoleMatcher(grants, options.wildcardGrants, normalized);
+    }
+
+    /**
+     * Check the given user roles against the required roles. Non-string elements are ignored.
+     *
+     * @param userRoles the roles of the current user.
+     * @return <code>true</code> if the user roles satisfy the required roles.
+     */
+    public abstract boolean matches(Collection<?> userRoles);
+
+    /**
+     * Check the given user roles against the required roles. The roles are read with {@link RolesParser}, either as
+     * a JSON array or as a space / comma separated list.
+     *
+     * @param userRoles the roles of the current user.
+     * @return <code>true</code> if the user roles satisfy the required roles.
+     */
+    public abstract boolean matches(String userRoles);
+
+    /**
+     * @param role a user role.
+     * @return the position, in the grants of the matcher, of the required roles granted by the user role, or
+     * <code>-1</code> if it does not grant any.
+     */
+    protected final int grantOf(Object role) {
+        int id = index.indexOf(role);
+        if (id >= 0 || (trie == null && groups == null) || !(role instanceof String)) {
+            return id;
+        }
+        String str = (String) role;
+        return unindexedGrantOf(str, 0, str.length());
+    }
+
+    /**
+     * @param userRoles the user roles string.
+     * @param token a token read by {@link RolesParser} from the user roles string.
+     * @return the position, in the grants of the matcher, of the required roles granted by the user role, or
+     * <code>-1</code> if it does not grant any.
+     */
+    protected final int grantOf(String userRoles, long token) {
+        if (RolesParser.isEscaped(token)) {
+            return grantOf(RolesParser.value(userRoles, token));
+        }
+        int start = RolesParser.start(token);
+        int end = RolesParser.end(token);
+        int id = index.indexOf(userRoles, start, end);
+        if (id >= 0 || (trie == null && groups == null)) {
+            return id;
+        }
+        return unindexedGrantOf(userRoles, start, end);
+    }
+
+    /**
+     * @param userRoles the user roles.
+     * @return <code>true</code> if the indexed roles should be looked for in the user roles, with
+     *         {@link #indexedRoles()} and {@link #containsIndexedRole(Collection, int)}, rather than each user role in
+     *         the index: the user roles are a set, larger than the index, and only indexed roles grant required roles.
+     *         Sorted sets are always iterated as their comparator may not be consistent with equals.
+     */
+    protected final boolean lookupIndexedRoles(Collection<?> userRoles) {
+        return indexedRolesOnly && userRoles instanceof Set && !(userRoles instanceof SortedSet) && userRoles.size() > index.size();
+    }
+
+    /**
+     * @return the number of indexed roles, the position of an indexed role in the grants of the matcher being its id.
+     */
+    protected final int indexedRoles() {
+        return index.size();
+    }
+
+    /**
+     * @param userRoles the user roles.
+     * @param id the id of an indexed role.
+     * @return <code>true</code> if the user roles contain the indexed role.
+     */
+    protected final boolean containsIndexedRole(Collection<?> userRoles, int id) {
+        return userRoles.contains(index.role(id));
+    }
+
+    /**
+     * @param words the number of words of the bitset.
+     * @return the cleared bitset of the current thread, of at least <code>words</code> words, to be used until the end
+     *         of the evaluation only.
+     */
+    protected static long[] granted(int words) {
+        long[] granted = GRANTED.get();
+        if (granted.length < words) {
+            granted = new long[words];
+            GRANTED.set(granted);
+        } else {
+            Arrays.fill(granted, 0, words, 0L);
+        }
+        return granted;
+    }
+
+    /**
+     * Look for a role which is not indexed in the trie, then in the groups.
+     */
+    private int unindexedGrantOf(String source, int start, int end) {
+        if (trie != null) {
+            int slot = trie.slotOf(source, start, end, wildcardGrants);
+            if (slot >= 0) {
+                return index.size() + slot;
+            }
+        }
+        if (groups != null) {
+            int group = groups.indexOf(source, start, end);
+            if (group >= 0) {
+                return groupGrants[group];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The user roles granting required roles, and the required roles they grant.
+     */
+    static final class Grants {
+
+        private final RoleIndex index;
+
+        private final RoleTrie trie;
+
+        /**
+         * The required roles granted by each indexed role, followed by those granted by each slot of the trie, then by
+         * each group granting at least one required role.
+         */
+        final long[][] masks;
+
+        private final GroupMapping groups;
+
+        private final int[] groupGrants;
+
+        private final RoleNormalizer normalizer;
+
+        private Grants(RoleIndex index, RoleTrie trie, long[][] masks, GroupMapping groups, int[] groupGrants, RoleNormalizer normalizer) {
+            this.index = index;
+            this.trie = trie;
+            this.masks = masks;
+            this.groups = groups;
+            this.groupGrants = groupGrants;
+            this.normalizer = normalizer;
+        }
+
+        private static Grants compile(RoleIndex required, Options options) {
+            RoleHierarchy hierarchy = options.hierarchy;
+            boolean wildcardGrants = options.wildcardGrants;
+            GroupMapping groups = options.groups;
+            RoleNormalizer normalizer = options.normalizer;
+            int words = Math.max(1, (required.size() + WORD_SIZE - 1) / WORD_SIZE);
+
+            boolean patterns = false;
+            for (int id = 0; id < required.size() && !patterns; id++) {
+                patterns = RoleTrie.isPattern(required.role(id));
+            }
+            RoleTrie trie = RoleTrie.compile(required, words, normalizer);
+
+            Map<String, long[]> grants = new LinkedHashMap<>();
+            for (int id = 0; id < required.size(); id++) {
+                grant(grants, required.role(id), id, words);
+            }
+            for (String inheriting : hierarchy.roles()) {
+                String role = normalizer.normalize(inheriting);
+                for (String inherited : hierarchy.inherited(inheriting)) {
+                    int id = required.indexOf(inherited);
+                    if (id >= 0) {
+                        grant(grants, role, id, words);
+                    }
+                    // Patterns of the hierarchy are part of the configuration, they always grant their prefix.
+                    grant(grants, role, trie, inherited, true, words);
+                }
+            }
+            // Indexed roles are not looked for in the trie at runtime, fold the patterns they match into their grants.
+            for (Map.Entry<String, long[]> granted : grants.entrySet()) {
+                grant(grants, granted.getKey(), trie, granted.getKey(), wildcardGrants, words);
+            }
+
+            RoleIndex index = RoleIndex.of(grants.keySet(), RoleDictionary.shared(), normalizer);
+            // Without patterns nor wildcard grants, a role which is not indexed cannot grant anything.
+            if (!patterns && !wildcardGrants) {
+                trie = null;
+            }
+            int slots = trie == null ? 0 : trie.slots();
+            long[][] masks = new long[index.size() + slots][];
+            for (int i = 0; i < index.size(); i++) {
+                masks[i] = grants.get(index.role(i));
+            }
+            for (int slot = 0; slot < slots; slot++) {
+                masks[index.size() + slot] = trie.mask(slot);
+            }
+
+            if (groups == null || groups.size() == 0) {
+                return new Grants(index, trie, masks, null, null, normalizer);
+            }
+            int[] groupGrants = new int[groups.size()];
+            List<long[]> groupMasks = new ArrayList<>();
+            for (int group = 0; group < groups.size(); group++) {
+                long[] granted = null;
+                for (int i = 0; i < groups.roleCount(group); i++) {
+                    String role = groups.role(group, i);
+                    int position = index.indexOf(role);
+                    if (position < 0 && trie != null) {
+                        int slot = trie.slotOf(role, 0, role.length(), wildcardGrants);
+                        position = slot < 0 ? -1 : index.size() + slot;
+                    }
+                    if (position >= 0) {
+                        granted = granted == null ? new long[words] : granted;
+                        for (int word = 0; word < words; word++) {
+                            granted[word] |= masks[position][word];
+                        }
+                    }
+                }
+                groupGrants[group] = granted == null ? -1 : masks.length + groupMasks.size();
+                if (granted != null) {
+                    groupMasks.add(granted);
+                }
+            }
+            if (groupMasks.isEmpty()) {
+                // No group grants a required role, groups are not even looked up
+                return new Grants(index, trie, masks, null, null, normalizer);
+            }
+            long[][] allMasks = Arrays.copyOf(masks, masks.length + groupMasks.size());
+            for (int i = 0; i < groupMasks.size(); i++) {
+                allMasks[masks.length + i] = groupMasks.get(i);
+            }
+            return new Grants(index, trie, allMasks, groups, groupGrants, normalizer);
+        }
+
+        private static void grant(Map<String, long[]> grants, String role, int id, int words) {
+            grants.computeIfAbsent(role, r -> new long[words])[id / WORD_SIZE] |= 1L << id;
+        }
+
+        private static void grant(Map<String, long[]> grants, String role, RoleTrie trie, String granting, boolean wildcard, int words) {
+            int slot = trie.slotOf(granting, 0, granting.length(), wildcard);
+            if (slot >= 0) {
+                long[] mask = trie.mask(slot);
+                long[] granted = grants.computeIfAbsent(role, r -> new long[words]);
+                for (int word = 0; word < words; word++) {
+                    granted[word] |= mask[word];
+                }
+            }
+        }
+
+        long[] singleWordMasks() {
+            long[] singleWordMasks = new long[masks.length];
+            for (int i = 0; i < masks.length; i++) {
+                singleWordMasks[i] = masks[i][0];
+            }
+            return singleWordMasks;
+        }
+    }
+
+    /**
+     * How the user roles grant the required roles, besides holding them. Options are immutable, each setting returns
+     * a copy.
+     */
+    public static final class Options {
+
+        /**
+         * Roles compared exactly, without hierarchy, wildcard grants nor groups.
+         */
+        public static final Options DEFAULT = new Options(RoleHierarchy.EMPTY, false, null, RoleNormalizer.EXACT);
+
+        private final RoleHierarchy hierarchy;
+
+        private final boolean wildcardGrants;
+
+        private final GroupMapping groups;
+
+        private final RoleNormalizer normalizer;
+
+        private Options(RoleHierarchy hierarchy, boolean wildcardGrants, GroupMapping groups, RoleNormalizer normalizer) {
+            this.hierarchy = hierarchy;
+            this.wildcardGrants = wildcardGrants;
+            this.groups = groups;
+            this.normalizer = normalizer;
+        }
+
+        /**
+         * @param hierarchy the roles inherited by other roles.
+         */
+        public Options hierarchy(RoleHierarchy hierarchy) {
+            return new Options(hierarchy, wildcardGrants, groups, normalizer);
+        }
+
+        /**
+         * @param wildcardGrants <code>true</code> if a user role ending with <code>*</code> grants all the required
+         *                       roles starting with its prefix.
+         */
+        public Options wildcardGrants(boolean wildcardGrants) {
+            return new Options(hierarchy, wildcardGrants, groups, normalizer);
+        }
+
+        /**
+         * @param groups the groups mapped to roles, <code>null</code> if user roles are not mapped.
+         */
+        public Options groups(GroupMapping groups) {
+            return new Options(hierarchy, wildcardGrants, groups, normalizer);
+        }
+
+        /**
+         * @param normalizer how roles are compared.
+         */
+        public Options normalizer(RoleNormalizer normalizer) {
+            return new Options(hierarchy, wildcardGrants, groups, normalizer);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * How role names are compared: the configured roles are normalized once when the matcher is compiled, user roles are
+ * then folded character by character while being looked up, without being copied.
+ *
+ * Normalized forms are stable: normalizing a normalized role returns an equal role.
+ *
+ * @author GraviteeSource Team
+ */
+public enum RoleNormalizer {
+    /**
+     * Roles are compared as is.
+     */
+    EXACT {
+        @Override
+        public String normalize(String role) {
+            return role;
+        }
+
+        @Override
+        boolean isFoldable(String source, int start, int end) {
+            return true;
+        }
+
+        @Override
+        char fold(char c) {
+            return c;
+        }
+    },
+
+    /**
+     * Roles are compared ignoring the case of their characters, like {@link String#equalsIgnoreCase(String)}.
+     */
+    CASE_INSENSITIVE {
+        @Override
+        public String normalize(String role) {
+            char[] folded = null;
+            for (int i = 0; i < role.length(); i++) {
+                char c = role.charAt(i);
+                char f = fold(c);
+                if (f != c && folded == null) {
+                    folded = role.toCharArray();
+                }
+                if (folded != null) {
+                    folded[i] = f;
+                }
+            }
+            return folded == null ? role : new String(folded);
+        }
+
+        @Override
+        boolean isFoldable(String source, int start, int end) {
+            return true;
+        }
+
+        @Override
+        char fold(char c) {
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+    },
+
+    /**
+     * Roles are compared in Unicode normalization form C, ignoring their case, so that <code>Straße</code> matches
+     * <code>STRASSE</code> and a precomposed <code>é</code> matches <code>e</code> followed by a combining acute
+     * accent. ASCII roles are folded in place, other roles are normalized into a new string.
+     */
+    UNICODE {
+        @Override
+        public String normalize(String role) {
+            String composed = Normalizer.normalize(role, Normalizer.Form.NFC);
+            return Normalizer.normalize(composed.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT), Normalizer.Form.NFC);
+        }
+
+        @Override
+        boolean isFoldable(String source, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (source.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        char fold(char c) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+    };
+
+    /**
+     * @param role a role.
+     * @return the normalized form of the role.
+     */
+    public abstract String normalize(String role);
+
+    /**
+     * @return <code>true</code> if the normalized form of the role held by the region of the given string is made of
+     *         its characters folded one by one, see {@link #fold(char)}.
+     */
+    abstract boolean isFoldable(String source, int start, int end);
+
+    /**
+     * @param c a character of a foldable role.
+     * @return the character of the normalized form of the role.
+     */
+    abstract char fold(char c);
+}
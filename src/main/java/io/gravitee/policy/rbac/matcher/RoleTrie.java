@@ -0,0 +1,276 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable character trie over the required roles, used to evaluate role patterns.
+ *
+ * A required role ending with {@link #WILDCARD} is a prefix pattern: <code>billing:*</code> is granted by any role
+ * starting with <code>billing:</code>. When wildcard grants are enabled, a user role ending with {@link #WILDCARD}
+ * grants every required role, or required pattern, starting with its prefix.
+ *
+ * Each node is compiled with the required roles granted by a role going through it, so that evaluating a role is a
+ * single walk down the trie, linear in the length of the role, and never allocates. The result of the walk is a slot
+ * identifying the granted required roles, see {@link #mask(int)}.
+ *
+ * When roles are not compared exactly, the trie is compiled over the normalized required roles and the characters of
+ * the walked role are folded on the fly, see {@link RoleNormalizer}.
+ *
+ * @author GraviteeSource Team
+ */
+final class RoleTrie {
+
+    static final char WILDCARD = '*';
+
+    private static final int ROOT = 0;
+
+    /**
+     * Label of each node, children of a node are contiguous and sorted by label.
+     */
+    private final char[] labels;
+
+    private final int[] firstChild;
+
+    private final int[] childCount;
+
+    /**
+     * Slot of the required patterns matched by a role going through a node, <code>-1</code> if none.
+     */
+    private final int[] prefixSlots;
+
+    /**
+     * Slot of the required roles and patterns granted by a wildcard ending at a node, <code>-1</code> if none.
+     */
+    private final int[] wildcardSlots;
+
+    private final long[][] masks;
+
+    private final RoleNormalizer normalizer;
+
+    private RoleTrie(
+        char[] labels,
+        int[] firstChild,
+        int[] childCount,
+        int[] prefixSlots,
+        int[] wildcardSlots,
+        long[][] masks,
+        RoleNormalizer normalizer
+    ) {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.prefixSlots = prefixSlots;
+        this.wildcardSlots = wildcardSlots;
+        this.masks = masks;
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * @param role a role.
+     * @return <code>true</code> if the role ends with {@link #WILDCARD}.
+     */
+    static boolean isPattern(String role) {
+        return !role.isEmpty() && role.charAt(role.length() - 1) == WILDCARD;
+    }
+
+    /**
+     * Compile the required roles into a trie.
+     *
+     * @param required the required roles.
+     * @param words the number of <code>long</code> words of the masks.
+     * @return the compiled trie.
+     */
+    static RoleTrie compile(RoleIndex required, int words) {
+        return compile(required, words, RoleNormalizer.EXACT);
+    }
+
+    /**
+     * Compile the required roles into a trie.
+     *
+     * @param required the required roles, normalized by the given normalizer.
+     * @param words the number of <code>long</code> words of the masks.
+     * @param normalizer how roles are compared.
+     * @return the compiled trie.
+     */
+    static RoleTrie compile(RoleIndex required, int words, RoleNormalizer normalizer) {
+        Node root = new Node(words);
+        for (int id = 0; id < required.size(); id++) {
+            String role = required.role(id);
+            boolean pattern = isPattern(role);
+            int length = pattern ? role.length() - 1 : role.length();
+
+            Node node = root;
+            node.subtree[id / RoleMatcher.WORD_SIZE] |= 1L << id;
+            for (int i = 0; i < length; i++) {
+                node = node.children.computeIfAbsent(role.charAt(i), c -> new Node(words));
+                node.subtree[id / RoleMatcher.WORD_SIZE] |= 1L << id;
+            }
+            if (pattern) {
+                node.pattern[id / RoleMatcher.WORD_SIZE] |= 1L << id;
+            }
+        }
+
+        // Flatten the trie breadth first, so that the children of a node get contiguous positions.
+        List<Node> nodes = new ArrayList<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        root.path = root.pattern.clone();
+        queue.add(root);
+        nodes.add(root);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            node.firstChild = nodes.size();
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                Node next = child.getValue();
+                next.label = child.getKey();
+                next.path = or(node.path, next.pattern);
+                nodes.add(next);
+                queue.add(next);
+            }
+        }
+
+        int size = nodes.size();
+        char[] labels = new char[size];
+        int[] firstChild = new int[size];
+        int[] childCount = new int[size];
+        int[] prefixSlots = new int[size];
+        int[] wildcardSlots = new int[size];
+        List<long[]> masks = new ArrayList<>();
+        for (int n = 0; n < size; n++) {
+            Node node = nodes.get(n);
+            labels[n] = node.label;
+            firstChild[n] = node.firstChild;
+            childCount[n] = node.children.size();
+            prefixSlots[n] = slot(masks, node.path);
+            wildcardSlots[n] = slot(masks, or(node.path, node.subtree));
+        }
+        return new RoleTrie(labels, firstChild, childCount, prefixSlots, wildcardSlots, masks.toArray(new long[0][]), normalizer);
+    }
+
+    private static int slot(List<long[]> masks, long[] mask) {
+        for (long word : mask) {
+            if (word != 0L) {
+                masks.add(mask);
+                return masks.size() - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static long[] or(long[] left, long[] right) {
+        long[] result = left.clone();
+        for (int word = 0; word < result.length; word++) {
+            result[word] |= right[word];
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of slots.
+     */
+    int slots() {
+        return masks.length;
+    }
+
+    /**
+     * @param slot a slot.
+     * @return the required roles granted by the slot.
+     */
+    long[] mask(int slot) {
+        return masks[slot];
+    }
+
+    /**
+     * Walk down the trie with the role held by a region of the given string.
+     *
+     * @param source the string holding the role.
+     * @param start the index of the first character of the role.
+     * @param end the index following the last character of the role.
+     * @param wildcard <code>true</code> if a role ending with {@link #WILDCARD} grants all the roles starting with its
+     *                 prefix.
+     * @return the slot of the required roles granted by the role, <code>-1</code> if none.
+     */
+    int slotOf(String source, int start, int end, boolean wildcard) {
+        if (normalizer == RoleNormalizer.EXACT) {
+            return walk(source, start, end, wildcard, false);
+        } else if (!normalizer.isFoldable(source, start, end)) {
+            String normalized = normalizer.normalize(source.substring(start, end));
+            return walk(normalized, 0, normalized.length(), wildcard, false);
+        }
+        return walk(source, start, end, wildcard, true);
+    }
+
+    private int walk(String source, int start, int end, boolean wildcard, boolean fold) {
+        boolean prefix = wildcard && end > start && source.charAt(end - 1) == WILDCARD;
+        if (prefix) {
+            end--;
+        }
+
+        int node = ROOT;
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            int child = child(node, fold ? normalizer.fold(c) : c);
+            if (child < 0) {
+                return prefixSlots[node];
+            }
+            node = child;
+        }
+        return prefix ? wildcardSlots[node] : prefixSlots[node];
+    }
+
+    private int child(int node, char label) {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midLabel = labels[mid];
+            if (midLabel < label) {
+                low = mid + 1;
+            } else if (midLabel > label) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Node {
+
+        private final TreeMap<Character, Node> children = new TreeMap<>();
+
+        private final long[] pattern;
+
+        private final long[] subtree;
+
+        private long[] path;
+
+        private char label;
+
+        private int firstChild;
+
+        private Node(int words) {
+            this.pattern = new long[words];
+            this.subtree = new long[words];
+        }
+    }
+}
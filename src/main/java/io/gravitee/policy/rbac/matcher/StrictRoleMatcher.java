@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import io.gravitee.policy.rbac.parser.RolesParser;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Strict matcher for up to 64 required roles: the roles granted are tracked in a single <code>long</code> and the
+ * evaluation stops as soon as all of them have been granted.
+ *
+ * @author GraviteeSource Team
+ */
+final class StrictRoleMatcher extends RoleMatcher {
+
+    private final long[] grants;
+
+    private final long required;
+
+    StrictRoleMatcher(Grants grants, boolean wildcardGrants, int requiredRoles) {
+        super(grants, wildcardGrants);
+        this.grants = grants.singleWordMasks();
+        this.required = requiredRoles == WORD_SIZE ? -1L : (1L << requiredRoles) - 1;
+    }
+
+    @Override
+    public boolean matches(Collection<?> userRoles) {
+        if (userRoles == null || userRoles.isEmpty()) {
+            return false;
+        }
+
+        long found = 0L;
+        if (lookupIndexedRoles(userRoles)) {
+            for (int id = 0, size = indexedRoles(); id < size && found != required; id++) {
+                if (containsIndexedRole(userRoles, id)) {
+                    found |= grants[id];
+                }
+            }
+        } else if (userRoles instanceof RandomAccess) {
+            List<?> list = (List<?>) userRoles;
+            for (int i = 0, size = list.size(); i < size && found != required; i++) {
+                int id = grantOf(list.get(i));
+                if (id >= 0) {
+                    found |= grants[id];
+                }
+            }
+        } else {
+            for (Object role : userRoles) {
+                int id = grantOf(role);
+                if (id >= 0 && (found |= grants[id]) == required) {
+                    break;
+                }
+            }
+        }
+        return found == required;
+    }
+
+    @Override
+    public boolean matches(String userRoles) {
+        long found = 0L;
+        for (long token = RolesParser.first(userRoles); token != RolesParser.END; token = RolesParser.next(userRoles, token)) {
+            if (RolesParser.isRestart(token)) {
+                found = 0L;
+            }
+            int id = grantOf(userRoles, token);
+            if (id >= 0) {
+                found |= grants[id];
+            }
+            if (found == required && RolesParser.isFinal(userRoles, token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.metrics;
+
+import io.gravitee.policy.rbac.cache.CacheStatistics;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the decisions taken by a policy instance, by outcome and by format of the user roles, and histogram of
+ * the evaluation latency.
+ *
+ * Counters are {@link LongAdder}s, which stripe concurrent increments instead of contending on a single value. Reading
+ * the clock costs more than the evaluation of small role sets, so only a sample of the evaluations is timed, see
+ * {@link #sampleLatency()}. The statistics of the decision caches of the policy are exposed along, see {@link #caches()}.
+ *
+ * @author GraviteeSource Team
+ */
+public final class DecisionMetrics {
+
+    public enum Outcome {
+        ALLOWED,
+        NO_USER_ROLE,
+        INVALID_USER_ROLES,
+        FORBIDDEN
+    }
+
+    public enum RolesFormat {
+        /**
+         * No user roles.
+         */
+        NONE,
+
+        /**
+         * A list, or another collection, of roles.
+         */
+        LIST,
+
+        /**
+         * A string holding a JSON array of roles.
+         */
+        JSON,
+
+        /**
+         * A string holding a space / comma separated list of roles.
+         */
+        DELIMITED,
+
+        /**
+         * User roles of an unexpected type.
+         */
+        OTHER;
+
+        /**
+         * @param userRoles the user roles.
+         * @return the format of the user roles.
+         */
+        public static RolesFormat of(Object userRoles) {
+            if (userRoles == null) {
+                return NONE;
+            } else if (userRoles instanceof Collection) {
+                return LIST;
+            } else if (userRoles instanceof String) {
+                String str = (String) userRoles;
+                for (int i = 0, length = str.length(); i < length; i++) {
+                    char c = str.charAt(i);
+                    if (!Character.isWhitespace(c)) {
+                        return c == '[' ? JSON : DELIMITED;
+                    }
+                }
+                return DELIMITED;
+            }
+            return OTHER;
+        }
+    }
+
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    private static final RolesFormat[] FORMATS = RolesFormat.values();
+
+    private final LongAdder[] counters = new LongAdder[OUTCOMES.length * FORMATS.length];
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final int samplingMask;
+
+    private final Map<String, CacheStatistics> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param latencySamplingRate time one evaluation out of <code>latencySamplingRate</code>, rounded down to a power
+     *                            of two. <code>1</code> times all the evaluations.
+     */
+    public DecisionMetrics(int latencySamplingRate) {
+        this.samplingMask = Integer.highestOneBit(Math.max(1, latencySamplingRate)) - 1;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the current evaluation should be timed.
+     */
+    public boolean sampleLatency() {
+        return samplingMask == 0 || (ThreadLocalRandom.current().nextInt() & samplingMask) == 0;
+    }
+
+    public void record(Outcome outcome, RolesFormat format) {
+        counters[outcome.ordinal() * FORMATS.length + format.ordinal()].increment();
+    }
+
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * @return the number of decisions with the given outcome for user roles of the given format.
+     */
+    public long count(Outcome outcome, RolesFormat format) {
+        return counters[outcome.ordinal() * FORMATS.length + format.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of decisions with the given outcome.
+     */
+    public long count(Outcome outcome) {
+        long count = 0L;
+        for (RolesFormat format : FORMATS) {
+            count += count(outcome, format);
+        }
+        return count;
+    }
+
+    /**
+     * @return the latency of the sampled evaluations.
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * Expose the statistics of a decision cache with the metrics. Caches are added when the policy is created, before
+     * the metrics are registered, and replaced when the rules of the policy are compiled again.
+     *
+     * @param name the name of the cache.
+     * @param statistics the statistics of the cache.
+     */
+    public void addCache(String name, CacheStatistics statistics) {
+        caches.put(name, statistics);
+    }
+
+    /**
+     * @return the statistics of the decision caches, by name.
+     */
+    public Map<String, CacheStatistics> caches() {
+        return Collections.unmodifiableMap(caches);
+    }
+}
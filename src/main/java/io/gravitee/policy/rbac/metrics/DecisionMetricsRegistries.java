@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link DecisionMetricsRegistry} implementations available to the policy, loaded once.
+ *
+ * @author GraviteeSource Team
+ */
+public final class DecisionMetricsRegistries {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionMetricsRegistries.class);
+
+    private DecisionMetricsRegistries() {}
+
+    /**
+     * Notify all the registries of the metrics of a new policy instance. A failing registry does not prevent the
+     * policy from being created.
+     *
+     * @param name the name configured for the metrics.
+     * @param metrics the metrics of the new policy instance.
+     */
+    public static void register(String name, DecisionMetrics metrics) {
+        for (DecisionMetricsRegistry registry : Holder.REGISTRIES) {
+            try {
+                registry.register(name, metrics);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to register RBAC decision metrics {} to {}", name, registry.getClass().getName(), e);
+            }
+        }
+    }
+
+    private static final class Holder {
+
+        private static final List<DecisionMetricsRegistry> REGISTRIES = load();
+
+        private static List<DecisionMetricsRegistry> load() {
+            List<DecisionMetricsRegistry> registries = new ArrayList<>();
+            ServiceLoader.load(DecisionMetricsRegistry.class, DecisionMetricsRegistry.class.getClassLoader()).forEach(registries::add);
+            return Collections.unmodifiableList(registries);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.metrics;
+
+/**
+ * Hook notified of the metrics of each policy instance created with metrics enabled, to publish them to a monitoring
+ * system.
+ *
+ * Implementations are discovered with {@link java.util.ServiceLoader}, from a
+ * <code>META-INF/services/io.gravitee.policy.rbac.metrics.DecisionMetricsRegistry</code> file. A policy instance lives
+ * as long as its API is deployed: implementations should not keep strong references to the metrics of undeployed
+ * APIs, e.g. by holding them weakly.
+ *
+ * @author GraviteeSource Team
+ */
+public interface DecisionMetricsRegistry {
+    /**
+     * @param name the name configured for the metrics.
+     * @param metrics the metrics of a new policy instance.
+     */
+    void register(String name, DecisionMetrics metrics);
+}
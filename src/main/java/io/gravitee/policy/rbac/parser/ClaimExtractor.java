@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Streaming extraction of the user roles from a single claim of a token payload.
+ *
+ * The payload is either a JSON object or a compact JWT (<code>header.payload.signature</code>) whose payload is
+ * decoded first. The token is expected to have already been validated upstream, the signature is not checked. The
+ * payload is read with a streaming parser: the fields which are not on the claim path are skipped without being
+ * materialized, and the parser stops as soon as the claim has been read, so that no object tree is ever built.
+ *
+ * The claim path is a list of field names separated by dots, e.g. <code>realm_access.roles</code>. Field names
+ * containing dots, such as namespaced claims (<code>https://example.com/roles</code>), are matched as well since a
+ * field is selected as soon as its name is a prefix of the remaining path followed by a dot.
+ *
+ * A claim holding an array is returned as the list of its strings, a claim holding a string (e.g. the
+ * space-separated <code>scope</code> claim) is returned as is.
+ * The roles of an array which are known to the {@link RoleDictionary} are resolved to their interned instance directly
+ * from the text buffer of the parser, only the other ones are materialized.
+ *
+ * @author GraviteeSource Team
+ */
+public final class ClaimExtractor {
+
+    /**
+     * Returned when the token or the claim is not in the expected format.
+     */
+    public static final Object INVALID = new Object() {
+        @Override
+        public String toString() {
+            return "INVALID";
+        }
+    };
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final Base64.Decoder BASE64_URL = Base64.getUrlDecoder();
+
+    private final String path;
+
+    private ClaimExtractor(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @param path the path of the claim holding the roles, e.g. <code>realm_access.roles</code>.
+     * @return the extractor of the claim.
+     * @throws IllegalArgumentException if the path is blank or contains an empty field name.
+     */
+    public static ClaimExtractor of(String path) {
+        if (path == null || path.isBlank()) {
+            throw new IllegalArgumentException("Claim path must not be blank");
+        }
+        if (path.startsWith(".") || path.endsWith(".") || path.contains("..")) {
+            throw new IllegalArgumentException("Invalid claim path: " + path);
+        }
+        return new ClaimExtractor(path);
+    }
+
+    /**
+     * @return the path of the claim.
+     */
+    public String path() {
+        return path;
+    }
+
+    /**
+     * @param token the token payload as a JSON object or the compact JWT, may be <code>null</code>.
+     * @return the roles held by the claim, as a list of strings or as a string, <code>null</code> if there is no
+     * token or if the claim is absent, {@link #INVALID} if the token or the claim is not in the expected format.
+     */
+    public Object extract(Object token) {
+        if (token == null) {
+            return null;
+        }
+        if (!(token instanceof String)) {
+            return INVALID;
+        }
+
+        try (JsonParser parser = createParser((String) token)) {
+            if (parser == null || parser.nextToken() != JsonToken.START_OBJECT) {
+                return INVALID;
+            }
+            return find(parser, 0);
+        } catch (IOException | IllegalArgumentException e) {
+            // Malformed JSON or Base64 payload
+            return INVALID;
+        }
+    }
+
+    /**
+     * Look for the claim in the object the parser is positioned on. When the claim is not found, the parser is left on
+     * the end of the object.
+     *
+     * @param parser the parser, positioned on the start of an object.
+     * @param offset the start of the remaining claim path.
+     * @return the value of the claim or <code>null</code> if the object does not hold it.
+     */
+    private Object find(JsonParser parser, int offset) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            int end = offset + name.length();
+
+            if (path.startsWith(name, offset)) {
+                if (end == path.length()) {
+                    Object claim = read(parser, value);
+                    if (claim != null) {
+                        return claim;
+                    }
+                    continue;
+                }
+                if (path.charAt(end) == '.' && value == JsonToken.START_OBJECT) {
+                    Object claim = find(parser, end + 1);
+                    if (claim != null) {
+                        return claim;
+                    }
+                    continue;
+                }
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    private static Object read(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        } else if (value == JsonToken.VALUE_NULL) {
+            return null;
+        } else if (value != JsonToken.START_ARRAY) {
+            return INVALID;
+        }
+
+        List<String> roles = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_STRING) {
+                roles.add(role(parser));
+            } else {
+                // Like roles provided as a JSON string, values which are not strings are ignored
+                parser.skipChildren();
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * @return the interned instance of the role the parser is positioned on, a new string if the role is not required
+     * by any policy.
+     */
+    private static String role(JsonParser parser) throws IOException {
+        int start = parser.getTextOffset();
+        String role = RoleDictionary.shared().lookup(parser.getTextCharacters(), start, start + parser.getTextLength());
+        return role != null ? role : parser.getText();
+    }
+
+    private static JsonParser createParser(String token) throws IOException {
+        int start = 0;
+        while (start < token.length() && Character.isWhitespace(token.charAt(start))) {
+            start++;
+        }
+        if (start < token.length() && token.charAt(start) == '{') {
+            return JSON_FACTORY.createParser(token);
+        }
+
+        // Compact JWT, only the payload is decoded
+        int payloadStart = token.indexOf('.') + 1;
+        int payloadEnd = payloadStart == 0 ? -1 : token.indexOf('.', payloadStart);
+        if (payloadEnd < 0) {
+            return null;
+        }
+
+        byte[] encoded = new byte[payloadEnd - payloadStart];
+        for (int i = 0; i < encoded.length; i++) {
+            char c = token.charAt(payloadStart + i);
+            if (c > 0x7F) {
+                return null;
+            }
+            encoded[i] = (byte) c;
+        }
+        byte[] payload = BASE64_URL.decode(encoded);
+        return JSON_FACTORY.createParser(payload);
+    }
+}
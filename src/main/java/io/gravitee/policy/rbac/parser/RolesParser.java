@@ -0,0 +1,376 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.parser;
+
+/**
+ * Single-pass tokenizer for user roles provided as a string.
+ *
+ * Two formats are supported:
+ * <ul>
+ *     <li>a JSON array of strings, detected from the first non-blank character, e.g. <code>["read", "write"]</code></li>
+ *     <li>a list of roles separated by spaces and/or commas, e.g. <code>read write</code> or <code>read, write</code></li>
+ * </ul>
+ *
+ * The tokenizer never throws and never allocates: each role is returned as a token packing its position in the
+ * source string into a <code>long</code>, and callers iterate with {@link #first(String)} and
+ * {@link #next(String, long)} until {@link #END} is returned. Only roles containing JSON escape sequences need to be
+ * materialized with {@link #value(String, long)}.
+ *
+ * When a string starting with <code>[</code> turns out not to be a well-formed JSON array, the tokenizer restarts
+ * and reads it as a delimited list. The first token of the delimited list is flagged with {@link #isRestart(long)} so
+ * callers can discard what they have accumulated so far. Callers stopping early must first check
+ * {@link #isFinal(String, long)} to be sure no restart will happen.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RolesParser {
+
+    /**
+     * No more token.
+     */
+    public static final long END = -1L;
+
+    private static final int POSITION_BITS = 30;
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+    private static final long JSON = 1L << 60;
+    private static final long ESCAPED = 1L << 61;
+    private static final long RESTART = 1L << 62;
+
+    private RolesParser() {}
+
+    /**
+     * @param roles the user roles.
+     * @return the first role token or {@link #END} if there is no role.
+     */
+    public static long first(String roles) {
+        int pos = skipWhitespaces(roles, 0);
+        if (pos < roles.length() && roles.charAt(pos) == '[') {
+            pos = skipWhitespaces(roles, pos + 1);
+            if (pos < roles.length() && roles.charAt(pos) == ']') {
+                return END;
+            }
+            return nextJsonValue(roles, pos);
+        }
+        return nextDelimited(roles, 0, 0L);
+    }
+
+    /**
+     * @param roles the user roles.
+     * @param token the previous token.
+     * @return the role token following the given one or {@link #END} if there is no more role.
+     */
+    public static long next(String roles, long token) {
+        if ((token & JSON) == 0) {
+            return nextDelimited(roles, end(token), 0L);
+        }
+        // Skip the closing quote of the previous string
+        return nextJsonElement(roles, end(token) + 1);
+    }
+
+    /**
+     * @param token a role token.
+     * @return the index of the first character of the role.
+     */
+    public static int start(long token) {
+        return (int) ((token >>> POSITION_BITS) & POSITION_MASK);
+    }
+
+    /**
+     * @param token a role token.
+     * @return the index following the last character of the role.
+     */
+    public static int end(long token) {
+        return (int) (token & POSITION_MASK);
+    }
+
+    /**
+     * @param token a role token.
+     * @return <code>true</code> if the role contains JSON escape sequences and must be read with
+     * {@link #value(String, long)}.
+     */
+    public static boolean isEscaped(long token) {
+        return (token & ESCAPED) != 0;
+    }
+
+    /**
+     * @param token a role token.
+     * @return <code>true</code> if all the tokens returned before this one must be discarded.
+     */
+    public static boolean isRestart(long token) {
+        return (token & RESTART) != 0;
+    }
+
+    /**
+     * Check that no restart can follow the given token, i.e. the roles are a delimited list or the remaining of the
+     * JSON array is well-formed.
+     *
+     * @param roles the user roles.
+     * @param token the current token.
+     * @return <code>true</code> if the tokens read so far are final.
+     */
+    public static boolean isFinal(String roles, long token) {
+        if ((token & JSON) == 0) {
+            return true;
+        }
+
+        long current = token;
+        while (current >= 0 && (current & JSON) != 0) {
+            current = nextJsonElement(roles, end(current) + 1);
+        }
+        return current == END;
+    }
+
+    /**
+     * @param roles the user roles.
+     * @param token a role token.
+     * @return the role as a string. Allocates, prefer region based comparisons on the hot path.
+     */
+    public static String value(String roles, long token) {
+        int start = start(token);
+        int end = end(token);
+        if (!isEscaped(token)) {
+            return roles.substring(start, end);
+        }
+
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = roles.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            c = roles.charAt(++i);
+            switch (c) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    builder.append((char) Integer.parseInt(roles.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    // '"', '\\' and '/'
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static long nextDelimited(String roles, int from, long flags) {
+        int length = roles.length();
+        int start = from;
+        while (start < length && isSeparator(roles.charAt(start))) {
+            start++;
+        }
+        if (start == length) {
+            return END;
+        }
+
+        int end = start + 1;
+        while (end < length && !isSeparator(roles.charAt(end))) {
+            end++;
+        }
+        return token(start, end, flags);
+    }
+
+    /**
+     * Read the separator following an array element, then the next value.
+     */
+    private static long nextJsonElement(String roles, int from) {
+        int pos = skipWhitespaces(roles, from);
+        if (pos < roles.length()) {
+            char c = roles.charAt(pos);
+            if (c == ']') {
+                // Trailing content after the array is ignored
+                return END;
+            } else if (c == ',') {
+                return nextJsonValue(roles, pos + 1);
+            }
+        }
+        return restart(roles);
+    }
+
+    /**
+     * Read array values until a string is found. Other values are skipped as they can not match a role.
+     */
+    private static long nextJsonValue(String roles, int from) {
+        int length = roles.length();
+        int pos = skipWhitespaces(roles, from);
+
+        while (pos < length) {
+            char c = roles.charAt(pos);
+            if (c == '"') {
+                return readJsonString(roles, pos + 1);
+            }
+
+            int end = skipJsonValue(roles, pos);
+            if (end < 0) {
+                return restart(roles);
+            }
+
+            pos = skipWhitespaces(roles, end);
+            if (pos >= length) {
+                break;
+            }
+            c = roles.charAt(pos);
+            if (c == ']') {
+                return END;
+            } else if (c != ',') {
+                break;
+            }
+            pos = skipWhitespaces(roles, pos + 1);
+        }
+        return restart(roles);
+    }
+
+    private static long readJsonString(String roles, int start) {
+        int end = scanJsonString(roles, start);
+        if (end < 0) {
+            return restart(roles);
+        }
+
+        long flags = JSON;
+        for (int i = start; i < end; i++) {
+            if (roles.charAt(i) == '\\') {
+                flags |= ESCAPED;
+                break;
+            }
+        }
+        return token(start, end, flags);
+    }
+
+    /**
+     * @return the index of the closing quote, or <code>-1</code> if the string is not well-formed.
+     */
+    private static int scanJsonString(String roles, int start) {
+        int length = roles.length();
+        for (int i = start; i < length; i++) {
+            char c = roles.charAt(i);
+            if (c == '"') {
+                return i;
+            } else if (c == '\\') {
+                if (++i >= length) {
+                    return -1;
+                }
+                c = roles.charAt(i);
+                if (c == 'u') {
+                    if (i + 4 >= length) {
+                        return -1;
+                    }
+                    for (int j = i + 1; j <= i + 4; j++) {
+                        if (Character.digit(roles.charAt(j), 16) < 0) {
+                            return -1;
+                        }
+                    }
+                    i += 4;
+                } else if ("\"\\/bfnrt".indexOf(c) < 0) {
+                    return -1;
+                }
+            } else if (c < 0x20) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip a non-string value: a literal, a number or a nested array or object.
+     *
+     * @return the index following the value, or <code>-1</code> if the value is not well-formed.
+     */
+    private static int skipJsonValue(String roles, int from) {
+        int length = roles.length();
+        char c = roles.charAt(from);
+
+        if (c == '[' || c == '{') {
+            int depth = 0;
+            for (int i = from; i < length; i++) {
+                c = roles.charAt(i);
+                if (c == '"') {
+                    i = scanJsonString(roles, i + 1);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (c == '[' || c == '{') {
+                    depth++;
+                } else if ((c == ']' || c == '}') && --depth == 0) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        int end = from;
+        while (end < length && isLiteralChar(roles.charAt(end))) {
+            end++;
+        }
+        if (end == from || (Character.isLetter(c) && !isKeyword(roles, from, end))) {
+            return -1;
+        }
+        return end;
+    }
+
+    private static boolean isKeyword(String roles, int from, int end) {
+        switch (end - from) {
+            case 4:
+                return roles.startsWith("true", from) || roles.startsWith("null", from);
+            case 5:
+                return roles.startsWith("false", from);
+            default:
+                return false;
+        }
+    }
+
+    private static long restart(String roles) {
+        return nextDelimited(roles, 0, RESTART);
+    }
+
+    private static long token(int start, int end, long flags) {
+        return flags | ((long) start << POSITION_BITS) | end;
+    }
+
+    private static int skipWhitespaces(String roles, int from) {
+        int pos = from;
+        while (pos < roles.length() && isWhitespace(roles.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isLiteralChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'E';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\u000B' || c == '\f';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ',' || isWhitespace(c);
+    }
+}
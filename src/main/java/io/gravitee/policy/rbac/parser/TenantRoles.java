@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.parser;
+
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Partitions the user roles by tenant: the roles of a tenant are prefixed by the tenant and a separator, e.g.
+ * <code>tenant-a:editor</code>, and only the roles of the tenant of the request are kept, without their prefix.
+ *
+ * The user roles are read in a single pass whatever the number of tenants they belong to, roles provided as a string
+ * being tokenized by region with the {@link RolesParser}. The prefix is compared in place, and the roles known to the
+ * {@link RoleDictionary} are resolved to their interned instance without being extracted, only the other roles of the
+ * tenant are materialized.
+ *
+ * @author GraviteeSource Team
+ */
+public final class TenantRoles {
+
+    private final String separator;
+
+    private final RoleDictionary dictionary;
+
+    private TenantRoles(String separator, RoleDictionary dictionary) {
+        this.separator = separator;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @param separator the separator between the tenant and the role.
+     * @throws IllegalArgumentException if the separator is empty.
+     */
+    public static TenantRoles of(String separator) {
+        if (separator == null || separator.isEmpty()) {
+            throw new IllegalArgumentException("The separator between the tenant and the role must not be empty");
+        }
+        return new TenantRoles(separator, RoleDictionary.shared());
+    }
+
+    /**
+     * @param userRoles the user roles, as a collection or as a string.
+     * @param tenant the tenant of the request, <code>null</code> if unknown.
+     * @return the roles of the tenant without their prefix, <code>null</code> if there is no user role or no tenant.
+     *         User roles which are neither a collection nor a string are returned as is.
+     */
+    public Object scope(Object userRoles, String tenant) {
+        if (userRoles == null || tenant == null) {
+            return null;
+        }
+        if (userRoles instanceof Collection) {
+            return scope((Collection<?>) userRoles, tenant);
+        }
+        if (userRoles instanceof String) {
+            return scope((String) userRoles, tenant);
+        }
+        return userRoles;
+    }
+
+    private List<String> scope(Collection<?> userRoles, String tenant) {
+        List<String> roles = new ArrayList<>();
+        for (Object role : userRoles) {
+            if (role instanceof String) {
+                String source = (String) role;
+                add(roles, source, tenant, 0, source.length());
+            }
+        }
+        return roles;
+    }
+
+    private List<String> scope(String userRoles, String tenant) {
+        List<String> roles = new ArrayList<>();
+        for (long token = RolesParser.first(userRoles); token != RolesParser.END; token = RolesParser.next(userRoles, token)) {
+            if (RolesParser.isRestart(token)) {
+                roles.clear();
+            }
+            if (RolesParser.isEscaped(token)) {
+                String role = RolesParser.value(userRoles, token);
+                add(roles, role, tenant, 0, role.length());
+            } else {
+                add(roles, userRoles, tenant, RolesParser.start(token), RolesParser.end(token));
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * Add the role held by a region of the source if it belongs to the tenant.
+     */
+    private void add(List<String> roles, String source, String tenant, int start, int end) {
+        int roleStart = start + tenant.length() + separator.length();
+        if (roleStart >= end || !source.startsWith(tenant, start) || !source.startsWith(separator, start + tenant.length())) {
+            return;
+        }
+        String role = dictionary.lookup(source, roleStart, end);
+        roles.add(role != null ? role : source.substring(roleStart, end));
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.route;
+
+import io.gravitee.common.http.HttpMethod;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable table associating values to path patterns and HTTP methods.
+ *
+ * Patterns are made of segments separated by <code>/</code>: a literal segment, <code>*</code> (or a path parameter
+ * such as <code>:id</code> or <code>{id}</code>) matching exactly one segment, and a trailing <code>**</code>
+ * matching all the remaining segments, if any. The table is compiled into a tree of segments whose literal children
+ * are looked up by hash, so that finding the value of a request costs one lookup per segment of its path. Segments are
+ * hashed and compared in place, without being extracted from the path.
+ *
+ * Paths are matched as given: they must first be {@link #normalize(String) normalized}, so that a path naming a route
+ * through dot segments or percent-encoded characters matches the pattern of that route.
+ *
+ * Literal segments take precedence over <code>*</code>, which takes precedence over <code>**</code>. Between
+ * patterns of the same specificity, the first one added wins.
+ *
+ * @param <T> the type of the values.
+ * @author GraviteeSource Team
+ */
+public final class RouteTable<T> {
+
+    private static final String WILDCARD = "*";
+
+    private static final String TAIL = "**";
+
+    private static final int ALL_METHODS = -1;
+
+    private static final int UNRESERVED = 0;
+
+    private static final int RESERVED = 1;
+
+    private static final int SEPARATOR = 2;
+
+    private final Node root;
+
+    private RouteTable(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param <T> the type of the values.
+     * @return a new builder of route table.
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Find the value of the most specific pattern matching the given request.
+     *
+     * @param path the path of the request.
+     * @param method the method of the request.
+     * @return the value found, <code>null</code> if no pattern matches.
+     */
+    @SuppressWarnings("unchecked")
+    public T find(String path, HttpMethod method) {
+        int methodMask = method == null ? ALL_METHODS : mask(method);
+        return (T) find(root, path == null ? "" : path, 0, methodMask);
+    }
+
+    private static Object find(Node node, String path, int position, int methodMask) {
+        int length = path.length();
+        while (position < length && path.charAt(position) == '/') {
+            position++;
+        }
+
+        if (position == length) {
+            Object value = node.terminal.find(methodMask);
+            return value != null ? value : node.tail.find(methodMask);
+        }
+
+        int end = path.indexOf('/', position);
+        if (end < 0) {
+            end = length;
+        }
+
+        Node literal = node.literals.get(path, position, end);
+        if (literal != null) {
+            Object value = find(literal, path, end, methodMask);
+            if (value != null) {
+                return value;
+            }
+        }
+        if (node.wildcard != null) {
+            Object value = find(node.wildcard, path, end, methodMask);
+            if (value != null) {
+                return value;
+            }
+        }
+        return node.tail.find(methodMask);
+    }
+
+    /**
+     * Normalize a request path: percent-encoded unreserved characters (letters, digits, <code>-</code>,
+     * <code>.</code>, <code>_</code> and <code>~</code>) are decoded, then <code>.</code> segments are removed and
+     * <code>..</code> segments remove the previous segment. Other percent-encoded characters are kept encoded.
+     *
+     * @param path the path of the request.
+     * @return the normalized path, the given path itself if it is already normalized, <code>null</code> if it cannot
+     *         be normalized: an encoded <code>/</code> or <code>\</code>, which the backend may decode as a separator,
+     *         or an invalid escape.
+     */
+    public static String normalize(String path) {
+        if (path == null) {
+            return "";
+        }
+        return isNormalized(path) ? path : removeDotSegments(path);
+    }
+
+    private static boolean isNormalized(String path) {
+        int length = path.length();
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? path.charAt(i) : '/';
+            if (c == '%') {
+                return false;
+            }
+            if (c == '/') {
+                if (isDotSegment(path, start, i)) {
+                    return false;
+                }
+                start = i + 1;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDotSegment(CharSequence segment, int start, int end) {
+        int length = end - start;
+        return (
+            (length == 1 && segment.charAt(start) == '.') ||
+            (length == 2 && segment.charAt(start) == '.' && segment.charAt(start + 1) == '.')
+        );
+    }
+
+    private static String removeDotSegments(String path) {
+        StringBuilder normalized = new StringBuilder(path.length());
+        StringBuilder segment = new StringBuilder();
+        int length = path.length();
+        int start = 0;
+        while (start <= length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            segment.setLength(0);
+            if (!decode(path, start, end, segment)) {
+                return null;
+            }
+            if (isDotSegment(segment, 0, segment.length())) {
+                if (segment.length() == 2) {
+                    // Remove the previous segment, a path cannot go above the root
+                    normalized.setLength(Math.max(0, normalized.lastIndexOf("/")));
+                }
+            } else if (segment.length() > 0) {
+                normalized.append('/').append(segment);
+            }
+            start = end + 1;
+        }
+        return normalized.length() == 0 ? "/" : normalized.toString();
+    }
+
+    /**
+     * Append a segment to the given builder, decoding its percent-encoded unreserved characters.
+     *
+     * @return <code>false</code> if the segment holds an encoded separator or an invalid escape.
+     */
+    private static boolean decode(String path, int start, int end, StringBuilder segment) {
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c != '%') {
+                segment.append(c);
+                continue;
+            }
+            int high = i + 2 < end ? Character.digit(path.charAt(i + 1), 16) : -1;
+            int low = high >= 0 ? Character.digit(path.charAt(i + 2), 16) : -1;
+            if (low < 0) {
+                return false;
+            }
+            char decoded = (char) ((high << 4) | low);
+            switch (kind(decoded)) {
+                case UNRESERVED:
+                    segment.append(decoded);
+                    break;
+                case RESERVED:
+                    segment.append(path, i, i + 3);
+                    break;
+                default:
+                    return false;
+            }
+            i += 2;
+        }
+        return true;
+    }
+
+    private static int kind(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~') {
+            return UNRESERVED;
+        }
+        return c == '/' || c == '\\' ? SEPARATOR : RESERVED;
+    }
+
+    private static int mask(HttpMethod method) {
+        return 1 << method.ordinal();
+    }
+
+    /**
+     * Values of a node, in the order they have been added, with the mask of their methods.
+     */
+    private static final class Entries {
+
+        private static final Entries EMPTY = new Entries(new int[0], new Object[0]);
+
+        private final int[] methodMasks;
+
+        private final Object[] values;
+
+        private Entries(int[] methodMasks, Object[] values) {
+            this.methodMasks = methodMasks;
+            this.values = values;
+        }
+
+        private Object find(int methodMask) {
+            for (int i = 0; i < values.length; i++) {
+                if ((methodMasks[i] & methodMask) != 0) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Open-addressing table of the literal children of a node, looked up with a region of the request path.
+     */
+    private static final class Literals {
+
+        private static final Literals EMPTY = new Literals(new int[1], new String[1], new Node[1]);
+
+        private final int[] hashes;
+
+        private final String[] segments;
+
+        private final Node[] nodes;
+
+        private final int mask;
+
+        private Literals(int[] hashes, String[] segments, Node[] nodes) {
+            this.hashes = hashes;
+            this.segments = segments;
+            this.nodes = nodes;
+            this.mask = nodes.length - 1;
+        }
+
+        private static Literals of(Map<String, Node> children) {
+            if (children.isEmpty()) {
+                return EMPTY;
+            }
+            // At most half full, so that probes stop quickly on an empty slot
+            int capacity = Integer.highestOneBit(children.size()) << 2;
+            Literals literals = new Literals(new int[capacity], new String[capacity], new Node[capacity]);
+            for (Map.Entry<String, Node> child : children.entrySet()) {
+                int hash = child.getKey().hashCode();
+                int slot = spread(hash) & literals.mask;
+                while (literals.segments[slot] != null) {
+                    slot = (slot + 1) & literals.mask;
+                }
+                literals.hashes[slot] = hash;
+                literals.segments[slot] = child.getKey();
+                literals.nodes[slot] = child.getValue();
+            }
+            return literals;
+        }
+
+        /**
+         * @return the child of the segment of the path between <code>start</code> and <code>end</code>,
+         *         <code>null</code> if there is none.
+         */
+        private Node get(String path, int start, int end) {
+            if (this == EMPTY) {
+                return null;
+            }
+            // Same hash as String.hashCode() for the segment
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            int length = end - start;
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                String segment = segments[slot];
+                if (segment == null) {
+                    return null;
+                }
+                if (hashes[slot] == hash && segment.length() == length && segment.regionMatches(0, path, start, length)) {
+                    return nodes[slot];
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static final class Node {
+
+        private final Literals literals;
+
+        private final Node wildcard;
+
+        private final Entries terminal;
+
+        private final Entries tail;
+
+        private Node(Literals literals, Node wildcard, Entries terminal, Entries tail) {
+            this.literals = literals;
+            this.wildcard = wildcard;
+            this.terminal = terminal;
+            this.tail = tail;
+        }
+    }
+
+    /**
+     * Builder of {@link RouteTable}.
+     *
+     * @param <T> the type of the values.
+     */
+    public static final class Builder<T> {
+
+        private final MutableNode root = new MutableNode();
+
+        private Builder() {}
+
+        /**
+         * Associate a value to a path pattern and a set of methods.
+         *
+         * @param pattern the path pattern.
+         * @param methods the methods, all methods if <code>null</code> or empty.
+         * @param value the value.
+         * @return this builder.
+         * @throws IllegalArgumentException if <code>**</code> is not the last segment of the pattern.
+         */
+        public Builder<T> add(String pattern, Collection<HttpMethod> methods, T value) {
+            String[] segments = pattern == null ? new String[0] : pattern.split("/");
+            MutableNode node = root;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (TAIL.equals(segment)) {
+                    if (!isLast(segments, i)) {
+                        throw new IllegalArgumentException("'**' must be the last segment of path pattern " + pattern);
+                    }
+                    node.tail.add(methods, value);
+                    return this;
+                }
+                node = isWildcard(segment)
+                    ? (node.wildcard == null ? node.wildcard = new MutableNode() : node.wildcard)
+                    : node.literals.computeIfAbsent(segment, s -> new MutableNode());
+            }
+            node.terminal.add(methods, value);
+            return this;
+        }
+
+        /**
+         * @return the compiled route table.
+         */
+        public RouteTable<T> build() {
+            return new RouteTable<>(root.compile());
+        }
+
+        private static boolean isLast(String[] segments, int index) {
+            for (int i = index + 1; i < segments.length; i++) {
+                if (!segments[i].isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isWildcard(String segment) {
+            return (
+                WILDCARD.equals(segment) ||
+                (segment.length() > 1 && segment.charAt(0) == ':') ||
+                (segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}')
+            );
+        }
+    }
+
+    private static final class MutableNode {
+
+        private final Map<String, MutableNode> literals = new LinkedHashMap<>();
+
+        private MutableNode wildcard;
+
+        private final MutableEntries terminal = new MutableEntries();
+
+        private final MutableEntries tail = new MutableEntries();
+
+        private Node compile() {
+            Map<String, Node> children = new HashMap<>();
+            for (Map.Entry<String, MutableNode> literal : literals.entrySet()) {
+                children.put(literal.getKey(), literal.getValue().compile());
+            }
+            return new Node(
+                Literals.of(children),
+                wildcard == null ? null : wildcard.compile(),
+                terminal.compile(),
+                tail.compile()
+            );
+        }
+    }
+
+    private static final class MutableEntries {
+
+        private final List<Integer> methodMasks = new ArrayList<>();
+
+        private final List<Object> values = new ArrayList<>();
+
+        private void add(Collection<HttpMethod> methods, Object value) {
+            int methodMask = 0;
+            if (methods == null || methods.isEmpty()) {
+                methodMask = ALL_METHODS;
+            } else {
+                for (HttpMethod method : methods) {
+                    methodMask |= mask(method);
+                }
+            }
+            methodMasks.add(methodMask);
+            values.add(value);
+        }
+
+        private Entries compile() {
+            if (values.isEmpty()) {
+                return Entries.EMPTY;
+            }
+            int[] masks = new int[methodMasks.size()];
+            for (int i = 0; i < masks.length; i++) {
+                masks[i] = methodMasks.get(i);
+            }
+            return new Entries(masks, values.toArray());
+        }
+    }
+}
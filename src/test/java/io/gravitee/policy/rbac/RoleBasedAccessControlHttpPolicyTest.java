@@ -0,0 +1,552 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+import io.gravitee.common.http.HttpMethod;
+import io.gravitee.common.http.HttpStatusCode;
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.http.HttpHeaders;
+import io.gravitee.gateway.reactive.api.ExecutionFailure;
+import io.gravitee.gateway.reactive.api.context.http.HttpMessageExecutionContext;
+import io.gravitee.gateway.reactive.api.context.http.HttpMessageRequest;
+import io.gravitee.gateway.reactive.api.context.http.HttpPlainExecutionContext;
+import io.gravitee.gateway.reactive.api.context.http.HttpPlainRequest;
+import io.gravitee.gateway.reactive.api.message.Message;
+import io.gravitee.policy.rbac.configuration.MatchingMode;
+import io.gravitee.policy.rbac.configuration.MessageConfiguration;
+import io.gravitee.policy.rbac.configuration.MessageRolesSource;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import io.gravitee.policy.rbac.configuration.RoleRule;
+import io.gravitee.policy.rbac.configuration.RoleSourceConfiguration;
+import io.gravitee.policy.rbac.configuration.ShadowConfiguration;
+import io.gravitee.policy.rbac.configuration.TenantConfiguration;
+import io.gravitee.policy.rbac.configuration.TenantRule;
+import io.gravitee.policy.rbac.configuration.TenantSource;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.functions.Function;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.core.env.Environment;
+
+/**
+ * @author GraviteeSource Team
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RoleBasedAccessControlHttpPolicyTest {
+
+    @Mock
+    private HttpPlainExecutionContext ctx;
+
+    @Mock
+    private Environment environment;
+
+    @Mock
+    private HttpPlainRequest request;
+
+    @Mock
+    private HttpMessageExecutionContext messageCtx;
+
+    @Mock
+    private HttpMessageRequest messageRequest;
+
+    @Mock
+    private Message message;
+
+    @Mock
+    private HttpHeaders headers;
+
+    private final RoleBasedAccessControlPolicyConfiguration configuration = new RoleBasedAccessControlPolicyConfiguration();
+
+    @Before
+    public void init() {
+        when(ctx.getComponent(Environment.class)).thenReturn(environment);
+        when(
+            environment.getProperty(
+                RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY,
+                RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE
+            )
+        ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+        configuration.setRoles(new HashSet<>(Arrays.asList("read", "write")));
+    }
+
+    @Test
+    public void shouldComplete_hasRequiredRoles() {
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read", "write", "admin"));
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldComplete_hasOneRequiredRole() {
+        configuration.setStrict(false);
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn("admin write");
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldComplete_hasRequiredRolesIgnoringCase() {
+        configuration.setMatchingMode(MatchingMode.CASE_INSENSITIVE);
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn("READ Write");
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldInterrupt_noUserRole() {
+        shouldInterrupt(null, HttpStatusCode.FORBIDDEN_403, RoleBasedAccessControlPolicy.RBAC_NO_USER_ROLE);
+    }
+
+    @Test
+    public void shouldInterrupt_invalidUserRoles() {
+        shouldInterrupt(42, HttpStatusCode.BAD_REQUEST_400, RoleBasedAccessControlPolicy.RBAC_INVALID_USER_ROLES);
+    }
+
+    @Test
+    public void shouldInterrupt_missingRequiredRole() {
+        shouldInterrupt("[\"read\"]", HttpStatusCode.FORBIDDEN_403, RoleBasedAccessControlPolicy.RBAC_FORBIDDEN);
+    }
+
+    @Test
+    public void shouldComplete_hasRequiredRolesInTokenClaim() {
+        configuration.setRoleSource(claimRoleSource("realm_access.roles"));
+        when(ctx.getAttribute(RoleSourceConfiguration.DEFAULT_TOKEN_ATTRIBUTE)).thenReturn(
+            "{\"sub\": \"john\", \"realm_access\": {\"roles\": [\"read\", \"write\"]}, \"scope\": \"openid\"}"
+        );
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).getAttribute(ExecutionContext.ATTR_USER_ROLES);
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldInterrupt_missingTokenClaim() {
+        configuration.setRoleSource(claimRoleSource("realm_access.roles"));
+        when(ctx.getAttribute(RoleSourceConfiguration.DEFAULT_TOKEN_ATTRIBUTE)).thenReturn("{\"sub\": \"john\"}");
+        when(ctx.interruptWith(any(ExecutionFailure.class))).thenReturn(Completable.error(new RuntimeException("interrupted")));
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertError(RuntimeException.class);
+
+        ArgumentCaptor<ExecutionFailure> failure = ArgumentCaptor.forClass(ExecutionFailure.class);
+        verify(ctx).interruptWith(failure.capture());
+        assertEquals(RoleBasedAccessControlPolicy.RBAC_NO_USER_ROLE, failure.getValue().key());
+    }
+
+    @Test
+    public void shouldComplete_hasRequiredRolesInPublishedRoleSet() {
+        RoleSet published = RoleSet.publish(ctx, Arrays.asList("read", "write", "admin"));
+        verify(ctx).setAttribute(ExecutionContext.ATTR_USER_ROLES, published);
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(published);
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldReuseRolesReadFromTokenClaim() {
+        String rolesAttribute = RoleBasedAccessControlPolicy.RBAC_CLAIM_ROLES_ATTRIBUTE_PREFIX + "realm_access.roles";
+        configuration.setRoleSource(claimRoleSource("realm_access.roles"));
+        when(ctx.getAttribute(RoleSourceConfiguration.DEFAULT_TOKEN_ATTRIBUTE)).thenReturn(
+            "{\"sub\": \"john\", \"realm_access\": {\"roles\": [\"read\", \"write\"]}}"
+        );
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        ArgumentCaptor<Object> roles = ArgumentCaptor.forClass(Object.class);
+        verify(ctx).setAttribute(eq(rolesAttribute), roles.capture());
+
+        // A following policy of the request reads the same claim of the same token
+        when(ctx.getAttribute(rolesAttribute)).thenReturn(roles.getValue());
+        configuration.setRoles(new HashSet<>(Arrays.asList("write")));
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, times(1)).setAttribute(eq(rolesAttribute), any());
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldComplete_hasRequiredRolesFromMappedGroup() throws IOException {
+        Path directory = Files.createTempDirectory("rbac-group-mapping");
+        Path file = directory.resolve("groups.map");
+        try {
+            Files.writeString(file, "CN=Editors,OU=Groups,DC=corp => read, write\n");
+            configuration.setGroupMappingFile("groups.map");
+            when(environment.getProperty(RoleBasedAccessControlPolicy.RBAC_GROUP_MAPPING_DIRECTORY_KEY)).thenReturn(directory.toString());
+            when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("CN=Editors,OU=Groups,DC=corp"));
+
+            new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+            verify(ctx, never()).interruptWith(any());
+        } finally {
+            Files.delete(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void shouldInterrupt_groupMappingOutsideOfDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("rbac-group-mapping");
+        Path file = Files.createTempFile("rbac-group-mapping", ".map");
+        try {
+            Files.writeString(file, "CN=Editors,OU=Groups,DC=corp => read, write\n");
+            configuration.setGroupMappingFile(file.toString());
+            when(environment.getProperty(RoleBasedAccessControlPolicy.RBAC_GROUP_MAPPING_DIRECTORY_KEY)).thenReturn(directory.toString());
+            when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("CN=Editors,OU=Groups,DC=corp"));
+            when(ctx.interruptWith(any(ExecutionFailure.class))).thenReturn(Completable.error(new RuntimeException("interrupted")));
+
+            new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertError(RuntimeException.class);
+
+            ArgumentCaptor<ExecutionFailure> failure = ArgumentCaptor.forClass(ExecutionFailure.class);
+            verify(ctx).interruptWith(failure.capture());
+            assertEquals(RoleBasedAccessControlPolicy.RBAC_FORBIDDEN, failure.getValue().key());
+        } finally {
+            Files.delete(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void shouldComplete_shadowModeMissingRequiredRole() throws Exception {
+        Path file = Files.createTempDirectory("rbac-shadow").resolve("rbac-shadow.log");
+        ShadowConfiguration shadow = new ShadowConfiguration();
+        shadow.setEnabled(true);
+        configuration.setShadow(shadow);
+        when(environment.getProperty(eq(RoleBasedAccessControlPolicy.RBAC_SHADOW_LOG_FILE_KEY), anyString())).thenReturn(file.toString());
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read"));
+        when(ctx.request()).thenReturn(request);
+        when(request.method()).thenReturn(HttpMethod.DELETE);
+        when(request.pathInfo()).thenReturn("/orders/42");
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!Files.exists(file) || Files.size(file) == 0) {
+            assertTrue("The decision was not written to the shadow audit log", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        assertTrue(Files.readString(file).contains("\"outcome\":\"FORBIDDEN\",\"method\":\"DELETE\",\"path\":\"/orders/42\""));
+    }
+
+    @Test
+    public void shouldInterrupt_noRuleMatchingPathWithoutDefaultRoles() {
+        configuration.setRoles(null);
+        configuration.setRules(List.of(rule("/orders/**", "orders:write")));
+        when(ctx.request()).thenReturn(request);
+        when(request.pathInfo()).thenReturn("/customers/42");
+        when(request.method()).thenReturn(HttpMethod.GET);
+
+        shouldInterrupt(List.of("orders:write"), HttpStatusCode.FORBIDDEN_403, RoleBasedAccessControlPolicy.RBAC_FORBIDDEN);
+    }
+
+    @Test
+    public void shouldComplete_ruleWithoutRolesMatchingPath() {
+        configuration.setRoles(null);
+        configuration.setRules(List.of(rule("/orders/**", "orders:write"), rule("/**")));
+        when(ctx.request()).thenReturn(request);
+        when(request.pathInfo()).thenReturn("/customers/42");
+        when(request.method()).thenReturn(HttpMethod.GET);
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(List.of("read"));
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldInterrupt_dotSegmentsLeavingPublicPath() {
+        configuration.setRoles(null);
+        configuration.setRules(List.of(rule("/admin/**", "admin"), rule("/public/**")));
+        when(ctx.request()).thenReturn(request);
+        when(request.pathInfo()).thenReturn("/public/../admin/x");
+        when(request.method()).thenReturn(HttpMethod.GET);
+
+        shouldInterrupt(List.of("read"), HttpStatusCode.FORBIDDEN_403, RoleBasedAccessControlPolicy.RBAC_FORBIDDEN);
+    }
+
+    @Test
+    public void shouldInterrupt_encodedPathOfProtectedRoute() {
+        configuration.setRoles(null);
+        configuration.setRules(List.of(rule("/admin/**", "admin"), rule("/**")));
+        when(ctx.request()).thenReturn(request);
+        when(request.pathInfo()).thenReturn("/%61dmin/x");
+        when(request.method()).thenReturn(HttpMethod.GET);
+
+        shouldInterrupt(List.of("read"), HttpStatusCode.FORBIDDEN_403, RoleBasedAccessControlPolicy.RBAC_FORBIDDEN);
+    }
+
+    @Test
+    public void shouldInterrupt_encodedSeparator() {
+        configuration.setRoles(null);
+        configuration.setRules(List.of(rule("/admin/**", "admin"), rule("/**")));
+        when(ctx.request()).thenReturn(request);
+        when(request.pathInfo()).thenReturn("/admin%2Fx");
+        when(request.method()).thenReturn(HttpMethod.GET);
+
+        shouldInterrupt(List.of("admin"), HttpStatusCode.FORBIDDEN_403, RoleBasedAccessControlPolicy.RBAC_FORBIDDEN);
+    }
+
+    @Test
+    public void shouldComplete_hasRequiredRolesInRequestTenant() {
+        configuration.setTenant(tenantConfiguration(TenantSource.HEADER));
+        when(ctx.request()).thenReturn(request);
+        when(request.headers()).thenReturn(headers);
+        when(headers.get("X-Tenant")).thenReturn("tenant-a");
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(
+            Arrays.asList("tenant-b:admin", "tenant-a:read", "tenant-a:write")
+        );
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldInterrupt_requiredRolesInAnotherTenant() {
+        configuration.setTenant(tenantConfiguration(TenantSource.HEADER));
+        when(ctx.request()).thenReturn(request);
+        when(request.headers()).thenReturn(headers);
+        when(headers.get("X-Tenant")).thenReturn("tenant-b");
+
+        shouldInterrupt(
+            "tenant-a:read tenant-a:write tenant-b:read",
+            HttpStatusCode.FORBIDDEN_403,
+            RoleBasedAccessControlPolicy.RBAC_FORBIDDEN
+        );
+    }
+
+    @Test
+    public void shouldInterrupt_unknownTenant() {
+        configuration.setTenant(tenantConfiguration(TenantSource.ATTRIBUTE));
+
+        shouldInterrupt("tenant-a:read tenant-a:write", HttpStatusCode.FORBIDDEN_403, RoleBasedAccessControlPolicy.RBAC_NO_USER_ROLE);
+    }
+
+    @Test
+    public void shouldComplete_hasRolesRequiredByTenantRule() {
+        TenantRule rule = new TenantRule();
+        rule.setTenants(Set.of("tenant-b", "tenant-c"));
+        rule.setRoles(Set.of("viewer"));
+        TenantConfiguration tenant = tenantConfiguration(TenantSource.ATTRIBUTE);
+        tenant.setRules(List.of(rule));
+        configuration.setTenant(tenant);
+        when(ctx.getAttribute("X-Tenant")).thenReturn("tenant-c");
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn("tenant-a:read tenant-a:write tenant-c:viewer");
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldComplete_hasRolesRequiredByTenantRuleOutsideRules() {
+        configuration.setRules(List.of(rule("/public/**")));
+        configuration.setTenant(viewerTenantConfiguration());
+        when(ctx.request()).thenReturn(request);
+        when(request.pathInfo()).thenReturn("/admin/x");
+        when(request.method()).thenReturn(HttpMethod.GET);
+        when(ctx.getAttribute("X-Tenant")).thenReturn("tenant-c");
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn("tenant-c:viewer");
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    public void shouldInterrupt_tenantRuleOutsideRulesWithoutDefaultRoles() {
+        configuration.setRoles(null);
+        configuration.setRules(List.of(rule("/public/**")));
+        configuration.setTenant(viewerTenantConfiguration());
+        when(ctx.request()).thenReturn(request);
+        when(request.pathInfo()).thenReturn("/admin/x");
+        when(request.method()).thenReturn(HttpMethod.GET);
+        when(ctx.getAttribute("X-Tenant")).thenReturn("tenant-c");
+
+        shouldInterrupt("tenant-c:viewer", HttpStatusCode.FORBIDDEN_403, RoleBasedAccessControlPolicy.RBAC_FORBIDDEN);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDeploy_tenantWithoutName() {
+        TenantConfiguration tenant = tenantConfiguration(TenantSource.HEADER);
+        tenant.setName(null);
+        configuration.setTenant(tenant);
+
+        new RoleBasedAccessControlPolicy(configuration);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDeploy_tenantWithSeveralRules() {
+        TenantRule viewer = new TenantRule();
+        viewer.setTenants(Set.of("tenant-a"));
+        viewer.setRoles(Set.of("viewer"));
+        TenantRule editor = new TenantRule();
+        editor.setTenants(Set.of("tenant-a", "tenant-b"));
+        editor.setRoles(Set.of("editor"));
+        TenantConfiguration tenant = tenantConfiguration(TenantSource.HEADER);
+        tenant.setRules(List.of(viewer, editor));
+        configuration.setTenant(tenant);
+
+        new RoleBasedAccessControlPolicy(configuration);
+    }
+
+    @Test
+    public void shouldNotCheckMessages_disabled() {
+        new RoleBasedAccessControlPolicy(configuration).onMessageRequest(messageCtx).test().assertComplete();
+
+        verifyNoInteractions(messageCtx);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDeploy_messageRolesWithoutName() {
+        MessageConfiguration message = messageConfiguration(MessageRolesSource.HEADER);
+        message.setName(" ");
+        configuration.setMessage(message);
+
+        new RoleBasedAccessControlPolicy(configuration);
+    }
+
+    @Test
+    public void shouldCheckEachMessage_header() throws Throwable {
+        configuration.setMessage(messageConfiguration(MessageRolesSource.HEADER));
+        when(message.headers()).thenReturn(headers);
+        when(headers.get("X-Roles")).thenReturn("read write", "read", "read write");
+        when(messageCtx.interruptMessageWith(any(ExecutionFailure.class))).thenReturn(Maybe.empty());
+
+        Function<Message, Maybe<Message>> onMessage = onMessageRequest(new RoleBasedAccessControlPolicy(configuration));
+
+        onMessage.apply(message).test().assertValue(message);
+        onMessage.apply(message).test().assertNoValues().assertComplete();
+        onMessage.apply(message).test().assertValue(message);
+
+        ArgumentCaptor<ExecutionFailure> failure = ArgumentCaptor.forClass(ExecutionFailure.class);
+        verify(messageCtx).interruptMessageWith(failure.capture());
+        assertEquals(RoleBasedAccessControlPolicy.RBAC_FORBIDDEN, failure.getValue().key());
+    }
+
+    @Test
+    public void shouldCheckEachMessage_attribute() throws Throwable {
+        configuration.setMessage(messageConfiguration(MessageRolesSource.ATTRIBUTE));
+        when(message.attribute("X-Roles")).thenReturn(Arrays.asList("write", "read"));
+
+        Function<Message, Maybe<Message>> onMessage = onMessageRequest(new RoleBasedAccessControlPolicy(configuration));
+
+        onMessage.apply(message).test().assertValue(message);
+        verify(messageCtx, never()).interruptMessageWith(any());
+    }
+
+    @Test
+    public void shouldCheckContextRolesOnce_messageWithoutRoles() throws Throwable {
+        configuration.setMessage(messageConfiguration(MessageRolesSource.HEADER));
+        when(message.headers()).thenReturn(headers);
+        when(messageCtx.getComponent(Environment.class)).thenReturn(environment);
+        when(messageCtx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read", "write"));
+
+        Function<Message, Maybe<Message>> onMessage = onMessageRequest(new RoleBasedAccessControlPolicy(configuration));
+
+        onMessage.apply(message).test().assertValue(message);
+        onMessage.apply(message).test().assertValue(message);
+        verify(messageCtx, times(1)).getAttribute(ExecutionContext.ATTR_USER_ROLES);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<Message, Maybe<Message>> onMessageRequest(RoleBasedAccessControlPolicy policy) {
+        when(messageCtx.request()).thenReturn(messageRequest);
+        when(messageRequest.onMessage(any())).thenReturn(Completable.complete());
+
+        policy.onMessageRequest(messageCtx).test().assertComplete();
+
+        ArgumentCaptor<Function<Message, Maybe<Message>>> onMessage = ArgumentCaptor.forClass(Function.class);
+        verify(messageRequest).onMessage(onMessage.capture());
+        return onMessage.getValue();
+    }
+
+    private static MessageConfiguration messageConfiguration(MessageRolesSource source) {
+        MessageConfiguration message = new MessageConfiguration();
+        message.setEnabled(true);
+        message.setSource(source);
+        message.setName("X-Roles");
+        return message;
+    }
+
+    private static RoleRule rule(String path, String... roles) {
+        RoleRule rule = new RoleRule();
+        rule.setPath(path);
+        rule.setRoles(Set.of(roles));
+        return rule;
+    }
+
+    private static TenantConfiguration viewerTenantConfiguration() {
+        TenantRule rule = new TenantRule();
+        rule.setTenants(Set.of("tenant-c"));
+        rule.setRoles(Set.of("viewer"));
+        TenantConfiguration tenant = tenantConfiguration(TenantSource.ATTRIBUTE);
+        tenant.setRules(List.of(rule));
+        return tenant;
+    }
+
+    private static TenantConfiguration tenantConfiguration(TenantSource source) {
+        TenantConfiguration tenant = new TenantConfiguration();
+        tenant.setEnabled(true);
+        tenant.setSource(source);
+        tenant.setName("X-Tenant");
+        return tenant;
+    }
+
+    private static RoleSourceConfiguration claimRoleSource(String claim) {
+        RoleSourceConfiguration roleSource = new RoleSourceConfiguration();
+        roleSource.setClaim(claim);
+        return roleSource;
+    }
+
+    private void shouldInterrupt(Object userRoles, int statusCode, String key) {
+        when(ctx.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(userRoles);
+        when(ctx.interruptWith(any(ExecutionFailure.class))).thenReturn(Completable.error(new RuntimeException("interrupted")));
+
+        new RoleBasedAccessControlPolicy(configuration).onRequest(ctx).test().assertError(RuntimeException.class);
+
+        ArgumentCaptor<ExecutionFailure> failure = ArgumentCaptor.forClass(ExecutionFailure.class);
+        verify(ctx).interruptWith(failure.capture());
+        assertEquals(statusCode, failure.getValue().statusCode());
+        assertEquals(key, failure.getValue().key());
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.gravitee.common.http.HttpMethod;
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.reactive.api.context.http.HttpPlainExecutionContext;
+import io.gravitee.gateway.reactive.api.context.http.HttpPlainRequest;
+import io.gravitee.policy.api.PolicyChain;
+import io.gravitee.policy.api.PolicyResult;
+import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import io.gravitee.policy.rbac.configuration.RoleRule;
+import io.reactivex.rxjava3.core.Completable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.core.env.Environment;
+
+/**
+ * Many event loops sharing a single policy instance, from its very first request.
+ *
+ * @author GraviteeSource Team
+ */
+public class RoleBasedAccessControlPolicyConcurrencyTest {
+
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static final int REQUESTS = 20_000;
+
+    private final AtomicInteger environmentLookups = new AtomicInteger();
+
+    private final Environment environment = proxy(
+        Environment.class,
+        (method, args) -> {
+            if ("getProperty".equals(method)) {
+                environmentLookups.incrementAndGet();
+                return args[1];
+            }
+            return null;
+        }
+    );
+
+    @Test
+    public void shouldTakeConsistentDecisionsFromConcurrentRequests() throws Exception {
+        RoleRule rule = new RoleRule();
+        rule.setPath("/orders/**");
+        rule.setMethods(Set.of(HttpMethod.POST));
+        rule.setRoles(Set.of("orders:write"));
+        RoleBasedAccessControlPolicyConfiguration configuration = new RoleBasedAccessControlPolicyConfiguration();
+        configuration.setRoles(Set.of("admin"));
+        configuration.setRules(List.of(rule));
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(configuration);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> eventLoops = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                eventLoops.add(executor.submit(() -> new EventLoop(policy).run(start)));
+            }
+            // All the event loops race on the first request of the policy
+            start.countDown();
+            for (Future<Integer> eventLoop : eventLoops) {
+                assertEquals("Wrong decisions", 0, (int) eventLoop.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(environmentLookups.get() >= 1);
+        assertTrue("Roles attribute resolved " + environmentLookups.get() + " times", environmentLookups.get() <= THREADS);
+    }
+
+    /**
+     * The requests of a single event loop, going through both execution engines.
+     */
+    private final class EventLoop {
+
+        private final RoleBasedAccessControlPolicy policy;
+
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        private String path;
+
+        private HttpMethod method;
+
+        private boolean allowed;
+
+        private final Request request;
+
+        private final ExecutionContext context;
+
+        private final HttpPlainExecutionContext ctx;
+
+        private final PolicyChain policyChain;
+
+        private EventLoop(RoleBasedAccessControlPolicy policy) {
+            this.policy = policy;
+            this.request = proxy(Request.class, this::request);
+            HttpPlainRequest httpRequest = proxy(HttpPlainRequest.class, this::request);
+            this.context = proxy(ExecutionContext.class, (name, args) -> execute(name, args, request));
+            this.ctx = proxy(HttpPlainExecutionContext.class, (name, args) -> execute(name, args, httpRequest));
+            this.policyChain = proxy(
+                PolicyChain.class,
+                (name, args) -> {
+                    allowed = "doNext".equals(name);
+                    return null;
+                }
+            );
+        }
+
+        private Object request(String name, Object[] args) {
+            switch (name) {
+                case "method":
+                    return method;
+                case "pathInfo":
+                    return path;
+                default:
+                    return null;
+            }
+        }
+
+        private Object execute(String name, Object[] args, Object request) {
+            switch (name) {
+                case "getAttribute":
+                    return attributes.get((String) args[0]);
+                case "setAttribute":
+                    return attributes.put((String) args[0], args[1]);
+                case "getComponent":
+                    return args[0] == Environment.class ? environment : null;
+                case "request":
+                    return request;
+                case "interruptWith":
+                    allowed = false;
+                    return Completable.complete();
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return the number of wrong decisions.
+         */
+        private int run(CountDownLatch start) throws InterruptedException {
+            start.await();
+            int wrong = 0;
+            for (int i = 0; i < REQUESTS; i++) {
+                boolean v4 = (i & 1) == 0;
+                switch ((i >> 1) % 4) {
+                    case 0:
+                        wrong += check(v4, HttpMethod.GET, "/", List.of("reader", "admin"), true);
+                        break;
+                    case 1:
+                        wrong += check(v4, HttpMethod.POST, "/orders/42", "reader orders:write", true);
+                        break;
+                    case 2:
+                        wrong += check(v4, HttpMethod.POST, "/orders/42", List.of("admin"), false);
+                        break;
+                    default:
+                        wrong += check(v4, HttpMethod.GET, "/orders", "[\"reader\"]", false);
+                }
+            }
+            return wrong;
+        }
+
+        private int check(boolean v4, HttpMethod method, String path, Object userRoles, boolean expected) {
+            this.method = method;
+            this.path = path;
+            attributes.put(ExecutionContext.ATTR_USER_ROLES, userRoles);
+            allowed = true;
+            if (v4) {
+                policy.onRequest(ctx);
+            } else {
+                policy.onRequest(request, null, context, policyChain);
+            }
+            return allowed == expected ? 0 : 1;
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(
+            RoleBasedAccessControlPolicyConcurrencyTest.class.getClassLoader(),
+            new Class<?>[] { type },
+            (instance, method, args) -> {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(instance);
+                    case "equals":
+                        return instance == args[0];
+                    default:
+                        return handler.invoke(method.getName(), args);
+                }
+            }
+        );
+        return type.cast(proxy);
+    }
+}
@@ -15,9 +15,12 @@
  */
 package io.gravitee.policy.rbac;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.*;
 
 import io.gravitee.common.http.HttpHeaders;
+import io.gravitee.common.http.HttpMethod;
 import io.gravitee.common.http.HttpStatusCode;
 import io.gravitee.el.TemplateEngine;
 import io.gravitee.gateway.api.ExecutionContext;
@@ -25,12 +28,22 @@ import io.gravitee.gateway.api.Request;
 import io.gravitee.gateway.api.Response;
 import io.gravitee.policy.api.PolicyChain;
 import io.gravitee.policy.api.PolicyResult;
+import io.gravitee.policy.rbac.configuration.CacheConfiguration;
+import io.gravitee.policy.rbac.configuration.CacheMode;
+import io.gravitee.policy.rbac.configuration.DenyCacheConfiguration;
+import io.gravitee.policy.rbac.configuration.MetricsConfiguration;
 import io.gravitee.policy.rbac.configuration.RoleBasedAccessControlPolicyConfiguration;
+import io.gravitee.policy.rbac.configuration.RoleRule;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.Outcome;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.RolesFormat;
+import io.gravitee.reporter.api.http.Metrics;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -70,8 +83,6 @@ public class RoleBasedAccessControlPolicyTest {
 
     @Test
     public void shouldFail_noUserRole() {
-        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
-
         when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(null);
         when(
             environment.getProperty(
@@ -80,6 +91,7 @@ public class RoleBasedAccessControlPolicyTest {
             )
         ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
 
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
         policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
 
         verify(mockPolicychain).failWith(
@@ -99,8 +111,6 @@ public class RoleBasedAccessControlPolicyTest {
 
     @Test
     public void shouldFail_invalidUserRole() {
-        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
-
         when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(new Object());
         when(policyConfiguration.hasRoles()).thenReturn(true);
         when(
@@ -110,6 +120,7 @@ public class RoleBasedAccessControlPolicyTest {
             )
         ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
 
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
         policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
 
         verify(mockPolicychain).failWith(
@@ -129,8 +140,6 @@ public class RoleBasedAccessControlPolicyTest {
 
     @Test
     public void shouldValid_mustHaveRequiredScopes() {
-        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
-
         when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read", "write", "admin"));
         when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("read", "write", "admin")));
         when(policyConfiguration.isStrict()).thenReturn(true);
@@ -142,6 +151,7 @@ public class RoleBasedAccessControlPolicyTest {
             )
         ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
 
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
         policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
 
         verify(mockPolicychain).doNext(mockRequest, mockResponse);
@@ -149,8 +159,6 @@ public class RoleBasedAccessControlPolicyTest {
 
     @Test
     public void shouldValid_shouldHaveRequiredScopes() {
-        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
-
         when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read", "write"));
         when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("read", "write", "admin")));
         when(policyConfiguration.isStrict()).thenReturn(false);
@@ -162,6 +170,7 @@ public class RoleBasedAccessControlPolicyTest {
             )
         ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
 
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
         policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
 
         verify(mockPolicychain).doNext(mockRequest, mockResponse);
@@ -169,8 +178,6 @@ public class RoleBasedAccessControlPolicyTest {
 
     @Test
     public void shouldFail_mustHaveRequiredScopes() {
-        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
-
         when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read", "write"));
         when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("read", "write", "admin")));
         when(policyConfiguration.isStrict()).thenReturn(true);
@@ -182,6 +189,7 @@ public class RoleBasedAccessControlPolicyTest {
             )
         ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
 
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
         policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
 
         verify(mockPolicychain).failWith(
@@ -201,8 +209,6 @@ public class RoleBasedAccessControlPolicyTest {
 
     @Test
     public void shouldFail_mustHaveRequiredScopes2() {
-        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
-
         when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read", "write", "admin"));
         when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("read", "write")));
         when(policyConfiguration.isStrict()).thenReturn(true);
@@ -214,6 +220,7 @@ public class RoleBasedAccessControlPolicyTest {
             )
         ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
 
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
         policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
 
         verify(mockPolicychain).doNext(mockRequest, mockResponse);
@@ -221,8 +228,6 @@ public class RoleBasedAccessControlPolicyTest {
 
     @Test
     public void shouldFail_shouldHaveRequiredScopes() {
-        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
-
         when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("my-role"));
         when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("read", "write", "admin")));
         when(policyConfiguration.isStrict()).thenReturn(false);
@@ -234,6 +239,7 @@ public class RoleBasedAccessControlPolicyTest {
             )
         ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
 
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
         policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
 
         verify(mockPolicychain).failWith(
@@ -372,4 +378,236 @@ public class RoleBasedAccessControlPolicyTest {
 
         verify(mockPolicychain).doNext(mockRequest, mockResponse);
     }
+
+    @Test
+    public void testOnRequestHasRole_cachedStringRole() {
+        CacheConfiguration cache = new CacheConfiguration();
+        cache.setEnabled(true);
+        when(policyConfiguration.getCache()).thenReturn(cache);
+        when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("testrole", "testrole2")));
+        when(mockExecutionContext.getAttribute(GATEWAY_CONTEXT_ATTRIBUTE_ROLES)).thenReturn("testrole testrole2");
+        when(
+            environment.getProperty(
+                eq(RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY),
+                eq(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE)
+            )
+        ).thenReturn(GATEWAY_CONTEXT_ATTRIBUTE_ROLES);
+        when(policyConfiguration.hasRoles()).thenReturn(true);
+
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+
+        verify(mockPolicychain, times(2)).doNext(mockRequest, mockResponse);
+        assertEquals(1, policy.decisionCache().misses());
+        assertEquals(1, policy.decisionCache().hits());
+    }
+
+    @Test
+    public void shouldValid_expression() {
+        when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn("editor region-eu");
+        when(policyConfiguration.getExpression()).thenReturn("(admin OR (editor AND region-eu)) AND NOT suspended");
+        when(
+            environment.getProperty(
+                eq(RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY),
+                eq(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE)
+            )
+        ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+
+        verify(mockPolicychain).doNext(mockRequest, mockResponse);
+    }
+
+    @Test
+    public void shouldFail_expression() {
+        when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("admin", "suspended"));
+        when(policyConfiguration.getExpression()).thenReturn("(admin OR (editor AND region-eu)) AND NOT suspended");
+        when(
+            environment.getProperty(
+                eq(RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY),
+                eq(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE)
+            )
+        ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+
+        verify(mockPolicychain).failWith(
+            argThat(
+                new ArgumentMatcher<PolicyResult>() {
+                    @Override
+                    public boolean matches(PolicyResult result) {
+                        return (
+                            result.statusCode() == HttpStatusCode.FORBIDDEN_403 &&
+                            RoleBasedAccessControlPolicy.RBAC_FORBIDDEN.equals(result.key())
+                        );
+                    }
+                }
+            )
+        );
+    }
+
+    @Test
+    public void shouldValid_ruleMatchingPath() {
+        RoleRule rule = new RoleRule();
+        rule.setPath("/orders/**");
+        rule.setMethods(new HashSet<>(Arrays.asList(HttpMethod.POST, HttpMethod.DELETE)));
+        rule.setRoles(new HashSet<>(Arrays.asList("orders:write")));
+        when(policyConfiguration.getRules()).thenReturn(Arrays.asList(rule));
+        when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("admin")));
+        when(policyConfiguration.isStrict()).thenReturn(true);
+        when(policyConfiguration.hasRoles()).thenReturn(true);
+        when(mockRequest.pathInfo()).thenReturn("/orders/42");
+        when(mockRequest.method()).thenReturn(HttpMethod.POST);
+        when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read", "orders:write"));
+        when(
+            environment.getProperty(
+                eq(RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY),
+                eq(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE)
+            )
+        ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+
+        verify(mockPolicychain).doNext(mockRequest, mockResponse);
+    }
+
+    @Test
+    public void shouldFail_noRuleMatchingPath() {
+        RoleRule rule = new RoleRule();
+        rule.setPath("/orders/**");
+        rule.setMethods(new HashSet<>(Arrays.asList(HttpMethod.POST, HttpMethod.DELETE)));
+        rule.setRoles(new HashSet<>(Arrays.asList("orders:write")));
+        when(policyConfiguration.getRules()).thenReturn(Arrays.asList(rule));
+        when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("admin")));
+        when(policyConfiguration.isStrict()).thenReturn(true);
+        when(policyConfiguration.hasRoles()).thenReturn(true);
+        when(mockRequest.pathInfo()).thenReturn("/orders/42");
+        when(mockRequest.method()).thenReturn(HttpMethod.GET);
+        when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(Arrays.asList("read", "orders:write"));
+        when(
+            environment.getProperty(
+                eq(RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY),
+                eq(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE)
+            )
+        ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+
+        verify(mockPolicychain).failWith(
+            argThat(
+                new ArgumentMatcher<PolicyResult>() {
+                    @Override
+                    public boolean matches(PolicyResult result) {
+                        return (
+                            result.statusCode() == HttpStatusCode.FORBIDDEN_403 &&
+                            RoleBasedAccessControlPolicy.RBAC_FORBIDDEN.equals(result.key())
+                        );
+                    }
+                }
+            )
+        );
+    }
+
+    @Test
+    public void shouldRecordDecisionMetrics() {
+        MetricsConfiguration metrics = new MetricsConfiguration();
+        metrics.setEnabled(true);
+        metrics.setLatencySamplingRate(1);
+        when(policyConfiguration.getMetrics()).thenReturn(metrics);
+        when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("read")));
+        when(policyConfiguration.hasRoles()).thenReturn(true);
+        when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn("[\"read\"]", "write", null);
+        Metrics requestMetrics = mock(Metrics.class);
+        when(mockRequest.metrics()).thenReturn(requestMetrics);
+        when(
+            environment.getProperty(
+                eq(RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY),
+                eq(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE)
+            )
+        ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+
+        assertEquals(1, policy.metrics().count(Outcome.ALLOWED, RolesFormat.JSON));
+        assertEquals(1, policy.metrics().count(Outcome.FORBIDDEN, RolesFormat.DELIMITED));
+        assertEquals(1, policy.metrics().count(Outcome.NO_USER_ROLE, RolesFormat.NONE));
+        assertEquals(3, policy.metrics().latency().count());
+        verify(requestMetrics).addCustomMetric(RoleBasedAccessControlPolicy.RBAC_DECISION_METRIC, "ALLOWED");
+        verify(requestMetrics).addCustomMetric(RoleBasedAccessControlPolicy.RBAC_DECISION_METRIC, "FORBIDDEN");
+        verify(requestMetrics).addCustomMetric(RoleBasedAccessControlPolicy.RBAC_DECISION_METRIC, "NO_USER_ROLE");
+    }
+
+    @Test
+    public void shouldDenyRepeatedRequestsFromCache() {
+        DenyCacheConfiguration denyCache = new DenyCacheConfiguration();
+        denyCache.setEnabled(true);
+        MetricsConfiguration metrics = new MetricsConfiguration();
+        metrics.setEnabled(true);
+        when(policyConfiguration.getDenyCache()).thenReturn(denyCache);
+        when(policyConfiguration.getMetrics()).thenReturn(metrics);
+        when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("read")));
+        when(policyConfiguration.hasRoles()).thenReturn(true);
+        when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_SUBSCRIPTION_ID)).thenReturn("sub-1", "sub-1", "sub-2");
+        when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn("write", new String("write"), "write");
+        when(mockRequest.metrics()).thenReturn(mock(Metrics.class));
+        when(
+            environment.getProperty(
+                eq(RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY),
+                eq(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE)
+            )
+        ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+
+        ArgumentCaptor<PolicyResult> failures = ArgumentCaptor.forClass(PolicyResult.class);
+        verify(mockPolicychain, times(3)).failWith(failures.capture());
+        List<PolicyResult> results = failures.getAllValues();
+        assertEquals(RoleBasedAccessControlPolicy.RBAC_FORBIDDEN, results.get(0).key());
+        assertSame(results.get(0), results.get(1));
+        assertSame(results.get(0), results.get(2));
+        // The second request of the same subscription is denied from the cache, the first of another one is evaluated
+        assertEquals(1, policy.metrics().caches().get("deny").hits());
+        assertEquals(2, policy.metrics().caches().get("deny").misses());
+        assertEquals(3, policy.metrics().count(Outcome.FORBIDDEN, RolesFormat.DELIMITED));
+    }
+
+    @Test
+    public void testOnRequestHasRole_cachedRoleSet() {
+        CacheConfiguration cache = new CacheConfiguration();
+        cache.setEnabled(true);
+        cache.setMode(CacheMode.ROLE_SET);
+        when(policyConfiguration.getCache()).thenReturn(cache);
+        when(policyConfiguration.getRoles()).thenReturn(new HashSet<>(Arrays.asList("testrole", "testrole2")));
+        when(policyConfiguration.isStrict()).thenReturn(true);
+        when(policyConfiguration.hasRoles()).thenReturn(true);
+        when(mockExecutionContext.getAttribute(ExecutionContext.ATTR_USER_ROLES)).thenReturn(
+            Arrays.asList("testrole", "other", "testrole2"),
+            "testrole2 other testrole"
+        );
+        when(
+            environment.getProperty(
+                eq(RoleBasedAccessControlPolicy.RBAC_USER_ROLES_ATTRIBUTE_KEY),
+                eq(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE)
+            )
+        ).thenReturn(RoleBasedAccessControlPolicy.DEFAULT_RBAC_USER_ROLES_ATTRIBUTE);
+
+        RoleBasedAccessControlPolicy policy = new RoleBasedAccessControlPolicy(policyConfiguration);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        policy.onRequest(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+
+        verify(mockPolicychain, times(2)).doNext(mockRequest, mockResponse);
+        assertEquals(1, policy.cacheStatistics().misses());
+        assertEquals(1, policy.cacheStatistics().hits());
+    }
 }
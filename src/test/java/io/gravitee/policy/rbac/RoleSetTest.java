@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RoleSetTest {
+
+    @Test
+    public void shouldHoldDistinctRolesInOrder() {
+        RoleSet roles = RoleSet.of(Arrays.asList("write", "read", null, 42, "write"));
+
+        assertEquals(2, roles.size());
+        assertEquals(Arrays.asList("write", "read"), new ArrayList<>(roles));
+        assertTrue(roles.contains("read"));
+        assertFalse(roles.contains("admin"));
+        assertFalse(roles.contains(42));
+        assertEquals(Set.of("read", "write"), roles);
+    }
+
+    @Test
+    public void shouldParseRoles() {
+        assertEquals(Set.of("read", "write"), RoleSet.parse("read, write read"));
+        assertEquals(Set.of("read", "write", "a\"b"), RoleSet.parse("[\"read\", \"write\", \"a\\\"b\"]"));
+        assertEquals(Set.of("[read", "write"), RoleSet.parse("[read write"));
+        assertTrue(RoleSet.parse("[]").isEmpty());
+    }
+
+    @Test
+    public void shouldResolveRequiredRolesToTheirInternedInstance() {
+        String interned = RoleDictionary.shared().intern("role-set-test:admin");
+
+        String role = RoleSet.of(new String("role-set-test:admin")).iterator().next();
+
+        assertSame(interned, role);
+        assertSame(interned, RoleSet.parse("role-set-test:admin").iterator().next());
+    }
+
+    @Test
+    public void shouldContainAllRoles() {
+        RoleSet user = RoleSet.of("read", "write", "admin");
+
+        assertTrue(user.containsAll(RoleSet.of("read", "admin")));
+        assertTrue(user.containsAll(RoleSet.EMPTY));
+        assertFalse(user.containsAll(RoleSet.of("read", "delete")));
+        assertFalse(RoleSet.of("read").containsAll(user));
+        assertTrue(user.containsAll(List.of("write", "read")));
+    }
+
+    @Test
+    public void shouldContainAnyRole() {
+        RoleSet user = RoleSet.of("read", "write", "admin");
+
+        assertTrue(user.containsAny(RoleSet.of("delete", "admin")));
+        assertTrue(RoleSet.of("admin").containsAny(user));
+        assertFalse(user.containsAny(RoleSet.of("delete", "owner")));
+        assertFalse(user.containsAny(RoleSet.EMPTY));
+    }
+
+    @Test
+    public void shouldCheckManyRoles() {
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            roles.add("role-" + i);
+        }
+        RoleSet user = RoleSet.of(roles);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(user.contains("role-" + i));
+            assertFalse(user.contains("other-" + i));
+        }
+        assertTrue(user.containsAll(RoleSet.of("role-1", "role-999")));
+        assertFalse(user.containsAny(RoleSet.of("role-1000", "role-1001")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldBeImmutable() {
+        RoleSet.of("read").add("admin");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotRemoveRolesWhileIterating() {
+        Iterator<String> roles = RoleSet.of("read").iterator();
+        roles.next();
+        roles.remove();
+    }
+}
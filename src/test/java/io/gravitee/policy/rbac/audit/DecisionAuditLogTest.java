@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.audit;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.Outcome;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class DecisionAuditLogTest {
+
+    @Test
+    public void shouldWriteJsonLines() throws IOException {
+        DecisionAuditLog log = new DecisionAuditLog(Path.of("unused.log"), 4);
+
+        assertTrue(log.offer("my-api", "GET", "/orders/42", Outcome.FORBIDDEN, List.of("read", "write")));
+        assertTrue(log.offer(null, null, null, Outcome.NO_USER_ROLE, null));
+        assertTrue(log.offer("my-api", "POST", "/orders", Outcome.ALLOWED, "read \"quoted\""));
+
+        String[] lines = drain(log).split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].matches("\\{\"timestamp\":\"[^\"]+Z\",\"outcome\":\"FORBIDDEN\",.*"));
+        assertTrue(lines[0].endsWith("\"api\":\"my-api\",\"method\":\"GET\",\"path\":\"/orders/42\",\"roles\":[\"read\",\"write\"]}"));
+        assertTrue(lines[1].endsWith("\"outcome\":\"NO_USER_ROLE\"}"));
+        assertTrue(lines[2].endsWith("\"roles\":\"read \\\"quoted\\\"\"}"));
+        assertEquals(3, log.written());
+        assertEquals("", drain(log));
+    }
+
+    @Test
+    public void shouldDropRecordsWhenFull() throws IOException {
+        DecisionAuditLog log = new DecisionAuditLog(Path.of("unused.log"), 2);
+
+        assertTrue(log.offer("my-api", "GET", "/", Outcome.FORBIDDEN, "a"));
+        assertTrue(log.offer("my-api", "GET", "/", Outcome.FORBIDDEN, "b"));
+        assertFalse(log.offer("my-api", "GET", "/", Outcome.FORBIDDEN, "c"));
+        assertFalse(log.offer("my-api", "GET", "/", Outcome.FORBIDDEN, "d"));
+        assertEquals(2, log.dropped());
+
+        String[] lines = drain(log).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].endsWith("\"roles\":\"a\",\"dropped\":2}"));
+        assertTrue(lines[1].endsWith("\"roles\":\"b\"}"));
+
+        // The buffer is released once drained, and drops are only reported once
+        assertTrue(log.offer("my-api", "GET", "/", Outcome.FORBIDDEN, "e"));
+        assertTrue(drain(log).endsWith("\"roles\":\"e\"}\n"));
+    }
+
+    @Test
+    public void shouldNotLoseRecordsOfConcurrentWriters() throws Exception {
+        DecisionAuditLog log = new DecisionAuditLog(Path.of("unused.log"), 1 << 14);
+        int threads = 4;
+        int records = 2000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            String api = "api-" + t;
+            writers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < records; i++) {
+                    log.offer(api, "GET", "/" + i, Outcome.FORBIDDEN, "role");
+                }
+            });
+            writers[t].start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        String output = drain(log);
+        assertEquals(0, log.dropped());
+        assertEquals(threads * records, output.split("\n").length);
+        for (int t = 0; t < threads; t++) {
+            assertTrue(output.contains("\"api\":\"api-" + t + "\",\"method\":\"GET\",\"path\":\"/" + (records - 1) + "\""));
+        }
+    }
+
+    @Test
+    public void shouldWriteInBackground() throws Exception {
+        Path file = Files.createTempDirectory("rbac-shadow").resolve("audit/rbac-shadow.log");
+        DecisionAuditLog log = DecisionAuditLog.acquire(file, 16);
+
+        assertSame(log, DecisionAuditLog.acquire(file, 32));
+        assertTrue(log.offer("my-api", "DELETE", "/orders/42", Outcome.FORBIDDEN, List.of("read")));
+
+        awaitWritten(log, 1);
+        assertTrue(Files.readString(file).contains("\"method\":\"DELETE\",\"path\":\"/orders/42\",\"roles\":[\"read\"]}"));
+
+        // The idle writer is woken up by the next record
+        assertTrue(log.offer("my-api", "GET", "/orders/43", Outcome.FORBIDDEN, List.of("read")));
+        awaitWritten(log, 2);
+        log.release();
+        log.release();
+    }
+
+    @Test
+    public void shouldWriteRemainingRecordsOnceReleased() throws Exception {
+        Path file = Files.createTempDirectory("rbac-shadow").resolve("rbac-shadow.log");
+        DecisionAuditLog log = DecisionAuditLog.acquire(file, 16);
+        DecisionAuditLog shared = DecisionAuditLog.acquire(file, 16);
+        log.release();
+        assertSame(shared, DecisionAuditLog.acquire(file, 16));
+        log.release();
+
+        assertTrue(log.offer("my-api", "DELETE", "/orders/42", Outcome.FORBIDDEN, List.of("read")));
+        log.release();
+
+        awaitWritten(log, 1);
+        assertTrue(Files.readString(file).contains("\"path\":\"/orders/42\""));
+        // Released by all the policies, the file is opened again by the next one
+        DecisionAuditLog reopened = DecisionAuditLog.acquire(file, 16);
+        assertNotSame(log, reopened);
+        reopened.release();
+    }
+
+    private static void awaitWritten(DecisionAuditLog log, long records) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (log.written() < records && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(records, log.written());
+    }
+
+    private static String drain(DecisionAuditLog log) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            generator.setRootValueSeparator(null);
+            log.drain(generator);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class DecisionCacheTest {
+
+    @Test
+    public void shouldCacheDecisions() {
+        DecisionCache cache = new DecisionCache(16, 0, TimeUnit.SECONDS);
+
+        assertNull(cache.get("read write"));
+        cache.put("read write", true);
+        cache.put("read", false);
+
+        assertEquals(Boolean.TRUE, cache.get("read write"));
+        assertEquals(Boolean.FALSE, cache.get("read"));
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    public void shouldBoundEntries() {
+        DecisionCache cache = new DecisionCache(100, 0, TimeUnit.SECONDS);
+        assertEquals(64, cache.capacity());
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("role-" + i, true);
+        }
+
+        int found = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get("role-" + i) != null) {
+                found++;
+            }
+        }
+        assertTrue(found <= 64);
+        assertEquals(1000 - found, cache.misses());
+        assertTrue(cache.evictions() >= 1000 - 64);
+    }
+
+    @Test
+    public void shouldExpireEntries() throws InterruptedException {
+        DecisionCache cache = new DecisionCache(16, 1, TimeUnit.MILLISECONDS);
+        cache.put("read", true);
+
+        Thread.sleep(5);
+
+        assertNull(cache.get("read"));
+        cache.put("write", true);
+        assertEquals(0, cache.evictions());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class DenyCacheTest {
+
+    private final Object rule = new Object();
+
+    @Test
+    public void shouldCacheDenialsByRuleClientAndRoles() {
+        DenyCache<String> cache = new DenyCache<>(16, 0, TimeUnit.SECONDS);
+
+        assertNull(cache.get(rule, "sub-1", "write"));
+        cache.put(rule, "sub-1", "write", "FORBIDDEN");
+        cache.put(rule, "sub-1", Arrays.asList("write", "audit"), "FORBIDDEN");
+
+        assertEquals("FORBIDDEN", cache.get(rule, "sub-1", new String("write")));
+        assertEquals("FORBIDDEN", cache.get(rule, "sub-1", Arrays.asList("write", "audit")));
+        assertNull(cache.get(rule, "sub-2", "write"));
+        assertNull(cache.get(rule, "sub-1", "write audit"));
+        assertNull(cache.get(new Object(), "sub-1", "write"));
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void shouldCacheDenialsByRoleSetWhateverTheOrder() {
+        DenyCache<String> cache = new DenyCache<>(16, 0, TimeUnit.SECONDS);
+        cache.put(rule, "sub-1", Arrays.asList("write", "audit"), "FORBIDDEN");
+
+        assertEquals("FORBIDDEN", cache.get(rule, "sub-1", Arrays.asList("audit", "write")));
+        assertEquals("FORBIDDEN", cache.get(rule, "sub-1", new HashSet<>(Arrays.asList("write", "audit"))));
+        assertNull(cache.get(rule, "sub-1", Arrays.asList("write")));
+        assertNull(cache.get(rule, "sub-1", Arrays.asList("write", "audit", "read")));
+        assertNull(cache.get(rule, "sub-1", "write audit"));
+    }
+
+    @Test
+    public void shouldBoundEntries() {
+        DenyCache<String> cache = new DenyCache<>(100, 0, TimeUnit.SECONDS);
+        assertEquals(64, cache.capacity());
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(rule, "sub-" + i, "write", "FORBIDDEN");
+        }
+
+        int found = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get(rule, "sub-" + i, "write") != null) {
+                found++;
+            }
+        }
+        assertTrue(found <= 64);
+        assertTrue(cache.evictions() >= 1000 - 64);
+    }
+
+    @Test
+    public void shouldExpireDenials() throws InterruptedException {
+        DenyCache<String> cache = new DenyCache<>(16, 1, TimeUnit.MILLISECONDS);
+        cache.put(rule, "sub-1", "write", "FORBIDDEN");
+
+        Thread.sleep(5);
+
+        assertNull(cache.get(rule, "sub-1", "write"));
+    }
+}
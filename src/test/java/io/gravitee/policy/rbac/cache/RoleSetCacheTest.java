@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RoleSetCacheTest {
+
+    @Test
+    public void shouldComputeOrderAndFormatIndependentFingerprint() {
+        long fingerprint = RoleSetCache.fingerprint(Arrays.asList("read", "write", "admin"));
+
+        assertEquals(fingerprint, RoleSetCache.fingerprint(Arrays.asList("admin", "read", "write")));
+        assertEquals(fingerprint, RoleSetCache.fingerprint("write, admin read"));
+        assertEquals(fingerprint, RoleSetCache.fingerprint("[\"admin\", \"wr\\u0069te\", \"read\"]"));
+        assertEquals(fingerprint, RoleSetCache.fingerprint(Arrays.asList("admin", 42, "read", "write")));
+        assertNotEquals(fingerprint, RoleSetCache.fingerprint(Arrays.asList("read", "write")));
+    }
+
+    @Test
+    public void shouldCacheDecisionsByRoleSet() {
+        RoleSetCache cache = new RoleSetCache(16, 0, TimeUnit.SECONDS);
+        List<String> roles = Arrays.asList("read", "write");
+        long fingerprint = RoleSetCache.fingerprint(roles);
+
+        assertNull(cache.get(fingerprint, roles));
+        cache.put(fingerprint, roles, true);
+
+        assertEquals(Boolean.TRUE, cache.get(fingerprint, Arrays.asList("write", "read")));
+        assertEquals(Boolean.TRUE, cache.get(RoleSetCache.fingerprint("write read"), "write read"));
+        assertEquals(Boolean.TRUE, cache.get(RoleSetCache.fingerprint("[\"read\",\"write\"]"), "[\"read\",\"write\"]"));
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0.75, cache.hitRatio(), 0.0);
+    }
+
+    @Test
+    public void shouldResolveFingerprintCollisions() {
+        RoleSetCache cache = new RoleSetCache(16, 0, TimeUnit.SECONDS);
+        // "Aa" and "BB" share the same hash code, so do their fingerprints
+        assertEquals(RoleSetCache.fingerprint(Arrays.asList("Aa")), RoleSetCache.fingerprint(Arrays.asList("BB")));
+
+        cache.put(RoleSetCache.fingerprint(Arrays.asList("Aa")), Arrays.asList("Aa"), true);
+
+        assertNull(cache.get(RoleSetCache.fingerprint(Arrays.asList("BB")), Arrays.asList("BB")));
+        assertNull(cache.get(RoleSetCache.fingerprint("BB"), "BB"));
+        assertEquals(2, cache.collisions());
+        assertEquals(2, cache.misses());
+        assertEquals(Boolean.TRUE, cache.get(RoleSetCache.fingerprint("Aa"), "Aa"));
+    }
+
+    @Test
+    public void shouldRequireSameRoleSet() {
+        RoleSetCache cache = new RoleSetCache(16, 0, TimeUnit.SECONDS);
+        List<String> roles = Arrays.asList("Aa", "BB");
+        cache.put(RoleSetCache.fingerprint(roles), roles, false);
+
+        // Same size and same fingerprint, but "BB" is missing
+        List<String> duplicated = Arrays.asList("Aa", "Aa");
+        assertEquals(RoleSetCache.fingerprint(roles), RoleSetCache.fingerprint(duplicated));
+        assertNull(cache.get(RoleSetCache.fingerprint(duplicated), duplicated));
+
+        assertEquals(Boolean.FALSE, cache.get(RoleSetCache.fingerprint("BB Aa"), "BB Aa"));
+    }
+
+    @Test
+    public void shouldReadMalformedJsonAsDelimitedList() {
+        RoleSetCache cache = new RoleSetCache(16, 0, TimeUnit.SECONDS);
+        String roles = "[\"read\" write";
+        cache.put(RoleSetCache.fingerprint(roles), roles, true);
+
+        assertEquals(Boolean.TRUE, cache.get(RoleSetCache.fingerprint(roles), roles));
+    }
+
+    @Test
+    public void shouldNotCacheMoreThan64Roles() {
+        RoleSetCache cache = new RoleSetCache(16, 0, TimeUnit.SECONDS);
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < RoleSetCache.MAX_ROLES + 1; i++) {
+            roles.add("role-" + i);
+        }
+        cache.put(RoleSetCache.fingerprint(roles), roles, true);
+        assertNull(cache.get(RoleSetCache.fingerprint(roles), roles));
+
+        roles.remove(0);
+        cache.put(RoleSetCache.fingerprint(roles), roles, true);
+        assertEquals(Boolean.TRUE, cache.get(RoleSetCache.fingerprint(roles), roles));
+    }
+
+    @Test
+    public void shouldExpireEntries() throws InterruptedException {
+        RoleSetCache cache = new RoleSetCache(16, 1, TimeUnit.MILLISECONDS);
+        List<String> roles = Arrays.asList("read");
+        cache.put(RoleSetCache.fingerprint(roles), roles, true);
+
+        Thread.sleep(5);
+
+        assertNull(cache.get(RoleSetCache.fingerprint(roles), roles));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.mapping;
+
+import static org.junit.Assert.*;
+
+import io.gravitee.policy.rbac.matcher.RoleExpression;
+import io.gravitee.policy.rbac.matcher.RoleHierarchy;
+import io.gravitee.policy.rbac.matcher.RoleMatcher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class GroupMappingTest {
+
+    private static final String ADMINS = "CN=Admins,OU=Groups,DC=corp,DC=com";
+
+    private static final String SUPPORT = "CN=Support,OU=Groups,DC=corp,DC=com";
+
+    @Test
+    public void shouldIndexGroups() {
+        GroupMapping mapping = parse(
+            "# Directory groups\n\n" + ADMINS + " => admin, billing:read\r\n  " + SUPPORT + " =>support\n" + ADMINS + " => admin audit\n"
+        );
+
+        assertEquals(2, mapping.size());
+        int admins = mapping.indexOf(ADMINS);
+        assertEquals(ADMINS, mapping.group(admins));
+        assertEquals(Arrays.asList("admin", "billing:read", "audit"), roles(mapping, admins));
+        assertEquals(List.of("support"), roles(mapping, mapping.indexOf(SUPPORT)));
+        assertEquals(SUPPORT, mapping.group(mapping.indexOf("memberOf " + SUPPORT + " ", 9, 9 + SUPPORT.length())));
+        assertEquals(-1, mapping.indexOf("CN=Admins"));
+        assertEquals(-1, mapping.indexOf(42));
+    }
+
+    @Test
+    public void shouldCompareNonAsciiGroups() {
+        GroupMapping mapping = parse("CN=Équipe ☕,DC=corp => coffee\nCN=🚀,DC=corp => rocket\n");
+
+        assertEquals(List.of("coffee"), roles(mapping, mapping.indexOf("CN=Équipe ☕,DC=corp")));
+        assertEquals(List.of("rocket"), roles(mapping, mapping.indexOf("CN=🚀,DC=corp")));
+        assertEquals(-1, mapping.indexOf("CN=Equipe ☕,DC=corp"));
+        assertEquals(-1, mapping.indexOf("CN=🚁,DC=corp"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEntryWithoutSeparator() {
+        parse(ADMINS + " admin\n");
+    }
+
+    @Test
+    public void shouldMatchMappedGroups() {
+        GroupMapping mapping = parse(ADMINS + " => admin, billing:read\n" + SUPPORT + " => support\n");
+        RoleMatcher strict = RoleMatcher.compile(Set.of("admin", "billing:read"), true, RoleMatcher.Options.DEFAULT.groups(mapping));
+        RoleMatcher any = RoleMatcher.compile(Set.of("billing:read"), false, RoleMatcher.Options.DEFAULT.groups(mapping));
+
+        assertTrue(strict.matches(List.of(ADMINS)));
+        assertTrue(strict.matches("[\"" + SUPPORT + "\", \"" + ADMINS + "\"]"));
+        assertFalse(strict.matches(List.of(SUPPORT, "admin")));
+        assertTrue(strict.matches(List.of(SUPPORT, "admin", "billing:read")));
+        assertTrue(any.matches(List.of(SUPPORT, ADMINS)));
+        assertFalse(any.matches(List.of(SUPPORT)));
+    }
+
+    @Test
+    public void shouldMatchMappedGroups_hierarchyAndExpression() {
+        GroupMapping mapping = parse(ADMINS + " => admin\n" + SUPPORT + " => support, suspended\n");
+        RoleHierarchy hierarchy = RoleHierarchy.compile(Map.of("admin", Set.of("viewer")));
+
+        RoleMatcher matcher = RoleMatcher.compile(
+            RoleExpression.parse("viewer AND NOT suspended"),
+            RoleMatcher.Options.DEFAULT.hierarchy(hierarchy).groups(mapping)
+        );
+
+        assertTrue(matcher.matches(List.of(ADMINS)));
+        assertFalse(matcher.matches(List.of(ADMINS, SUPPORT)));
+    }
+
+    @Test
+    public void shouldReloadMapping() throws IOException {
+        Path directory = Files.createTempDirectory("rbac-group-mapping-test");
+        Path file = directory.resolve("groups.map");
+        try {
+            replace(file, ADMINS + " => admin\n");
+            GroupMappingSource source = GroupMappingSource.acquire(directory, "groups.map");
+            AtomicReference<GroupMapping> notified = new AtomicReference<>();
+            Consumer<GroupMapping> listener = notified::set;
+            source.addListener(listener);
+            assertSame(source, GroupMappingSource.acquire(directory, "./groups.map"));
+
+            replace(file, ADMINS + " => admin, audit\n");
+            source.reload();
+
+            assertEquals(Arrays.asList("admin", "audit"), roles(notified.get(), notified.get().indexOf(ADMINS)));
+            assertEquals(Arrays.asList("admin", "audit"), roles(source.mapping(), source.mapping().indexOf(ADMINS)));
+
+            // An invalid file does not replace the current mapping
+            replace(file, "invalid\n");
+            source.reload();
+            assertEquals(Arrays.asList("admin", "audit"), roles(source.mapping(), source.mapping().indexOf(ADMINS)));
+            source.release();
+            source.release();
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void shouldReleaseMapping() throws IOException {
+        Path directory = Files.createTempDirectory("rbac-group-mapping-test");
+        Path file = directory.resolve("groups.map");
+        try {
+            replace(file, ADMINS + " => admin\n");
+            GroupMappingSource source = GroupMappingSource.acquire(directory, "groups.map");
+            GroupMappingSource shared = GroupMappingSource.acquire(directory, "groups.map");
+            source.release();
+            assertSame(shared, GroupMappingSource.acquire(directory, "groups.map"));
+            source.release();
+            source.release();
+
+            // Released by all the policies, the file is loaded again by the next one
+            GroupMappingSource reloaded = GroupMappingSource.acquire(directory, "groups.map");
+            assertNotSame(source, reloaded);
+            reloaded.release();
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void shouldRejectMappingOutsideOfDirectory() throws IOException {
+        Path parent = Files.createTempDirectory("rbac-group-mapping-test");
+        Path directory = Files.createDirectory(parent.resolve("mappings"));
+        Path outside = parent.resolve("outside.map");
+        try {
+            replace(outside, ADMINS + " => admin\n");
+            for (String name : Arrays.asList("../outside.map", outside.toString(), ".", "missing.map")) {
+                try {
+                    GroupMappingSource.acquire(directory, name);
+                    fail("Group mapping " + name + " should be rejected");
+                } catch (IllegalArgumentException e) {
+                    // The location of the directory on the host is not disclosed
+                    assertFalse(e.getMessage().contains(directory.toString()));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(outside);
+            Files.delete(directory);
+            Files.delete(parent);
+        }
+    }
+
+    /**
+     * Replace the file atomically, as the watcher may reload it at any time.
+     */
+    private static void replace(Path file, String mapping) throws IOException {
+        Path temp = Files.writeString(file.resolveSibling(file.getFileName() + ".tmp"), mapping);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static GroupMapping parse(String mapping) {
+        return GroupMapping.parse(ByteBuffer.wrap(mapping.getBytes(StandardCharsets.UTF_8)), "test");
+    }
+
+    private static List<String> roles(GroupMapping mapping, int group) {
+        String[] roles = new String[mapping.roleCount(group)];
+        for (int i = 0; i < roles.length; i++) {
+            roles[i] = mapping.role(group, i);
+        }
+        return Arrays.asList(roles);
+    }
+}
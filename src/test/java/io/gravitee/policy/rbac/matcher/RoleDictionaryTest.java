@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RoleDictionaryTest {
+
+    @Test
+    public void shouldInternSingleInstance() {
+        RoleDictionary dictionary = new RoleDictionary(16);
+        String admin = new String("admin");
+
+        assertSame(admin, dictionary.intern(admin));
+        assertSame(admin, dictionary.intern(new String("admin")));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void shouldLookupRegions() {
+        RoleDictionary dictionary = new RoleDictionary(16);
+        String admin = dictionary.intern(new String("admin"));
+
+        assertSame(admin, dictionary.lookup("admin"));
+        assertSame(admin, dictionary.lookup("read admin write", 5, 10));
+        assertSame(admin, dictionary.lookup("[\"admin\"]".toCharArray(), 2, 7));
+        assertNull(dictionary.lookup("read admin write", 0, 4));
+        assertNull(dictionary.lookup("admins".toCharArray(), 0, 6));
+        assertNull(dictionary.lookup(null));
+    }
+
+    @Test
+    public void shouldNotInternLookedUpRoles() {
+        RoleDictionary dictionary = new RoleDictionary(16);
+
+        assertNull(dictionary.lookup("admin"));
+        assertNull(dictionary.lookup("admin"));
+        assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    public void shouldGrow() {
+        RoleDictionary dictionary = new RoleDictionary(2);
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            roles.add(dictionary.intern("role-" + i));
+        }
+
+        assertEquals(1000, dictionary.size());
+        for (int i = 0; i < 1000; i++) {
+            assertSame(roles.get(i), dictionary.lookup("role-" + i));
+        }
+    }
+
+    @Test
+    public void shouldReclaimUnreferencedRoles() throws InterruptedException {
+        RoleDictionary dictionary = new RoleDictionary(16);
+        String kept = dictionary.intern(new String("kept"));
+        dictionary.intern(new String("dropped"));
+
+        for (int i = 0; i < 50 && dictionary.lookup("dropped") != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(dictionary.lookup("dropped"));
+        assertSame(kept, dictionary.lookup("kept"));
+        String dropped = new String("dropped");
+        assertSame(dropped, dictionary.intern(dropped));
+        assertSame(dropped, dictionary.lookup("dropped"));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RoleExpressionTest {
+
+    private static final String EXPRESSION = "(admin OR (editor AND region-eu)) AND NOT suspended";
+
+    @Test
+    public void shouldParseExpression() {
+        RoleExpression expression = RoleExpression.parse(EXPRESSION);
+
+        assertEquals(List.of("admin", "editor", "region-eu", "suspended"), expression.roles());
+        assertEquals("((\"admin\" OR (\"editor\" AND \"region-eu\")) AND NOT \"suspended\")", expression.toString());
+    }
+
+    @Test
+    public void shouldGiveAndPrecedenceOverOr() {
+        assertEquals("(\"a\" OR (\"b\" AND \"c\"))", RoleExpression.parse("a or b and c").toString());
+        assertEquals("((\"a\" OR \"b\") AND NOT \"c\")", RoleExpression.parse("(a || b) && !c").toString());
+    }
+
+    @Test
+    public void shouldParseQuotedRoles() {
+        RoleExpression expression = RoleExpression.parse("\"and\" AND \"role with spaces\" AND orders");
+
+        assertEquals(List.of("and", "role with spaces", "orders"), expression.roles());
+    }
+
+    @Test
+    public void shouldRejectInvalidExpressions() {
+        for (String invalid : List.of("", "admin AND", "(admin", "admin)", "NOT", "admin OR OR editor", "\"admin", "admin & editor")) {
+            try {
+                RoleExpression.parse(invalid);
+                fail("Expression must be rejected: " + invalid);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith("Invalid role expression at position"));
+            }
+        }
+    }
+
+    @Test
+    public void shouldEvaluateExpression() {
+        RoleMatcher matcher = RoleMatcher.compile(RoleExpression.parse(EXPRESSION), RoleMatcher.Options.DEFAULT);
+
+        assertTrue(matcher.matches(List.of("admin")));
+        assertTrue(matcher.matches(List.of("region-eu", "editor")));
+        assertTrue(matcher.matches("[\"editor\", \"region-eu\", \"other\"]"));
+        assertFalse(matcher.matches(List.of("editor")));
+        assertFalse(matcher.matches(List.of("admin", "suspended")));
+        assertFalse(matcher.matches("admin,suspended"));
+        assertFalse(matcher.matches(List.of()));
+    }
+
+    @Test
+    public void shouldEvaluateNegation() {
+        RoleMatcher matcher = RoleMatcher.compile(RoleExpression.parse("NOT suspended"), RoleMatcher.Options.DEFAULT);
+
+        assertTrue(matcher.matches(List.of()));
+        assertTrue(matcher.matches(""));
+        assertTrue(matcher.matches(List.of("admin")));
+        assertFalse(matcher.matches(List.of("admin", "suspended")));
+    }
+
+    @Test
+    public void shouldEvaluateExpressionWithHierarchyAndPatterns() {
+        RoleHierarchy hierarchy = RoleHierarchy.compile(Map.of("owner", List.of("admin")));
+        RoleMatcher matcher = RoleMatcher.compile(
+            RoleExpression.parse("(admin OR billing:*) AND NOT blocked:*"),
+            RoleMatcher.Options.DEFAULT.hierarchy(hierarchy)
+        );
+
+        assertTrue(matcher.matches(List.of("owner")));
+        assertTrue(matcher.matches("billing:invoice:read"));
+        assertFalse(matcher.matches(List.of("owner", "blocked:fraud")));
+    }
+
+    @Test
+    public void shouldEvaluateExpressionWithMoreThan64Roles() {
+        StringBuilder expression = new StringBuilder("NOT banned");
+        List<String> userRoles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expression.append(" AND role-").append(i);
+            userRoles.add("role-" + i);
+        }
+        RoleMatcher matcher = RoleMatcher.compile(RoleExpression.parse(expression.toString()), RoleMatcher.Options.DEFAULT);
+
+        assertTrue(matcher.matches(userRoles));
+        assertTrue(matcher.matches(String.join(" ", userRoles)));
+
+        userRoles.add("banned");
+        assertFalse(matcher.matches(userRoles));
+
+        userRoles.remove("role-99");
+        userRoles.remove("banned");
+        assertFalse(matcher.matches(userRoles));
+    }
+}
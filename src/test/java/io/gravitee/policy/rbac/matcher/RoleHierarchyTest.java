@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RoleHierarchyTest {
+
+    @Test
+    public void shouldComputeTransitiveClosure() {
+        Map<String, List<String>> inheritance = new LinkedHashMap<>();
+        inheritance.put("admin", List.of("editor", "auditor"));
+        inheritance.put("editor", List.of("viewer"));
+
+        RoleHierarchy hierarchy = RoleHierarchy.compile(inheritance);
+
+        assertEquals(new HashSet<>(Arrays.asList("editor", "auditor", "viewer")), hierarchy.inherited("admin"));
+        assertEquals(Set.of("viewer"), hierarchy.inherited("editor"));
+        assertEquals(Set.of(), hierarchy.inherited("viewer"));
+        assertEquals(Set.of("admin", "editor"), hierarchy.roles());
+    }
+
+    @Test
+    public void shouldRejectCycle() {
+        Map<String, List<String>> inheritance = new LinkedHashMap<>();
+        inheritance.put("admin", List.of("editor"));
+        inheritance.put("editor", List.of("viewer"));
+        inheritance.put("viewer", List.of("admin"));
+
+        try {
+            RoleHierarchy.compile(inheritance);
+            fail("Cycle must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Cycle detected in role hierarchy: admin > editor > viewer > admin", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectSelfInheritance() {
+        RoleHierarchy.compile(Map.of("admin", List.of("admin")));
+    }
+
+    @Test
+    public void shouldMatchInheritedRoles() {
+        Map<String, List<String>> inheritance = new LinkedHashMap<>();
+        inheritance.put("admin", List.of("editor"));
+        inheritance.put("editor", List.of("viewer"));
+        RoleHierarchy hierarchy = RoleHierarchy.compile(inheritance);
+
+        RoleMatcher strict = RoleMatcher.compile(List.of("viewer", "billing"), true, RoleMatcher.Options.DEFAULT.hierarchy(hierarchy));
+        assertTrue(strict.matches(List.of("admin", "billing")));
+        assertTrue(strict.matches("billing editor"));
+        assertFalse(strict.matches(List.of("admin")));
+
+        RoleMatcher nonStrict = RoleMatcher.compile(List.of("viewer"), false, RoleMatcher.Options.DEFAULT.hierarchy(hierarchy));
+        assertTrue(nonStrict.matches(List.of("admin")));
+        assertTrue(nonStrict.matches("[\"viewer\"]"));
+        assertFalse(nonStrict.matches(List.of("billing")));
+    }
+}
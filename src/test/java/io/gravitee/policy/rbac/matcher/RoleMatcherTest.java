@@ -0,0 +1,281 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RoleMatcherTest {
+
+    @Test
+    public void shouldIndexDistinctRoles() {
+        RoleIndex index = RoleIndex.of(Arrays.asList("read", "write", null, "read"));
+
+        assertEquals(2, index.size());
+        assertEquals(0, index.indexOf("read"));
+        assertEquals(1, index.indexOf("write"));
+        assertEquals(-1, index.indexOf("admin"));
+        assertEquals(-1, index.indexOf(42));
+        assertEquals(-1, index.indexOf(null));
+    }
+
+    @Test
+    public void shouldMatchAllRoles_strict() {
+        RoleMatcher matcher = RoleMatcher.compile(new HashSet<>(Arrays.asList("read", "write")), true);
+
+        assertTrue(matcher.matches(Arrays.asList("write", "admin", "read")));
+        assertTrue(matcher.matches(new HashSet<>(Arrays.asList("write", "read"))));
+        assertFalse(matcher.matches(Arrays.asList("write", "admin")));
+        assertFalse(matcher.matches(Collections.emptyList()));
+        assertFalse(matcher.matches((Collection<?>) null));
+    }
+
+    @Test
+    public void shouldMatchOneRole_nonStrict() {
+        RoleMatcher matcher = RoleMatcher.compile(new HashSet<>(Arrays.asList("read", "write")), false);
+
+        assertTrue(matcher.matches(Arrays.asList("admin", "write")));
+        assertTrue(matcher.matches(new HashSet<>(Collections.singletonList("read"))));
+        assertFalse(matcher.matches(Arrays.asList("admin", 1)));
+        assertFalse(matcher.matches(Collections.emptySet()));
+    }
+
+    @Test
+    public void shouldMatchAllRoles_strictWithMoreThan64Roles() {
+        List<String> required = new ArrayList<>();
+        for (int i = 0; i < 130; i++) {
+            required.add("role-" + i);
+        }
+        RoleMatcher matcher = RoleMatcher.compile(required, true);
+
+        List<String> userRoles = new ArrayList<>(required);
+        userRoles.add("role-0");
+        assertTrue(matcher.matches(userRoles));
+
+        userRoles.remove("role-129");
+        assertFalse(matcher.matches(userRoles));
+    }
+
+    @Test
+    public void shouldMatchAllRoles_strictWith64Roles() {
+        List<String> required = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            required.add("role-" + i);
+        }
+        RoleMatcher matcher = RoleMatcher.compile(required, true);
+
+        assertTrue(matcher.matches(required));
+        assertFalse(matcher.matches(required.subList(1, 64)));
+    }
+
+    @Test
+    public void shouldMatchStringRoles_strict() {
+        RoleMatcher matcher = RoleMatcher.compile(new HashSet<>(Arrays.asList("read", "write")), true);
+
+        assertTrue(matcher.matches("[\"write\", \"admin\", \"read\"]"));
+        assertTrue(matcher.matches("write admin read"));
+        assertTrue(matcher.matches("write,  read"));
+        assertTrue(matcher.matches("[\"wr\\u0069te\", \"read\"]"));
+        assertFalse(matcher.matches("[\"write\", \"admin\"]"));
+        assertFalse(matcher.matches("[]"));
+        assertFalse(matcher.matches(""));
+    }
+
+    @Test
+    public void shouldNotMatchRolesFromMalformedJson_strict() {
+        RoleMatcher matcher = RoleMatcher.compile(new HashSet<>(Arrays.asList("read", "write")), true);
+
+        // Read as a delimited list: "[\"read\"," and "\"write\"" which are not the required roles
+        assertFalse(matcher.matches("[\"read\", \"write\""));
+    }
+
+    @Test
+    public void shouldMatchStringRoles_nonStrict() {
+        RoleMatcher matcher = RoleMatcher.compile(new HashSet<>(Arrays.asList("read", "write")), false);
+
+        assertTrue(matcher.matches("[\"admin\", \"write\"]"));
+        assertTrue(matcher.matches("admin read"));
+        assertFalse(matcher.matches("[\"admin\", \"writer\"]"));
+        assertFalse(matcher.matches("[\"read\" admin"));
+        assertTrue(matcher.matches("[\"admin\" read"));
+    }
+
+    @Test
+    public void shouldMatchRolesIgnoringCase() {
+        RoleMatcher strict = RoleMatcher.compile(
+            Arrays.asList("Admin", "billing:*"),
+            true,
+            RoleMatcher.Options.DEFAULT.normalizer(RoleNormalizer.CASE_INSENSITIVE)
+        );
+
+        assertTrue(strict.matches(Arrays.asList("ADMIN", "Billing:Invoice")));
+        assertTrue(strict.matches("admin BILLING:read"));
+        assertTrue(strict.matches("[\"aDmIn\", \"billing:r\\u0065ad\"]"));
+        assertFalse(strict.matches("admins billing:read"));
+        assertFalse(strict.matches("admin billing"));
+        assertFalse(RoleMatcher.compile(List.of("Admin"), true).matches("admin"));
+    }
+
+    @Test
+    public void shouldMatchInheritedRolesIgnoringCase() {
+        RoleHierarchy hierarchy = RoleHierarchy.compile(Map.of("Super-Admin", List.of("Editor")));
+        RoleMatcher matcher = RoleMatcher.compile(
+            Set.of("editor"),
+            true,
+            RoleMatcher.Options.DEFAULT.hierarchy(hierarchy).normalizer(RoleNormalizer.CASE_INSENSITIVE)
+        );
+
+        assertTrue(matcher.matches(List.of("SUPER-ADMIN")));
+        assertTrue(matcher.matches("super-admin"));
+        assertFalse(matcher.matches("admin"));
+    }
+
+    @Test
+    public void shouldMergeRolesOfExpressionIgnoringCase() {
+        RoleExpression expression = RoleExpression.parse("(Admin OR editor) AND NOT admin");
+        RoleMatcher matcher = RoleMatcher.compile(expression, RoleMatcher.Options.DEFAULT.normalizer(RoleNormalizer.CASE_INSENSITIVE));
+
+        assertFalse(matcher.matches("ADMIN"));
+        assertTrue(matcher.matches("Editor"));
+        assertFalse(matcher.matches("editor admin"));
+    }
+
+    @Test
+    public void shouldMatchRolesInUnicodeNormalForm() {
+        // Precomposed é in the configuration, e followed by a combining acute accent and ß spelled SS in the user roles
+        RoleMatcher matcher = RoleMatcher.compile(
+            Arrays.asList("Caf\u00e9", "stra\u00dfe"),
+            true,
+            RoleMatcher.Options.DEFAULT.normalizer(RoleNormalizer.UNICODE)
+        );
+
+        assertTrue(matcher.matches(Arrays.asList("CAFE\u0301", "STRASSE")));
+        assertTrue(matcher.matches("cafe\u0301 Strasse"));
+        assertTrue(matcher.matches("CAF\u00c9 STRASSE"));
+        assertFalse(matcher.matches("cafe strasse"));
+
+        // Characters are only folded one by one when roles are compared ignoring case
+        RoleMatcher caseInsensitive = RoleMatcher.compile(
+            List.of("stra\u00dfe"),
+            true,
+            RoleMatcher.Options.DEFAULT.normalizer(RoleNormalizer.CASE_INSENSITIVE)
+        );
+        assertFalse(caseInsensitive.matches("STRASSE"));
+    }
+
+    @Test
+    public void shouldNormalizeRoles() {
+        assertEquals("admin", RoleNormalizer.CASE_INSENSITIVE.normalize("ADMIN"));
+        assertEquals("Admin", RoleNormalizer.EXACT.normalize("Admin"));
+        assertEquals("caf\u00e9", RoleNormalizer.UNICODE.normalize("CAFE\u0301"));
+        for (RoleNormalizer normalizer : RoleNormalizer.values()) {
+            for (String role : Arrays.asList("Admin", "stra\u00dfe", "\u0130stanbul", "\ufb01le", "\u039f\u0394\u039f\u03a3")) {
+                String normalized = normalizer.normalize(role);
+                assertEquals(normalized, normalizer.normalize(normalized));
+            }
+        }
+    }
+
+    @Test
+    public void shouldIndexManyRoles() {
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            roles.add("role-" + i);
+        }
+        RoleIndex index = RoleIndex.of(roles);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, index.indexOf("role-" + i));
+            assertEquals(i, index.indexOf("[role-" + i + "]", 1, 6 + String.valueOf(i).length()));
+            assertEquals(-1, index.indexOf("role-" + i + "0000"));
+            assertEquals(-1, index.indexOf("Role-" + i));
+        }
+        assertEquals(-1, index.indexOf(""));
+        assertEquals(-1, index.indexOf("role-", 0, 0));
+    }
+
+    @Test
+    public void shouldLookForRequiredRolesInLargeSets() {
+        RoleHierarchy hierarchy = RoleHierarchy.compile(Map.of("admin", List.of("write")));
+        RoleMatcher strict = RoleMatcher.compile(Set.of("read", "write"), true, RoleMatcher.Options.DEFAULT.hierarchy(hierarchy));
+        RoleMatcher any = RoleMatcher.compile(Set.of("read", "write"), false, RoleMatcher.Options.DEFAULT.hierarchy(hierarchy));
+        RoleMatcher expression = RoleMatcher.compile(
+            RoleExpression.parse("read AND NOT suspended"),
+            RoleMatcher.Options.DEFAULT.hierarchy(hierarchy)
+        );
+
+        Set<String> userRoles = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            userRoles.add("group-" + i);
+        }
+        assertFalse(any.matches(userRoles));
+        userRoles.add("read");
+        assertFalse(strict.matches(userRoles));
+        assertTrue(any.matches(userRoles));
+        assertTrue(expression.matches(userRoles));
+        userRoles.add("admin");
+        assertTrue(strict.matches(userRoles));
+        userRoles.add("suspended");
+        assertFalse(expression.matches(userRoles));
+
+        // Sorted sets may not compare roles with equals, their roles are looked up one by one
+        Set<String> sorted = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < 1000; i++) {
+            sorted.add("group-" + i);
+        }
+        sorted.addAll(List.of("READ", "ADMIN"));
+        assertFalse(strict.matches(sorted));
+        sorted.addAll(List.of("read", "admin"));
+        assertFalse(strict.matches(sorted));
+    }
+
+    @Test
+    public void shouldReuseGrantedRolesBetweenLargeMatchers() {
+        List<String> wide = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            wide.add("role-" + i);
+        }
+        List<String> narrow = wide.subList(0, 70);
+        RoleMatcher wideStrict = RoleMatcher.compile(wide, true);
+        RoleMatcher narrowStrict = RoleMatcher.compile(narrow, true);
+        RoleMatcher expression = RoleMatcher.compile(
+            RoleExpression.parse(String.join(" AND ", narrow.subList(0, 69)) + " AND NOT role-69"),
+            RoleMatcher.Options.DEFAULT
+        );
+
+        assertTrue(wideStrict.matches(wide));
+        assertTrue(narrowStrict.matches(narrow));
+        assertFalse(narrowStrict.matches(narrow.subList(1, 70)));
+        assertFalse(expression.matches(narrow));
+        assertTrue(expression.matches(narrow.subList(0, 69)));
+        assertFalse(wideStrict.matches(wide.subList(0, 199)));
+        assertTrue(wideStrict.matches(String.join(",", wide)));
+        assertFalse(narrowStrict.matches(String.join(",", narrow.subList(1, 70))));
+    }
+}
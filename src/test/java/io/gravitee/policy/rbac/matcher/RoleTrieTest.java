@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.matcher;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RoleTrieTest {
+
+    @Test
+    public void shouldMatchRequiredPatterns() {
+        RoleMatcher matcher = RoleMatcher.compile(List.of("billing:*", "profile"), true);
+
+        assertTrue(matcher.matches(List.of("billing:invoice:read", "profile")));
+        assertTrue(matcher.matches(List.of("billing:", "profile")));
+        assertTrue(matcher.matches("profile billing:invoice:read"));
+        assertTrue(matcher.matches("[\"profile\", \"billing:\\u0069nvoice\"]"));
+        assertFalse(matcher.matches(List.of("billing", "profile")));
+        assertFalse(matcher.matches(List.of("billing:invoice:read")));
+        assertFalse(matcher.matches("bill profile"));
+    }
+
+    @Test
+    public void shouldMatchAnyRoleWithStarPattern() {
+        RoleMatcher matcher = RoleMatcher.compile(List.of("*"), true);
+
+        assertTrue(matcher.matches(List.of("anything")));
+        assertTrue(matcher.matches("x"));
+        assertFalse(matcher.matches(List.of()));
+    }
+
+    @Test
+    public void shouldMatchNestedPatterns_nonStrict() {
+        RoleMatcher matcher = RoleMatcher.compile(List.of("billing:invoice:*", "admin"), false);
+
+        assertTrue(matcher.matches(List.of("billing:invoice:write")));
+        assertTrue(matcher.matches(List.of("admin")));
+        assertFalse(matcher.matches(List.of("billing:payment:write", "admi")));
+        assertFalse(matcher.matches("billing:payment:write,admin:read"));
+    }
+
+    @Test
+    public void shouldNotGrantWithUserWildcard_byDefault() {
+        RoleMatcher matcher = RoleMatcher.compile(List.of("billing:invoice:read"), true);
+
+        assertFalse(matcher.matches(List.of("billing:*")));
+        assertFalse(matcher.matches(List.of("*")));
+    }
+
+    @Test
+    public void shouldGrantWithUserWildcard() {
+        RoleMatcher matcher = RoleMatcher.compile(
+            List.of("billing:invoice:read", "billing:payment:read", "billing:refund:*", "audit"),
+            true,
+            RoleMatcher.Options.DEFAULT.wildcardGrants(true)
+        );
+
+        assertTrue(matcher.matches(List.of("billing:*", "audit")));
+        assertTrue(matcher.matches("billing:* audit"));
+        assertTrue(matcher.matches(List.of("billing:invoice:*", "billing:payment:read", "billing:refund:full", "audit")));
+        assertTrue(matcher.matches(List.of("*")));
+        assertFalse(matcher.matches(List.of("billing:invoice:*", "audit")));
+        assertFalse(matcher.matches(List.of("billing:inv*", "billing:payment:*", "billing:refund:*")));
+    }
+
+    @Test
+    public void shouldGrantPatternsThroughHierarchy() {
+        RoleHierarchy hierarchy = RoleHierarchy.compile(Map.of("accountant", List.of("billing:*")));
+        RoleMatcher matcher = RoleMatcher.compile(
+            List.of("billing:invoice:read", "billing:payment:read"),
+            true,
+            RoleMatcher.Options.DEFAULT.hierarchy(hierarchy)
+        );
+
+        assertTrue(matcher.matches(List.of("accountant")));
+        assertFalse(matcher.matches(List.of("billing:*")));
+    }
+
+    @Test
+    public void shouldMatchPatterns_strictWithMoreThan64Roles() {
+        List<String> required = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            required.add("app-" + i + ":*");
+        }
+        RoleMatcher matcher = RoleMatcher.compile(required, true, RoleMatcher.Options.DEFAULT.wildcardGrants(true));
+
+        List<String> userRoles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            userRoles.add("app-" + i + ":read");
+        }
+        assertTrue(matcher.matches(userRoles));
+        assertTrue(matcher.matches(List.of("app-*")));
+
+        userRoles.remove("app-42:read");
+        assertFalse(matcher.matches(userRoles));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.metrics;
+
+import static org.junit.Assert.*;
+
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.Outcome;
+import io.gravitee.policy.rbac.metrics.DecisionMetrics.RolesFormat;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class DecisionMetricsTest {
+
+    @Test
+    public void shouldDetectRolesFormat() {
+        assertEquals(RolesFormat.NONE, RolesFormat.of(null));
+        assertEquals(RolesFormat.LIST, RolesFormat.of(List.of("admin")));
+        assertEquals(RolesFormat.JSON, RolesFormat.of("  [\"admin\"]"));
+        assertEquals(RolesFormat.DELIMITED, RolesFormat.of("admin, user"));
+        assertEquals(RolesFormat.DELIMITED, RolesFormat.of(""));
+        assertEquals(RolesFormat.LIST, RolesFormat.of(Set.of("admin")));
+        assertEquals(RolesFormat.OTHER, RolesFormat.of(42));
+    }
+
+    @Test
+    public void shouldCountDecisions() {
+        DecisionMetrics metrics = new DecisionMetrics(1);
+
+        metrics.record(Outcome.ALLOWED, RolesFormat.LIST);
+        metrics.record(Outcome.ALLOWED, RolesFormat.JSON);
+        metrics.record(Outcome.ALLOWED, RolesFormat.JSON);
+        metrics.record(Outcome.FORBIDDEN, RolesFormat.DELIMITED);
+
+        assertEquals(3, metrics.count(Outcome.ALLOWED));
+        assertEquals(2, metrics.count(Outcome.ALLOWED, RolesFormat.JSON));
+        assertEquals(1, metrics.count(Outcome.FORBIDDEN, RolesFormat.DELIMITED));
+        assertEquals(0, metrics.count(Outcome.NO_USER_ROLE));
+    }
+
+    @Test
+    public void shouldSampleLatency() {
+        assertTrue(new DecisionMetrics(1).sampleLatency());
+        assertTrue(new DecisionMetrics(0).sampleLatency());
+
+        DecisionMetrics metrics = new DecisionMetrics(20);
+        int sampled = 0;
+        for (int i = 0; i < 160_000; i++) {
+            if (metrics.sampleLatency()) {
+                sampled++;
+            }
+        }
+        // Rounded down to 1 out of 16
+        assertTrue(String.valueOf(sampled), sampled > 8_000 && sampled < 12_000);
+    }
+}
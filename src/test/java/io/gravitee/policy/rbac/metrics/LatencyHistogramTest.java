@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldKeepSmallValuesExact() {
+        for (long value = 0; value < 8; value++) {
+            assertEquals(value, LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(value)));
+        }
+    }
+
+    @Test
+    public void shouldBoundRelativeError() {
+        for (long value = 8; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(value));
+            assertTrue(value + " <= " + highest, highest >= value);
+            assertTrue(value + " ~ " + highest, highest - value <= value / 8);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void shouldComputePercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.valueAtPercentile(99));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100L);
+        }
+        histogram.record(-1L);
+
+        assertEquals(1001L, histogram.count());
+        assertEquals(0L, histogram.valueAtPercentile(0));
+        long median = histogram.valueAtPercentile(50);
+        assertTrue(String.valueOf(median), median >= 50_000L && median <= 50_000L * 9 / 8);
+        long p99 = histogram.valueAtPercentile(99);
+        assertTrue(String.valueOf(p99), p99 >= 99_000L && p99 <= 99_000L * 9 / 8);
+        assertTrue(histogram.valueAtPercentile(100) >= 100_000L);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.parser;
+
+import static org.junit.Assert.*;
+
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ClaimExtractorTest {
+
+    @Test
+    public void shouldReadNestedClaim() {
+        ClaimExtractor extractor = ClaimExtractor.of("realm_access.roles");
+
+        assertEquals(
+            Arrays.asList("read", "write"),
+            extractor.extract(
+                "{\"sub\": \"john\", \"aud\": [\"api\"], \"resource_access\": {\"roles\": [\"admin\"]}, " +
+                "\"realm_access\": {\"groups\": {\"a\": [1, 2]}, \"roles\": [\"read\", \"write\"]}}"
+            )
+        );
+    }
+
+    @Test
+    public void shouldReadClaimFromJwt() {
+        String payload = "{\"sub\":\"john\",\"realm_access\":{\"roles\":[\"read\",\"write\"]}}";
+        String encodedPayload = Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        String jwt = "eyJhbGciOiJSUzI1NiJ9." + encodedPayload + ".c2lnbmF0dXJl";
+
+        assertEquals(Arrays.asList("read", "write"), ClaimExtractor.of("realm_access.roles").extract(jwt));
+    }
+
+    @Test
+    public void shouldResolveInternedRoles() {
+        String admin = RoleDictionary.shared().intern(new String("claim-extractor-admin"));
+
+        List<?> roles = (List<?>) ClaimExtractor.of("roles").extract("{\"roles\": [\"claim-extractor-admin\", \"other\"]}");
+
+        assertSame(admin, roles.get(0));
+        assertEquals("other", roles.get(1));
+    }
+
+    @Test
+    public void shouldReadStringClaim() {
+        assertEquals("read write", ClaimExtractor.of("scope").extract("{\"scope\": \"read write\"}"));
+    }
+
+    @Test
+    public void shouldReadClaimWithDottedName() {
+        ClaimExtractor extractor = ClaimExtractor.of("https://example.com/roles");
+
+        assertEquals(List.of("admin"), extractor.extract("{\"https://example\": {}, \"https://example.com/roles\": [\"admin\"]}"));
+    }
+
+    @Test
+    public void shouldIgnoreNonStringRoles() {
+        assertEquals(List.of("read"), ClaimExtractor.of("roles").extract("{\"roles\": [1, {\"a\": \"b\"}, \"read\", null]}"));
+    }
+
+    @Test
+    public void shouldReturnNull_absentClaim() {
+        ClaimExtractor extractor = ClaimExtractor.of("realm_access.roles");
+
+        assertNull(extractor.extract(null));
+        assertNull(extractor.extract("{\"realm_access\": {\"groups\": []}, \"roles\": [\"admin\"]}"));
+        assertNull(extractor.extract("{\"realm_access\": [\"roles\"]}"));
+        assertNull(extractor.extract("{\"realm_access\": {\"roles\": null}}"));
+    }
+
+    @Test
+    public void shouldReturnInvalid_malformedToken() {
+        ClaimExtractor extractor = ClaimExtractor.of("roles");
+
+        assertSame(ClaimExtractor.INVALID, extractor.extract(42));
+        assertSame(ClaimExtractor.INVALID, extractor.extract("not a token"));
+        assertSame(ClaimExtractor.INVALID, extractor.extract("a.%%%.c"));
+        assertSame(ClaimExtractor.INVALID, extractor.extract("{\"roles\": [\"read\""));
+        assertSame(ClaimExtractor.INVALID, extractor.extract("[\"read\"]"));
+        assertSame(ClaimExtractor.INVALID, extractor.extract("{\"roles\": {\"read\": true}}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyFieldName() {
+        ClaimExtractor.of("realm_access..roles");
+    }
+}
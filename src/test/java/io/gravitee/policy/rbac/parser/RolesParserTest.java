@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.parser;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RolesParserTest {
+
+    @Test
+    public void shouldReadJsonArray() {
+        assertEquals(Arrays.asList("read", "write"), tokens(" [ \"read\" ,\"write\" ] "));
+    }
+
+    @Test
+    public void shouldReadEmptyJsonArray() {
+        assertEquals(List.of(), tokens("[ ]"));
+    }
+
+    @Test
+    public void shouldReadEscapedJsonString() {
+        assertEquals(Arrays.asList("a\"b", "c/d", "A"), tokens("[\"a\\\"b\", \"c\\/d\", \"\\u0041\"]"));
+    }
+
+    @Test
+    public void shouldSkipNonStringJsonValues() {
+        assertEquals(Arrays.asList("read", "write"), tokens("[1, \"read\", null, [\"admin\", {\"a\": \"]\"}], true, \"write\"]"));
+    }
+
+    @Test
+    public void shouldIgnoreContentAfterJsonArray() {
+        assertEquals(List.of("read"), tokens("[\"read\"] admin"));
+    }
+
+    @Test
+    public void shouldReadSpaceSeparatedRoles() {
+        assertEquals(Arrays.asList("read", "write", "admin"), tokens("  read write\tadmin "));
+    }
+
+    @Test
+    public void shouldReadCommaSeparatedRoles() {
+        assertEquals(Arrays.asList("read", "write", "admin"), tokens("read,  write ,admin,,"));
+    }
+
+    @Test
+    public void shouldReadBlankString() {
+        assertEquals(List.of(), tokens("  "));
+    }
+
+    @Test
+    public void shouldRestartOnMalformedJson() {
+        assertEquals(Arrays.asList("read", "!restart", "[\"read\"", "write"), tokens("[\"read\" write"));
+        assertEquals(Arrays.asList("read", "!restart", "[\"read\"", "]"), tokens("[\"read\", ]"));
+        assertEquals(Arrays.asList("!restart", "[unquoted]"), tokens("[unquoted]"));
+    }
+
+    @Test
+    public void shouldCheckRemainingJson() {
+        String roles = "[\"read\", \"write\", 1]";
+        assertTrue(RolesParser.isFinal(roles, RolesParser.first(roles)));
+
+        String malformed = "[\"read\", \"write\", 1";
+        assertFalse(RolesParser.isFinal(malformed, RolesParser.first(malformed)));
+
+        String delimited = "read write";
+        assertTrue(RolesParser.isFinal(delimited, RolesParser.first(delimited)));
+    }
+
+    private static List<String> tokens(String roles) {
+        List<String> tokens = new ArrayList<>();
+        for (long token = RolesParser.first(roles); token != RolesParser.END; token = RolesParser.next(roles, token)) {
+            if (RolesParser.isRestart(token)) {
+                tokens.add("!restart");
+            }
+            tokens.add(RolesParser.value(roles, token));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.parser;
+
+import static org.junit.Assert.*;
+
+import io.gravitee.policy.rbac.matcher.RoleDictionary;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class TenantRolesTest {
+
+    private final TenantRoles tenantRoles = TenantRoles.of(":");
+
+    @Test
+    public void shouldKeepRolesOfTenantFromList() {
+        assertEquals(
+            Arrays.asList("read", "write"),
+            tenantRoles.scope(Arrays.asList("tenant-a:read", "tenant-b:admin", "tenant-a:write"), "tenant-a")
+        );
+    }
+
+    @Test
+    public void shouldKeepRolesOfTenantFromString() {
+        assertEquals(Arrays.asList("read", "write"), tenantRoles.scope("tenant-a:read, tenant-b:admin tenant-a:write", "tenant-a"));
+    }
+
+    @Test
+    public void shouldKeepRolesOfTenantFromJsonArray() {
+        assertEquals(Arrays.asList("read", "a\"b"), tenantRoles.scope("[\"tenant-a:read\", \"tenant-a:a\\\"b\"]", "tenant-a"));
+    }
+
+    @Test
+    public void shouldDiscardRolesReadBeforeRestart() {
+        assertEquals(List.of("write"), tenantRoles.scope("[\"tenant-a:read\" tenant-a:write", "tenant-a"));
+    }
+
+    @Test
+    public void shouldIgnoreRolesOfTenantsSharingPrefix() {
+        List<String> userRoles = Arrays.asList("tenant-ab:read", "tenant-a:write", "tenant-a", "tenant-a:");
+
+        assertEquals(List.of("write"), tenantRoles.scope(userRoles, "tenant-a"));
+    }
+
+    @Test
+    public void shouldIgnoreRolesWithoutTenant() {
+        assertEquals(List.of(), tenantRoles.scope(Arrays.asList("read", 42, "write"), "tenant-a"));
+    }
+
+    @Test
+    public void shouldSupportLongerSeparator() {
+        assertEquals(List.of("read"), TenantRoles.of("::").scope("tenant-a:write tenant-a::read", "tenant-a"));
+    }
+
+    @Test
+    public void shouldResolveInternedRoles() {
+        String role = RoleDictionary.shared().intern(new String("tenant-roles-test"));
+
+        List<?> roles = (List<?>) tenantRoles.scope("tenant-a:tenant-roles-test", "tenant-a");
+
+        assertSame(role, roles.get(0));
+    }
+
+    @Test
+    public void shouldReturnNoRoleWithoutTenant() {
+        assertNull(tenantRoles.scope("tenant-a:read", null));
+        assertNull(tenantRoles.scope(null, "tenant-a"));
+    }
+
+    @Test
+    public void shouldReturnInvalidRolesAsIs() {
+        Object roles = 42;
+
+        assertSame(roles, tenantRoles.scope(roles, "tenant-a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptySeparator() {
+        TenantRoles.of("");
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.rbac.route;
+
+import static org.junit.Assert.*;
+
+import io.gravitee.common.http.HttpMethod;
+import java.util.EnumSet;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RouteTableTest {
+
+    private final RouteTable<String> table = RouteTable.<String>builder()
+        .add("/orders", Set.of(HttpMethod.GET), "list-orders")
+        .add("/orders", EnumSet.of(HttpMethod.POST, HttpMethod.PUT), "write-orders")
+        .add("/orders/:id", null, "order")
+        .add("/orders/{id}/items/**", null, "order-items")
+        .add("/orders/archived", Set.of(HttpMethod.GET), "archived-orders")
+        .add("/orders/**", Set.of(HttpMethod.DELETE), "delete-orders")
+        .add("/admin/**", null, "admin")
+        .add("/*/health", null, "health")
+        .build();
+
+    @Test
+    public void shouldFindLiteralPattern() {
+        assertEquals("list-orders", table.find("/orders", HttpMethod.GET));
+        assertEquals("write-orders", table.find("/orders/", HttpMethod.PUT));
+        assertEquals("archived-orders", table.find("/orders/archived", HttpMethod.GET));
+        assertNull(table.find("/orders", HttpMethod.PATCH));
+    }
+
+    @Test
+    public void shouldPreferLiteralOverParameter() {
+        assertEquals("order", table.find("/orders/42", HttpMethod.GET));
+        assertEquals("order", table.find("/orders/archived", HttpMethod.POST));
+    }
+
+    @Test
+    public void shouldMatchTail() {
+        assertEquals("order-items", table.find("/orders/42/items", HttpMethod.GET));
+        assertEquals("order-items", table.find("/orders/42/items/1/price", HttpMethod.GET));
+        assertEquals("delete-orders", table.find("/orders/42/lines", HttpMethod.DELETE));
+        assertEquals("delete-orders", table.find("/orders", HttpMethod.DELETE));
+        assertEquals("admin", table.find("/admin", HttpMethod.GET));
+        assertEquals("admin", table.find("//admin/users/1", HttpMethod.GET));
+        assertNull(table.find("/orders/42/lines", HttpMethod.GET));
+    }
+
+    @Test
+    public void shouldBacktrackToWildcard() {
+        assertEquals("order", table.find("/orders/health", HttpMethod.GET));
+        assertEquals("health", table.find("/payments/health", HttpMethod.GET));
+        assertNull(table.find("/payments", HttpMethod.GET));
+
+        RouteTable<String> nested = RouteTable.<String>builder()
+            .add("/orders/:id/items", null, "items")
+            .add("/*/:id/health", null, "health")
+            .build();
+        assertEquals("items", nested.find("/orders/42/items", HttpMethod.GET));
+        assertEquals("health", nested.find("/orders/42/health", HttpMethod.GET));
+    }
+
+    @Test
+    public void shouldMatchAnyMethodWhenUnknown() {
+        assertEquals("list-orders", table.find("/orders", null));
+    }
+
+    @Test
+    public void shouldHandleEmptyTable() {
+        RouteTable<String> empty = RouteTable.<String>builder().build();
+
+        assertNull(empty.find("/", HttpMethod.GET));
+        assertNull(empty.find(null, HttpMethod.GET));
+    }
+
+    @Test
+    public void shouldMatchRootPattern() {
+        RouteTable<String> root = RouteTable.<String>builder().add("/", null, "root").build();
+
+        assertEquals("root", root.find("/", HttpMethod.GET));
+        assertEquals("root", root.find("", HttpMethod.GET));
+        assertNull(root.find("/orders", HttpMethod.GET));
+    }
+
+    @Test
+    public void shouldNormalizePath() {
+        String path = "/orders/42/items";
+        assertSame(path, RouteTable.normalize(path));
+        assertEquals("", RouteTable.normalize(null));
+        assertEquals("/admin/x", RouteTable.normalize("/public/../admin/x"));
+        assertEquals("/admin/x", RouteTable.normalize("/./admin/./x/"));
+        assertEquals("/admin", RouteTable.normalize("/../../admin"));
+        assertEquals("/admin/x", RouteTable.normalize("/%61dmin/x"));
+        assertEquals("/admin/x", RouteTable.normalize("/public/%2e%2E/admin/x"));
+        assertEquals("/", RouteTable.normalize("/orders/.."));
+        // Reserved characters are kept encoded
+        assertEquals("/orders/a%3Bb", RouteTable.normalize("/orders/a%3Bb"));
+
+        assertEquals("admin", table.find(RouteTable.normalize("/orders/../admin/users"), HttpMethod.GET));
+        assertEquals("admin", table.find(RouteTable.normalize("/%61dmin/users"), HttpMethod.GET));
+    }
+
+    @Test
+    public void shouldNotNormalizeEncodedSeparator() {
+        assertNull(RouteTable.normalize("/admin%2Fusers"));
+        assertNull(RouteTable.normalize("/admin%2fusers"));
+        assertNull(RouteTable.normalize("/admin%5Cusers"));
+        assertNull(RouteTable.normalize("/admin/%"));
+        assertNull(RouteTable.normalize("/admin/%6"));
+        assertNull(RouteTable.normalize("/admin/%zz"));
+    }
+
+    @Test
+    public void shouldFindManyLiteralSegments() {
+        RouteTable.Builder<String> builder = RouteTable.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add("/resources-" + i + "/items", null, "items-" + i);
+        }
+        RouteTable<String> many = builder.build();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("items-" + i, many.find("/resources-" + i + "/items", HttpMethod.GET));
+        }
+        assertNull(many.find("/resources-100/items", HttpMethod.GET));
+        assertNull(many.find("/resources-1", HttpMethod.GET));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTailInTheMiddle() {
+        RouteTable.<String>builder().add("/orders/**/items", null, "invalid");
+    }
+}